@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import benchmarks.Aplicacao;
+
+// Implementacao de benchmarks.Aplicacao sobre as classes da aplicacao, que estao no pacote padrao
+public class AplicacaoBenchmark implements Aplicacao {
+
+    // Vencimentos relativos a hoje, para que os filtros por data encontrem tarefas atrasadas e proximas
+    private static List<Tarefa> gerar(int quantidade) {
+        return GeradorTarefas.gerar(quantidade, GeradorTarefas.SEMENTE_PADRAO, LocalDate.now());
+    }
+
+    @Override
+    public List<?> tarefas(int quantidade) {
+        return gerar(quantidade);
+    }
+
+    @Override
+    public Servico abrirServico(String armazenamento, int tamanho, Path diretorio) {
+        TarefaService service = new TarefaService(TarefaService.Armazenamento.valueOf(armazenamento), diretorio);
+        service.adicionarTodas(gerar(tamanho));
+        return new Servico() {
+            public Object adicionar() {
+                return service.adicionar("Nova tarefa de benchmark", "", Tarefa.Prioridade.MEDIA, "Trabalho", null);
+            }
+            public void alternarConclusao(long id) { service.alternarConclusao(id); }
+            public List<?> getTarefasPendentes() { return service.getTarefasFiltradas(TarefaService.FiltroTarefa.PENDENTES); }
+            public List<?> getTarefasAtrasadas() { return service.getTarefasFiltradas(TarefaService.FiltroTarefa.ATRASADAS); }
+            public Set<String> getCategorias() { return service.getCategorias(); }
+            public void exportarParaCSV(Path destino) throws IOException { service.exportarParaCSV(destino); }
+            public void exportarParaJSON(Path destino) throws IOException { service.exportarParaJSON(destino); }
+            public void fechar() { service.fechar(); }
+        };
+    }
+
+    @Override
+    public Persistencia abrirPersistencia(int tamanho, Path diretorio) {
+        List<Tarefa> tarefas = gerar(tamanho);
+        GravadorTarefas gravador = new GravadorTarefas(diretorio.resolve("tarefas.dat"), diretorio.resolve("tarefas.log"),
+            new DicionarioCategorias(), null);
+        // carregar() precisa de um arquivo desde a primeira invocacao
+        gravador.migrar(tarefas);
+        return new Persistencia() {
+            public void salvar() { gravador.migrar(tarefas); }
+            public List<?> carregar() {
+                ArrayList<Tarefa> carregadas = new ArrayList<>();
+                gravador.carregar(carregadas, registro -> {});
+                return carregadas;
+            }
+            public void fechar() { gravador.fechar(); }
+        };
+    }
+}
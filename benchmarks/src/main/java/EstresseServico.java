@@ -0,0 +1,258 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/*
+ * Teste de estresse do modelo de concorrencia do TarefaService: varias threads leitoras contra uma
+ * escritora, sobre o mesmo servico. A escritora mantem dois invariantes que so valem entre mutacoes
+ * completas: o total de tarefas e o de pendentes nunca mudam (cada remocao vem com uma adicao, e cada
+ * conclusao com uma reabertura, dentro do mesmo lote). As leitoras conferem esses invariantes por todos
+ * os caminhos de leitura (lerOtimista, lock de leitura, instantaneos, indices e busca); qualquer estado
+ * intermediario visivel aparece como violacao.
+ *
+ * Ao final imprime as violacoes, o relatorio de Metricas e a espera do escritor (estresse.escrita), que
+ * mostra se a porta dos leitores pessimistas impede que ele fique sem vez.
+ *
+ *   java -cp benchmarks/target/benchmarks.jar EstresseServico [leitores] [segundos] [tarefas] [armazenamento]
+ *
+ * Sai com codigo 1 se alguma violacao for encontrada.
+ */
+public class EstresseServico {
+    private static final String[] PALAVRAS = {"relatorio", "orcamento", "contrato", "mercado", "backup", "aluguel"};
+    private static final String[] CATEGORIAS = {"Geral", "Trabalho", "Casa", "Estudos", "Saude", "Lazer"};
+    private static final int MAXIMO_VIOLACOES = 20;
+    private static final Metricas.Histograma ESCRITA = Metricas.histograma("estresse.escrita");
+    private static final Metricas.Histograma LEITURA = Metricas.histograma("estresse.leitura");
+
+    private final TarefaService service;
+    private final int total;
+    private final int pendentes;
+    private final AtomicBoolean parar = new AtomicBoolean();
+    private final AtomicLong leituras = new AtomicLong();
+    private final AtomicLong violacoes = new AtomicLong();
+    private final ConcurrentLinkedQueue<String> mensagens = new ConcurrentLinkedQueue<>();
+    private volatile long maiorId;
+
+    private EstresseServico(TarefaService service) {
+        this.service = service;
+        List<Tarefa> tarefas = service.getInstantaneo();
+        this.total = tarefas.size();
+        this.pendentes = (int) tarefas.stream().filter(t -> !t.concluida()).count();
+        this.maiorId = tarefas.get(tarefas.size() - 1).id();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int leitores = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int segundos = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int tarefas = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        TarefaService.Armazenamento armazenamento = TarefaService.Armazenamento.valueOf(
+            args.length > 3 ? args[3].toUpperCase(Locale.ROOT) : "MEMORIA");
+
+        Path diretorio = Files.createTempDirectory("tarefas-estresse");
+        TarefaService service = new TarefaService(armazenamento, diretorio);
+        long violacoes;
+        try {
+            service.adicionarTodas(GeradorTarefas.gerar(tarefas, GeradorTarefas.SEMENTE_PADRAO, LocalDate.now()));
+            violacoes = new EstresseServico(service).executar(leitores, segundos);
+        } finally {
+            service.fechar();
+            apagar(diretorio);
+        }
+        System.exit(violacoes == 0 ? 0 : 1);
+    }
+
+    private long executar(int leitores, int segundos) throws InterruptedException {
+        System.out.printf("%d leitores, 1 escritor, %d tarefas (%d pendentes), %d s%n", leitores, total, pendentes, segundos);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < leitores; i++) {
+            long semente = i;
+            threads.add(Thread.ofPlatform().name("leitor-" + i).start(() -> ler(new SplittableRandom(semente))));
+        }
+        long[] mutacoes = new long[1];
+        threads.add(Thread.ofPlatform().name("escritor").start(() -> mutacoes[0] = escrever(new SplittableRandom(99))));
+
+        TimeUnit.SECONDS.sleep(segundos);
+        parar.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // O estado final, ja sem concorrencia, tambem precisa respeitar os invariantes
+        conferir(new SplittableRandom(7));
+
+        mensagens.forEach(mensagem -> System.out.println("VIOLACAO " + mensagem));
+        System.out.println();
+        System.out.print(Metricas.relatorio());
+        System.out.printf("%nmutacoes: %d  leituras: %d  violacoes: %d%n", mutacoes[0], leituras.get(), violacoes.get());
+        return violacoes.get();
+    }
+
+    // Escritora: lotes que trocam conclusoes e substituem tarefas, e alteracoes avulsas que nao mexem nas contagens
+    private long escrever(SplittableRandom aleatorio) {
+        List<Long> abertas = new ArrayList<>();
+        List<Long> concluidas = new ArrayList<>();
+        for (Tarefa t : service.getInstantaneo()) {
+            (t.concluida() ? concluidas : abertas).add(t.id());
+        }
+        long mutacoes = 0;
+        while (!parar.get()) {
+            long inicio = System.nanoTime();
+            if (aleatorio.nextInt(4) == 0) {
+                long id = sortear(aleatorio, abertas, concluidas);
+                switch (aleatorio.nextInt(3)) {
+                    case 0 -> service.definirCategoria(id, CATEGORIAS[aleatorio.nextInt(CATEGORIAS.length)]);
+                    case 1 -> service.editarObservacao(id, PALAVRAS[aleatorio.nextInt(PALAVRAS.length)]);
+                    default -> {
+                        Tarefa t = service.obter(id);
+                        service.editar(id, descricao(aleatorio), t.observacao(), t.prioridade(), t.categoria(),
+                                       aleatorio.nextBoolean() ? null : LocalDate.now().plusDays(aleatorio.nextInt(-20, 20)));
+                    }
+                }
+            } else {
+                int operacoes = 1 + aleatorio.nextInt(50);
+                service.lote(l -> {
+                    for (int i = 0; i < operacoes; i++) {
+                        if (aleatorio.nextBoolean() && !abertas.isEmpty() && !concluidas.isEmpty()) {
+                            long fechada = retirar(aleatorio, abertas);
+                            long reaberta = retirar(aleatorio, concluidas);
+                            l.definirConclusao(fechada, true);
+                            l.definirConclusao(reaberta, false);
+                            concluidas.add(fechada);
+                            abertas.add(reaberta);
+                        } else if (!abertas.isEmpty()) {
+                            l.remover(retirar(aleatorio, abertas));
+                            Tarefa nova = l.adicionar(descricao(aleatorio), "", Tarefa.Prioridade.MEDIA,
+                                                      CATEGORIAS[aleatorio.nextInt(CATEGORIAS.length)], null);
+                            abertas.add(nova.id());
+                            maiorId = nova.id();
+                        }
+                    }
+                });
+            }
+            ESCRITA.registrar(System.nanoTime() - inicio);
+            mutacoes++;
+        }
+        return mutacoes;
+    }
+
+    private void ler(SplittableRandom aleatorio) {
+        while (!parar.get()) {
+            long inicio = System.nanoTime();
+            conferir(aleatorio);
+            LEITURA.registrar(System.nanoTime() - inicio);
+            leituras.incrementAndGet();
+        }
+    }
+
+    // Uma leitura sorteada; cada uma so pode ver o estado antes ou depois de uma mutacao inteira
+    private void conferir(SplittableRandom aleatorio) {
+        try {
+            switch (aleatorio.nextInt(8)) {
+                case 0 -> {
+                    verificar(service.contar(TarefaService.FiltroTarefa.TODAS) == total, "contar(TODAS)");
+                    verificar(service.contar(TarefaService.FiltroTarefa.PENDENTES) == pendentes, "contar(PENDENTES)");
+                    verificar(service.contar(TarefaService.FiltroTarefa.CONCLUIDAS) == total - pendentes, "contar(CONCLUIDAS)");
+                }
+                case 1 -> {
+                    long id = 1 + aleatorio.nextLong(maiorId);
+                    int posicao = service.posicao(TarefaService.FiltroTarefa.PENDENTES, id);
+                    verificar(posicao >= -1 && posicao < pendentes, "posicao(PENDENTES) = " + posicao);
+                }
+                case 2 -> {
+                    List<Tarefa> todas = service.getInstantaneo();
+                    verificar(todas.size() == total, "getInstantaneo() com " + todas.size() + " tarefas");
+                    verificar(crescente(todas), "getInstantaneo() fora de ordem");
+                    verificar(todas.stream().filter(t -> !t.concluida()).count() == pendentes, "pendentes no instantaneo");
+                }
+                case 3 -> {
+                    TarefaService.Instantaneo visao = service.getInstantaneoFiltrado(TarefaService.FiltroTarefa.PENDENTES);
+                    verificar(visao.tarefas().size() == pendentes, "instantaneo de PENDENTES com " + visao.tarefas().size());
+                    verificar(visao.tarefas().stream().noneMatch(Tarefa::concluida), "concluida no instantaneo de PENDENTES");
+                    verificar(crescente(visao.tarefas()), "instantaneo de PENDENTES fora de ordem");
+                }
+                case 4 -> {
+                    TarefaService.InstantaneoIds ids = service.getIdsFiltrados(TarefaService.FiltroTarefa.CONCLUIDAS);
+                    verificar(ids.ids().length == total - pendentes, "ids de CONCLUIDAS: " + ids.ids().length);
+                }
+                case 5 -> {
+                    Map<String, Integer> contagem = service.getContagemCategorias();
+                    int soma = contagem.values().stream().mapToInt(Integer::intValue).sum();
+                    verificar(soma == total, "soma das categorias = " + soma);
+                }
+                case 6 -> {
+                    String categoria = CATEGORIAS[aleatorio.nextInt(CATEGORIAS.length)];
+                    verificar(service.getTarefasDaCategoria(categoria).stream().allMatch(t -> categoria.equals(t.categoria())),
+                              "tarefa fora da categoria " + categoria);
+                }
+                default -> {
+                    String palavra = PALAVRAS[aleatorio.nextInt(PALAVRAS.length)];
+                    for (Tarefa t : service.buscar(palavra, TarefaService.FiltroTarefa.PENDENTES, 50)) {
+                        verificar(!t.concluida(), "busca em PENDENTES trouxe concluida " + t.id());
+                        verificar(texto(t).contains(palavra), "busca por " + palavra + " trouxe " + t.id());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            verificar(false, e.toString());
+        }
+    }
+
+    private void verificar(boolean condicao, String mensagem) {
+        if (!condicao && violacoes.incrementAndGet() <= MAXIMO_VIOLACOES) {
+            mensagens.add(Thread.currentThread().getName() + ": " + mensagem);
+        }
+    }
+
+    private static boolean crescente(List<Tarefa> tarefas) {
+        for (int i = 1; i < tarefas.size(); i++) {
+            if (tarefas.get(i - 1).id() >= tarefas.get(i).id()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Texto pesquisavel da tarefa, minusculo e sem acentos, como o IndiceBusca o ve
+    private static String texto(Tarefa t) {
+        String texto = t.descricao() + " " + t.observacao() + " " + t.categoria();
+        return Normalizer.normalize(texto, Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static String descricao(SplittableRandom aleatorio) {
+        return "Revisar " + PALAVRAS[aleatorio.nextInt(PALAVRAS.length)];
+    }
+
+    private static long sortear(SplittableRandom aleatorio, List<Long> abertas, List<Long> concluidas) {
+        int indice = aleatorio.nextInt(abertas.size() + concluidas.size());
+        return indice < abertas.size() ? abertas.get(indice) : concluidas.get(indice - abertas.size());
+    }
+
+    // Remove um id sorteado trocando-o pelo ultimo, em O(1)
+    private static long retirar(SplittableRandom aleatorio, List<Long> ids) {
+        int indice = aleatorio.nextInt(ids.size());
+        long id = ids.get(indice);
+        ids.set(indice, ids.get(ids.size() - 1));
+        ids.remove(ids.size() - 1);
+        return id;
+    }
+
+    private static void apagar(Path diretorio) throws IOException {
+        try (Stream<Path> caminhos = Files.walk(diretorio)) {
+            for (Path caminho : (Iterable<Path>) caminhos.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(caminho);
+            }
+        }
+    }
+}
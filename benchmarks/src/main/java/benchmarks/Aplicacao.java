@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/*
+ * Acesso dos benchmarks as classes da aplicacao. O JMH exige benchmarks em um pacote nomeado, e
+ * classes de pacote nomeado nao podem importar as do pacote padrao; por isso a aplicacao e usada
+ * atraves destas interfaces, implementadas por AplicacaoBenchmark no pacote padrao. A unica
+ * reflexao acontece em instancia(), no setup; as chamadas medidas sao chamadas de interface comuns.
+ */
+public interface Aplicacao {
+
+    // Servico carregado com 'tamanho' tarefas geradas, gravando seus arquivos em 'diretorio'
+    Servico abrirServico(String armazenamento, int tamanho, Path diretorio);
+
+    Persistencia abrirPersistencia(int tamanho, Path diretorio);
+
+    // Tarefas geradas pelo GeradorTarefas, sempre as mesmas para o mesmo tamanho
+    List<?> tarefas(int quantidade);
+
+    interface Servico {
+        Object adicionar();
+        void alternarConclusao(long id);
+        List<?> getTarefasPendentes();
+        List<?> getTarefasAtrasadas();
+        Set<String> getCategorias();
+        void exportarParaCSV(Path destino) throws IOException;
+        void exportarParaJSON(Path destino) throws IOException;
+        void fechar();
+    }
+
+    interface Persistencia {
+        void salvar();
+        List<?> carregar();
+        void fechar();
+    }
+
+    static Aplicacao instancia() {
+        try {
+            return (Aplicacao) Class.forName("AplicacaoBenchmark").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("AplicacaoBenchmark nao encontrada no classpath", e);
+        }
+    }
+
+    static Path diretorioTemporario() throws IOException {
+        return Files.createTempDirectory("tarefas-benchmark");
+    }
+
+    static void apagar(Path diretorio) throws IOException {
+        if (diretorio == null || !Files.exists(diretorio)) {
+            return;
+        }
+        try (Stream<Path> caminhos = Files.walk(diretorio)) {
+            for (Path caminho : (Iterable<Path>) caminhos.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(caminho);
+            }
+        }
+    }
+}
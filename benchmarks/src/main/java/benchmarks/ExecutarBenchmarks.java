@@ -0,0 +1,21 @@
+package benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Ponto de entrada de benchmarks.jar: aceita as opcoes de linha de comando do JMH e sempre
+// inclui o perfilador de GC, que informa a taxa de alocacao (gc.alloc.rate.norm = bytes por operacao)
+public class ExecutarBenchmarks {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options opcoes = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(opcoes).run();
+    }
+}
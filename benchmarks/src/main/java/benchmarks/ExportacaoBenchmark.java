@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class ExportacaoBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int tamanho;
+
+    private Path diretorio;
+    private Aplicacao.Servico service;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        diretorio = Aplicacao.diretorioTemporario();
+        service = Aplicacao.instancia().abrirServico("MEMORIA", tamanho, diretorio);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() throws IOException {
+        service.fechar();
+        Aplicacao.apagar(diretorio);
+    }
+
+    @Benchmark
+    public void exportarParaCSV() throws IOException {
+        service.exportarParaCSV(diretorio.resolve("exportacao.csv"));
+    }
+
+    @Benchmark
+    public void exportarParaJSON() throws IOException {
+        service.exportarParaJSON(diretorio.resolve("exportacao.json"));
+    }
+}
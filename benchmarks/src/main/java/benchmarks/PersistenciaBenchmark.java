@@ -0,0 +1,57 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Gravacao e leitura completas de tarefas.dat, o trabalho feito na compactacao e na abertura do app
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class PersistenciaBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int tamanho;
+
+    private Path diretorio;
+    private Aplicacao.Persistencia persistencia;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        diretorio = Aplicacao.diretorioTemporario();
+        persistencia = Aplicacao.instancia().abrirPersistencia(tamanho, diretorio);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() throws IOException {
+        persistencia.fechar();
+        Aplicacao.apagar(diretorio);
+    }
+
+    @Benchmark
+    public void salvar() {
+        persistencia.salvar();
+    }
+
+    @Benchmark
+    public List<?> carregar() {
+        return persistencia.carregar();
+    }
+}
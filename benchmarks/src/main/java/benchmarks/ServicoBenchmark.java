@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Caminhos quentes do TarefaService sobre uma lista ja carregada. Cada iteracao recomeca de um
+ * servico novo, para que adicionar() nao faca a lista crescer indefinidamente entre iteracoes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class ServicoBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int tamanho;
+
+    @Param({"MEMORIA", "COLUNAR"})
+    public String armazenamento;
+
+    private Path diretorio;
+    private Aplicacao.Servico service;
+    private SplittableRandom aleatorio;
+
+    @Setup(Level.Iteration)
+    public void abrir() throws IOException {
+        diretorio = Aplicacao.diretorioTemporario();
+        service = Aplicacao.instancia().abrirServico(armazenamento, tamanho, diretorio);
+        aleatorio = new SplittableRandom(42);
+    }
+
+    @TearDown(Level.Iteration)
+    public void fechar() throws IOException {
+        service.fechar();
+        Aplicacao.apagar(diretorio);
+    }
+
+    @Benchmark
+    public Object adicionar() {
+        return service.adicionar();
+    }
+
+    @Benchmark
+    public long alternarConclusao() {
+        long id = aleatorio.nextLong(1, tamanho + 1);
+        service.alternarConclusao(id);
+        return id;
+    }
+
+    // Pendentes vem do instantaneo mantido pelo servico; atrasadas consultam o indice de vencimentos
+    @Benchmark
+    public List<?> getTarefasPendentes() {
+        return service.getTarefasPendentes();
+    }
+
+    @Benchmark
+    public List<?> getTarefasAtrasadas() {
+        return service.getTarefasAtrasadas();
+    }
+
+    @Benchmark
+    public Set<String> getCategorias() {
+        return service.getCategorias();
+    }
+}
@@ -0,0 +1,38 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// toString() e o texto de cada linha da lista; e chamado a cada repintura
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TarefaBenchmark {
+    private List<?> tarefas;
+    private int proxima;
+
+    @Setup
+    public void preparar() {
+        tarefas = Aplicacao.instancia().tarefas(1024);
+    }
+
+    @Benchmark
+    public String toStringTarefa() {
+        proxima = (proxima + 1) & 1023;
+        return tarefas.get(proxima).toString();
+    }
+}
@@ -0,0 +1,186 @@
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Consumer;
+
+/*
+ * Armazem em colunas: em vez de um objeto Tarefa por tarefa (com cabecalhos e ponteiros para tres
+ * Strings, o enum e o LocalDate), cada campo fica em um vetor primitivo indexado pelo id:
+ *   concluida     BitSet
+ *   prioridade    byte[] com o ordinal (SEM_PRIORIDADE quando nula, como no CodecTarefa)
+ *   vencimento    int[] em epoch-day (SEM_VENCIMENTO quando nao ha data)
+ *   categoria     int[] com o codigo da categoria no dicionario do servico
+ *   textos        descricao e observacao em UTF-8, lado a lado em um unico byte[] compartilhado
+ * Objetos Tarefa so sao criados em obter(); os filtros consultam os vetores diretamente.
+ */
+public class ArmazemColunar implements ArmazemTarefas {
+    private static final int SEM_VENCIMENTO = Integer.MIN_VALUE;
+    private static final byte SEM_PRIORIDADE = -1;
+    // Tamanho de texto que representa null
+    private static final int NULO = -1;
+    private static final Tarefa.Prioridade[] PRIORIDADES = Tarefa.Prioridade.values();
+
+    private final BitSet presentes = new BitSet();
+    private final BitSet concluidas = new BitSet();
+    private byte[] prioridades = new byte[16];
+    private int[] vencimentos = new int[16];
+    private int[] categorias = new int[16];
+    private int[] posicoesTexto = new int[16];
+    private int[] tamanhosDescricao = new int[16];
+    private int[] tamanhosObservacao = new int[16];
+    private final DicionarioCategorias dicionario;
+    // Textos so sao acrescentados; os substituidos viram lixo, recolhido quando passa da metade
+    private byte[] textos = new byte[1024];
+    private int usados;
+    private int lixo;
+    private int tamanho;
+
+    public ArmazemColunar(DicionarioCategorias dicionario) {
+        this.dicionario = dicionario;
+    }
+
+    @Override
+    public synchronized Tarefa obter(long id) {
+        if (id <= 0 || id >= prioridades.length || !presentes.get((int) id)) {
+            return null;
+        }
+        int i = (int) id;
+        int posicao = posicoesTexto[i];
+        String descricao = texto(posicao, tamanhosDescricao[i]);
+        String observacao = texto(posicao + Math.max(tamanhosDescricao[i], 0), tamanhosObservacao[i]);
+        return new Tarefa(id, descricao, concluidas.get(i), observacao,
+            prioridades[i] != SEM_PRIORIDADE ? PRIORIDADES[prioridades[i]] : null,
+            dicionario.nome(categorias[i]),
+            vencimentos[i] != SEM_VENCIMENTO ? LocalDate.ofEpochDay(vencimentos[i]) : null);
+    }
+
+    @Override
+    public synchronized void gravar(Tarefa tarefa) {
+        long id = tarefa.id();
+        if (id <= 0 || id >= LIMITE_ID) {
+            throw new IllegalArgumentException("Id de tarefa invalido: " + id);
+        }
+        int vencimento = vencimento(tarefa.dataVencimento());
+        byte[] descricao = bytes(tarefa.descricao());
+        byte[] observacao = bytes(tarefa.observacao());
+        int i = (int) id;
+        garantirCapacidade(i + 1);
+        if (lixo > usados / 2 && lixo > 64 * 1024) {
+            compactarTextos();
+        }
+        if (presentes.get(i)) {
+            lixo += tamanhoTextos(i);
+        } else {
+            presentes.set(i);
+            tamanho++;
+        }
+        int bytesTexto = (descricao != null ? descricao.length : 0) + (observacao != null ? observacao.length : 0);
+        garantirEspacoTexto(bytesTexto);
+        posicoesTexto[i] = usados;
+        tamanhosDescricao[i] = acrescentar(descricao);
+        tamanhosObservacao[i] = acrescentar(observacao);
+        concluidas.set(i, tarefa.concluida());
+        prioridades[i] = tarefa.prioridade() != null ? (byte) tarefa.prioridade().ordinal() : SEM_PRIORIDADE;
+        vencimentos[i] = vencimento;
+        categorias[i] = dicionario.codigo(tarefa.categoria());
+    }
+
+    @Override
+    public synchronized void remover(long id) {
+        if (id <= 0 || id >= prioridades.length || !presentes.get((int) id)) {
+            return;
+        }
+        int i = (int) id;
+        presentes.clear(i);
+        concluidas.clear(i);
+        lixo += tamanhoTextos(i);
+        tamanho--;
+    }
+
+    @Override
+    public synchronized int tamanho() {
+        return tamanho;
+    }
+
+    @Override
+    public synchronized void percorrer(Consumer<Tarefa> acao) {
+        for (int i = presentes.nextSetBit(1); i >= 0; i = presentes.nextSetBit(i + 1)) {
+            acao.accept(obter(i));
+        }
+    }
+
+    // Responde pelos vetores, sem criar a tarefa
+    @Override
+    public synchronized boolean aceita(long id, TarefaService.FiltroTarefa filtro, long hoje) {
+        if (id <= 0 || id >= prioridades.length || !presentes.get((int) id)) {
+            return false;
+        }
+        int i = (int) id;
+        return filtro.aceita(concluidas.get(i), vencimentos[i] != SEM_VENCIMENTO ? vencimentos[i] : Long.MIN_VALUE, hoje);
+    }
+
+    // Epoch-day em int; Tarefa so aceita datas que cabem nele sem coincidir com SEM_VENCIMENTO
+    private static int vencimento(LocalDate data) {
+        return data != null ? Math.toIntExact(data.toEpochDay()) : SEM_VENCIMENTO;
+    }
+
+    private String texto(int posicao, int bytes) {
+        return bytes == NULO ? null : new String(textos, posicao, bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto != null ? texto.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    private int acrescentar(byte[] texto) {
+        if (texto == null) {
+            return NULO;
+        }
+        System.arraycopy(texto, 0, textos, usados, texto.length);
+        usados += texto.length;
+        return texto.length;
+    }
+
+    private int tamanhoTextos(int i) {
+        return Math.max(tamanhosDescricao[i], 0) + Math.max(tamanhosObservacao[i], 0);
+    }
+
+    private void garantirEspacoTexto(int bytes) {
+        long necessario = (long) usados + bytes;
+        if (necessario > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Textos das tarefas excedem o limite do armazem");
+        }
+        if (necessario > textos.length) {
+            textos = Arrays.copyOf(textos, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(necessario, textos.length * 3L / 2)));
+        }
+    }
+
+    // Copia os textos vivos, na ordem dos ids, para um vetor sem lixo
+    private void compactarTextos() {
+        byte[] compactos = new byte[Math.max(1024, usados - lixo)];
+        int destino = 0;
+        for (int i = presentes.nextSetBit(1); i >= 0; i = presentes.nextSetBit(i + 1)) {
+            int bytes = tamanhoTextos(i);
+            System.arraycopy(textos, posicoesTexto[i], compactos, destino, bytes);
+            posicoesTexto[i] = destino;
+            destino += bytes;
+        }
+        textos = compactos;
+        usados = destino;
+        lixo = 0;
+    }
+
+    private void garantirCapacidade(int capacidade) {
+        if (capacidade <= prioridades.length) {
+            return;
+        }
+        int novaCapacidade = (int) Math.min(LIMITE_ID, Math.max(capacidade, prioridades.length * 2L));
+        prioridades = Arrays.copyOf(prioridades, novaCapacidade);
+        vencimentos = Arrays.copyOf(vencimentos, novaCapacidade);
+        categorias = Arrays.copyOf(categorias, novaCapacidade);
+        posicoesTexto = Arrays.copyOf(posicoesTexto, novaCapacidade);
+        tamanhosDescricao = Arrays.copyOf(tamanhosDescricao, novaCapacidade);
+        tamanhosObservacao = Arrays.copyOf(tamanhosObservacao, novaCapacidade);
+    }
+}
@@ -0,0 +1,659 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/*
+ * Armazem em arquivos mapeados em memoria, para listas maiores que o heap. As tarefas ficam
+ * codificadas (CodecTarefa) em paginas de tamanho fixo com registros em slots, e um diretorio,
+ * tambem mapeado, leva do id ao endereco do registro. So as tarefas acessadas sao decodificadas;
+ * as mais recentes ficam em um cache LRU. No heap fica apenas o cache e o espaco livre de cada
+ * pagina (2 bytes por pagina de 8 KB).
+ *
+ * Arquivo de paginas (a pagina 0 e o cabecalho: magico, versao, tamanho da pagina, total de
+ * paginas, maior id e estado da migracao de tarefas.dat/tarefas.log):
+ *   pagina com slots:  tipo (1) | reservado (1) | slots (2) | inicio dos registros (2) | reservado (2)
+ *                      | slots de 4 bytes (offset, tamanho) ... espaco livre ... registros
+ *   registro grande:   tipo (1) | reservado (3) | paginas (4) | tamanho (4) | registro, em paginas seguidas
+ * Diretorio: um long por id; 0 = inexistente, senao (pagina << 16 | slot) ou BIT_GRANDE | pagina,
+ * com 15 bits do CRC32C do registro acima do endereco. A entrada 0, que nenhum id usa, guarda o
+ * magico e a versao do diretorio.
+ *
+ * As paginas e o diretorio sao forcados ao disco juntos, mas o sistema pode grava-los em qualquer
+ * ordem. Se o processo cair, nada se perde: as paginas mapeadas continuam no cache do sistema. Ja uma
+ * queda do sistema ou de energia antes da descarga pode deixar uma entrada do diretorio apontando
+ * para um registro que nao chegou ao disco ou para um slot ja reaproveitado. Por isso a tarefa nova
+ * e gravada antes de o espaco da anterior ser liberado, e a abertura confere cada entrada com o CRC:
+ * as que nao conferem sao descartadas (com um aviso) e o espaco delas nao e recuperado. Um registro
+ * corrompido passa pela conferencia com chance de 1 em 32768.
+ *
+ * Um unico processo abre o armazem por vez: tarefas.pag fica sob um lock exclusivo do sistema
+ * enquanto estiver aberto. Dentro da JVM a exclusao e feita antes, por um conjunto de caminhos
+ * abertos, porque fechar qualquer canal sobre o arquivo pode soltar o lock do sistema.
+ */
+public class ArmazemMapeado implements ArmazemTarefas {
+    private static final int MAGICO = 0x54504147; // "TPAG"
+    private static final long MAGICO_DIRETORIO = 0x54444952L; // "TDIR"
+    // Na versao 1, o diretorio nao tinha o CRC dos registros; ele e calculado na primeira abertura
+    private static final int VERSAO = 2;
+    private static final int TAMANHO_PAGINA = 8192;
+    // Os arquivos sao mapeados em segmentos de 64 MB, acrescentados conforme crescem
+    private static final int PAGINAS_POR_SEGMENTO = 8192;
+    private static final long TAMANHO_SEGMENTO = (long) TAMANHO_PAGINA * PAGINAS_POR_SEGMENTO;
+    private static final int IDS_POR_SEGMENTO = 8 * 1024 * 1024;
+    private static final int POS_TOTAL_PAGINAS = 12;
+    private static final int POS_MAIOR_ID = 16;
+    private static final int POS_MIGRACAO = 24;
+    // Estados da copia inicial das tarefas de tarefas.dat e tarefas.log para o armazem
+    private static final int NAO_MIGRADO = 0;
+    private static final int MIGRANDO = 1;
+    private static final int MIGRADO = 2;
+    private static final int CABECALHO_PAGINA = 8;
+    private static final int TAMANHO_SLOT = 4;
+    private static final int CABECALHO_GRANDE = 12;
+    private static final int CAPACIDADE_PAGINA = TAMANHO_PAGINA - CABECALHO_PAGINA;
+    private static final int MAIOR_REGISTRO_EM_SLOT = CAPACIDADE_PAGINA - TAMANHO_SLOT;
+    private static final byte LIVRE = 0;
+    private static final byte COM_SLOTS = 1;
+    private static final byte GRANDE = 2;
+    private static final long BIT_GRANDE = 1L << 62;
+    private static final int POS_CONFERENCIA = 47;
+    private static final long MASCARA_ENDERECO = (1L << POS_CONFERENCIA) - 1;
+    private static final long MASCARA_CONFERENCIA = 0x7FFF;
+    private static final int CAPACIDADE_CACHE = 16 * 1024;
+    // Janela em que as alteracoes se acumulam antes de serem forcadas ao disco
+    private static final long ATRASO_DESCARGA_MS = 1000;
+    private static final Set<Path> ABERTOS = ConcurrentHashMap.newKeySet();
+
+    private final Path caminho;
+
+    private final FileChannel canalPaginas;
+    private final FileChannel canalDiretorio;
+    private final List<MappedByteBuffer> segmentosPaginas = new ArrayList<>();
+    private final List<MappedByteBuffer> segmentosDiretorio = new ArrayList<>();
+    // Bytes que ainda cabem em cada pagina, contando o espaco fragmentado por remocoes
+    private char[] livres = new char[16];
+    // Paginas que ficaram com ao menos metade livre, reaproveitadas antes de se criar paginas novas
+    private final ArrayDeque<Integer> paginasComEspaco = new ArrayDeque<>();
+    private int totalPaginas;
+    private int paginaAtual;
+    private long maiorId;
+    private int tamanho;
+    private int migracao;
+    private final Map<Long, Tarefa> cache = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Tarefa> maisAntiga) {
+            return size() > CAPACIDADE_CACHE;
+        }
+    };
+    private final ScheduledExecutorService descarga = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "descarga-armazem");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean descargaAgendada;
+    // Tarefas decodificadas usam as instancias de categoria deste dicionario
+    private final DicionarioCategorias dicionario;
+
+    public ArmazemMapeado(Path paginas, Path diretorio, DicionarioCategorias dicionario) throws IOException {
+        this.dicionario = dicionario;
+        this.caminho = paginas.toAbsolutePath().normalize();
+        if (!ABERTOS.add(caminho)) {
+            throw new IOException("O armazem " + paginas + " ja esta aberto por outra instancia");
+        }
+        try {
+            canalPaginas = FileChannel.open(paginas,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            ABERTOS.remove(caminho);
+            throw e;
+        }
+        try {
+            // O lock e solto quando o canal e fechado
+            if (canalPaginas.tryLock() == null) {
+                throw new IOException("O armazem " + paginas + " ja esta aberto por outro processo");
+            }
+            canalDiretorio = FileChannel.open(diretorio,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            canalPaginas.close();
+            ABERTOS.remove(caminho);
+            throw e;
+        }
+        try {
+            abrir();
+        } catch (IOException | RuntimeException e) {
+            fecharCanais();
+            throw e;
+        }
+    }
+
+    private void abrir() throws IOException {
+        if (canalPaginas.size() > 0 && lerMigracao(canalPaginas) == MIGRANDO) {
+            // Uma migracao interrompida deixou o armazem pela metade; ela recomeca do zero
+            canalPaginas.truncate(0);
+            canalDiretorio.truncate(0);
+        }
+        boolean novo = canalPaginas.size() == 0;
+        garantirSegmentoPaginas(0);
+        garantirSegmentoDiretorio(0);
+        MappedByteBuffer cabecalho = segmentosPaginas.get(0);
+        MappedByteBuffer diretorio = segmentosDiretorio.get(0);
+        if (novo) {
+            cabecalho.putInt(0, MAGICO);
+            cabecalho.putInt(4, VERSAO);
+            cabecalho.putInt(8, TAMANHO_PAGINA);
+            cabecalho.putInt(POS_TOTAL_PAGINAS, 1);
+            cabecalho.putLong(POS_MAIOR_ID, 0);
+            cabecalho.putInt(POS_MIGRACAO, NAO_MIGRADO);
+            diretorio.putLong(0, MAGICO_DIRETORIO << 32 | VERSAO);
+            totalPaginas = 1;
+            return;
+        }
+        if (cabecalho.getInt(0) != MAGICO || diretorio.getLong(0) >>> 32 != MAGICO_DIRETORIO) {
+            throw new IOException("Formato de armazem desconhecido");
+        }
+        int versao = cabecalho.getInt(4);
+        if (versao < 1 || versao > VERSAO || (int) diretorio.getLong(0) != versao || cabecalho.getInt(8) != TAMANHO_PAGINA) {
+            throw new IOException("Versao de armazem desconhecida: " + versao);
+        }
+        totalPaginas = cabecalho.getInt(POS_TOTAL_PAGINAS);
+        maiorId = cabecalho.getLong(POS_MAIOR_ID);
+        if (totalPaginas < 1 || maiorId < 0 || maiorId >= LIMITE_ID) {
+            throw new IOException("Cabecalho do armazem corrompido");
+        }
+        garantirSegmentoPaginas(totalPaginas - 1);
+        livres = new char[Math.max(16, totalPaginas)];
+
+        // O espaco livre nao e gravado: e recalculado percorrendo os cabecalhos das paginas
+        for (int pagina = 1; pagina < totalPaginas; ) {
+            MappedByteBuffer segmento = segmento(pagina);
+            int base = base(pagina);
+            byte tipo = segmento.get(base);
+            if (tipo == GRANDE) {
+                int paginas = segmento.getInt(base + 4);
+                if (paginas >= 1 && pagina + paginas <= totalPaginas) {
+                    pagina += paginas;
+                    continue;
+                }
+                // Gravado depois do ultimo total de paginas que chegou ao disco; vira espaco livre
+                tipo = LIVRE;
+                segmento.put(base, LIVRE);
+            }
+            livres[pagina] = (char) (tipo == COM_SLOTS ? espacoLivre(segmento, base) : CAPACIDADE_PAGINA);
+            if (livres[pagina] >= TAMANHO_PAGINA / 2) {
+                paginasComEspaco.add(pagina);
+            }
+            pagina++;
+        }
+        garantirSegmentoDiretorio((int) (maiorId / IDS_POR_SEGMENTO));
+        int descartadas = 0;
+        for (long id = 1; id <= maiorId; id++) {
+            long entrada = lerDiretorio(id);
+            if (entrada == 0) {
+                continue;
+            }
+            if (!enderecoValido(entrada) || versao > 1 && conferencia(entrada) != (entrada & ~MASCARA_ENDERECO & ~BIT_GRANDE)) {
+                escreverDiretorio(id, 0);
+                descartadas++;
+                continue;
+            }
+            if (versao == 1) {
+                escreverDiretorio(id, entrada | conferencia(entrada));
+            }
+            tamanho++;
+        }
+        if (descartadas > 0) {
+            System.err.println("Armazem mapeado: " + descartadas + " tarefas gravadas pela metade antes de uma queda foram descartadas.");
+        }
+        if (versao < VERSAO) {
+            cabecalho.putInt(4, VERSAO);
+            diretorio.putLong(0, MAGICO_DIRETORIO << 32 | VERSAO);
+        }
+        migracao = cabecalho.getInt(POS_MIGRACAO);
+        if (migracao == NAO_MIGRADO && tamanho > 0) {
+            // Armazens anteriores ao campo: se ja tem tarefas, a copia inicial aconteceu
+            migracao = MIGRADO;
+            cabecalho.putInt(POS_MIGRACAO, MIGRADO);
+        }
+    }
+
+    // Se 'paginas' e um armazem que ja recebeu as tarefas de tarefas.dat e tarefas.log. Dai em diante
+    // as alteracoes ficam so nele, e abrir o diretorio em outro modo mostraria tarefas antigas.
+    public static boolean temTarefasMigradas(Path paginas) {
+        if (ABERTOS.contains(paginas.toAbsolutePath().normalize())) {
+            // Aberto nesta JVM; abrir outro canal aqui poderia soltar o lock dele
+            return true;
+        }
+        if (!Files.exists(paginas)) {
+            return false;
+        }
+        try (FileChannel canal = FileChannel.open(paginas, StandardOpenOption.READ)) {
+            ByteBuffer cabecalho = ByteBuffer.allocate(POS_MIGRACAO + 4);
+            canal.read(cabecalho, 0);
+            if (cabecalho.position() < cabecalho.capacity() || cabecalho.getInt(0) != MAGICO) {
+                return false;
+            }
+            int migracao = cabecalho.getInt(POS_MIGRACAO);
+            // Armazens anteriores ao campo de migracao contam como migrados se ja tiveram tarefas
+            return migracao == MIGRADO || migracao == NAO_MIGRADO && cabecalho.getLong(POS_MAIOR_ID) > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static int lerMigracao(FileChannel canal) throws IOException {
+        ByteBuffer campo = ByteBuffer.allocate(4);
+        canal.read(campo, POS_MIGRACAO);
+        return campo.flip().remaining() == 4 ? campo.getInt() : NAO_MIGRADO;
+    }
+
+    // Se as tarefas de tarefas.dat e tarefas.log ja foram copiadas para o armazem. Fica registrado no
+    // cabecalho: um armazem vazio pode ser apenas um armazem cujas tarefas foram todas removidas.
+    public synchronized boolean isMigrado() {
+        return migracao == MIGRADO;
+    }
+
+    // Marca o inicio da copia inicial, ja no disco. Se o processo cair antes de concluirMigracao(),
+    // a abertura seguinte descarta o armazem e a copia e refeita.
+    public synchronized void iniciarMigracao() {
+        migracao = MIGRANDO;
+        segmentosPaginas.get(0).putInt(POS_MIGRACAO, MIGRANDO);
+        segmentosPaginas.get(0).force(0, TAMANHO_PAGINA);
+    }
+
+    // As tarefas copiadas chegam ao disco antes da marca de migracao concluida
+    public synchronized void concluirMigracao() {
+        descarregar();
+        migracao = MIGRADO;
+        segmentosPaginas.get(0).putInt(POS_MIGRACAO, MIGRADO);
+        segmentosPaginas.get(0).force(0, TAMANHO_PAGINA);
+    }
+
+    @Override
+    public synchronized Tarefa obter(long id) {
+        Tarefa tarefa = cache.get(id);
+        if (tarefa == null) {
+            long endereco = lerDiretorio(id);
+            if (endereco == 0) {
+                return null;
+            }
+            tarefa = decodificar(endereco);
+            cache.put(id, tarefa);
+        }
+        return tarefa;
+    }
+
+    @Override
+    public synchronized void gravar(Tarefa tarefa) {
+        long id = tarefa.id();
+        if (id <= 0 || id >= LIMITE_ID) {
+            throw new IllegalArgumentException("Id de tarefa invalido: " + id);
+        }
+        int bytes = CodecTarefa.tamanho(tarefa);
+        if (CABECALHO_GRANDE + bytes > TAMANHO_SEGMENTO) {
+            throw new IllegalArgumentException("Tarefa grande demais para o armazem: " + bytes + " bytes");
+        }
+        try {
+            long anterior = lerDiretorio(id);
+            // Uma tarefa alterada tenta ficar na mesma pagina. A versao anterior so e liberada depois
+            // que o diretorio aponta para a nova, para que o slot dela nao seja reaproveitado antes
+            int preferida = anterior != 0 && (anterior & BIT_GRANDE) == 0 ? (int) ((anterior & MASCARA_ENDERECO) >>> 16) : 0;
+            long endereco = bytes > MAIOR_REGISTRO_EM_SLOT
+                ? gravarGrande(tarefa, bytes)
+                : gravarEmSlot(tarefa, bytes, preferida);
+            escreverDiretorio(id, endereco | conferencia(endereco));
+            if (anterior == 0) {
+                tamanho++;
+            } else {
+                liberar(anterior);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (id > maiorId) {
+            maiorId = id;
+            segmentosPaginas.get(0).putLong(POS_MAIOR_ID, maiorId);
+        }
+        cache.put(id, tarefa);
+        agendarDescarga();
+    }
+
+    @Override
+    public synchronized void remover(long id) {
+        long endereco = lerDiretorio(id);
+        if (endereco == 0) {
+            return;
+        }
+        liberar(endereco);
+        segmentosDiretorio.get((int) (id / IDS_POR_SEGMENTO)).putLong(posicaoDiretorio(id), 0);
+        cache.remove(id);
+        tamanho--;
+        agendarDescarga();
+    }
+
+    @Override
+    public synchronized int tamanho() {
+        return tamanho;
+    }
+
+    // Decodifica as tarefas uma a uma, sem passar pelo cache
+    @Override
+    public synchronized void percorrer(Consumer<Tarefa> acao) {
+        for (long id = 1; id <= maiorId; id++) {
+            long endereco = lerDiretorio(id);
+            if (endereco != 0) {
+                acao.accept(decodificar(endereco));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void descarregar() {
+        descargaAgendada = false;
+        segmentosPaginas.forEach(MappedByteBuffer::force);
+        segmentosDiretorio.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void fechar() {
+        descarga.shutdown();
+        try {
+            descarga.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            descarregar();
+            fecharCanais();
+        }
+    }
+
+    private void fecharCanais() {
+        try {
+            canalPaginas.close();
+            canalDiretorio.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            ABERTOS.remove(caminho);
+        }
+    }
+
+    private void agendarDescarga() {
+        if (!descargaAgendada) {
+            descargaAgendada = true;
+            descarga.schedule(this::descarregar, ATRASO_DESCARGA_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Tarefa decodificar(long endereco) {
+        try {
+            return CodecTarefa.decodificar(registro(endereco), dicionario);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Bits de conferencia da entrada do diretorio: parte do CRC32C dos bytes do registro
+    private long conferencia(long endereco) {
+        CRC32C crc = new CRC32C();
+        crc.update(registro(endereco));
+        return (crc.getValue() & MASCARA_CONFERENCIA) << POS_CONFERENCIA;
+    }
+
+    // Se a entrada aponta para um registro dentro das paginas, sem ler os bytes dele
+    private boolean enderecoValido(long entrada) {
+        boolean grande = (entrada & BIT_GRANDE) != 0;
+        long endereco = entrada & MASCARA_ENDERECO;
+        int pagina = (int) (grande ? endereco : endereco >>> 16);
+        if (pagina < 1 || pagina >= totalPaginas) {
+            return false;
+        }
+        MappedByteBuffer segmento = segmento(pagina);
+        int base = base(pagina);
+        if (grande) {
+            int paginas = segmento.getInt(base + 4);
+            int bytes = segmento.getInt(base + 8);
+            return segmento.get(base) == GRANDE && paginas >= 1 && pagina + paginas <= totalPaginas
+                && bytes >= 0 && CABECALHO_GRANDE + (long) bytes <= (long) paginas * TAMANHO_PAGINA;
+        }
+        int slot = (int) (endereco & 0xFFFF);
+        int slots = lerShort(segmento, base + 2);
+        if (segmento.get(base) != COM_SLOTS || slot >= slots) {
+            return false;
+        }
+        int posicaoSlot = base + CABECALHO_PAGINA + slot * TAMANHO_SLOT;
+        int offset = lerShort(segmento, posicaoSlot);
+        int bytes = lerShort(segmento, posicaoSlot + 2);
+        return offset >= CABECALHO_PAGINA + slots * TAMANHO_SLOT && bytes > 0 && offset + bytes <= TAMANHO_PAGINA;
+    }
+
+    // Bytes do registro no endereco, lidos diretamente do mapeamento
+    private ByteBuffer registro(long endereco) {
+        endereco &= MASCARA_ENDERECO | BIT_GRANDE;
+        if ((endereco & BIT_GRANDE) != 0) {
+            int pagina = (int) (endereco & ~BIT_GRANDE);
+            MappedByteBuffer segmento = segmento(pagina);
+            int base = base(pagina);
+            return segmento.slice(base + CABECALHO_GRANDE, segmento.getInt(base + 8));
+        }
+        int pagina = (int) (endereco >>> 16);
+        MappedByteBuffer segmento = segmento(pagina);
+        int base = base(pagina);
+        int slot = base + CABECALHO_PAGINA + (int) (endereco & 0xFFFF) * TAMANHO_SLOT;
+        return segmento.slice(base + lerShort(segmento, slot), lerShort(segmento, slot + 2));
+    }
+
+    // Libera o espaco do registro
+    private void liberar(long endereco) {
+        endereco &= MASCARA_ENDERECO | BIT_GRANDE;
+        if ((endereco & BIT_GRANDE) != 0) {
+            int pagina = (int) (endereco & ~BIT_GRANDE);
+            int paginas = segmento(pagina).getInt(base(pagina) + 4);
+            for (int p = pagina; p < pagina + paginas; p++) {
+                segmento(p).put(base(p), LIVRE);
+                livres[p] = (char) CAPACIDADE_PAGINA;
+                paginasComEspaco.add(p);
+            }
+            return;
+        }
+        int pagina = (int) (endereco >>> 16);
+        MappedByteBuffer segmento = segmento(pagina);
+        int base = base(pagina);
+        int slot = base + CABECALHO_PAGINA + (int) (endereco & 0xFFFF) * TAMANHO_SLOT;
+        int liberados = lerShort(segmento, slot + 2);
+        segmento.putInt(slot, 0);
+        // Slots vazios no fim da tabela sao descartados
+        int slots = lerShort(segmento, base + 2);
+        while (slots > 0 && segmento.getInt(base + CABECALHO_PAGINA + (slots - 1) * TAMANHO_SLOT) == 0) {
+            slots--;
+            liberados += TAMANHO_SLOT;
+        }
+        segmento.putShort(base + 2, (short) slots);
+        boolean tinhaPoucoEspaco = livres[pagina] < TAMANHO_PAGINA / 2;
+        livres[pagina] += (char) liberados;
+        if (tinhaPoucoEspaco && livres[pagina] >= TAMANHO_PAGINA / 2) {
+            paginasComEspaco.add(pagina);
+        }
+    }
+
+    private long gravarEmSlot(Tarefa tarefa, int bytes, int preferida) throws IOException {
+        int pagina = escolherPagina(bytes + TAMANHO_SLOT, preferida);
+        MappedByteBuffer segmento = segmento(pagina);
+        int base = base(pagina);
+        if (segmento.get(base) != COM_SLOTS) {
+            segmento.put(base, COM_SLOTS);
+            segmento.putShort(base + 2, (short) 0);
+            segmento.putShort(base + 4, (short) TAMANHO_PAGINA);
+        }
+        int slots = lerShort(segmento, base + 2);
+        int slot = 0;
+        while (slot < slots && segmento.getInt(base + CABECALHO_PAGINA + slot * TAMANHO_SLOT) != 0) {
+            slot++;
+        }
+        boolean slotNovo = slot == slots;
+        int fimSlots = CABECALHO_PAGINA + (slotNovo ? slots + 1 : slots) * TAMANHO_SLOT;
+        int inicio = lerShort(segmento, base + 4);
+        if (inicio - fimSlots < bytes) {
+            inicio = compactar(segmento, base, slots);
+        }
+        inicio -= bytes;
+        CodecTarefa.codificar(tarefa, segmento.slice(base + inicio, bytes));
+        int posicaoSlot = base + CABECALHO_PAGINA + slot * TAMANHO_SLOT;
+        segmento.putShort(posicaoSlot, (short) inicio);
+        segmento.putShort(posicaoSlot + 2, (short) bytes);
+        if (slotNovo) {
+            segmento.putShort(base + 2, (short) (slots + 1));
+        }
+        segmento.putShort(base + 4, (short) inicio);
+        livres[pagina] -= (char) (bytes + (slotNovo ? TAMANHO_SLOT : 0));
+        return (long) pagina << 16 | slot;
+    }
+
+    private int escolherPagina(int necessario, int preferida) throws IOException {
+        if (preferida > 0 && livres[preferida] >= necessario) {
+            return preferida;
+        }
+        if (paginaAtual > 0 && livres[paginaAtual] >= necessario) {
+            return paginaAtual;
+        }
+        while (!paginasComEspaco.isEmpty()) {
+            int pagina = paginasComEspaco.poll();
+            if (livres[pagina] >= necessario) {
+                paginaAtual = pagina;
+                return pagina;
+            }
+        }
+        paginaAtual = novasPaginas(1);
+        return paginaAtual;
+    }
+
+    // Junta os registros no fim da pagina, eliminando os buracos deixados por remocoes
+    private int compactar(MappedByteBuffer segmento, int base, int slots) {
+        byte[] copia = new byte[TAMANHO_PAGINA];
+        segmento.get(base, copia);
+        int inicio = TAMANHO_PAGINA;
+        for (int slot = 0; slot < slots; slot++) {
+            int posicaoSlot = base + CABECALHO_PAGINA + slot * TAMANHO_SLOT;
+            int offset = lerShort(segmento, posicaoSlot);
+            if (offset == 0) {
+                continue;
+            }
+            int bytes = lerShort(segmento, posicaoSlot + 2);
+            inicio -= bytes;
+            segmento.put(base + inicio, copia, offset, bytes);
+            segmento.putShort(posicaoSlot, (short) inicio);
+        }
+        segmento.putShort(base + 4, (short) inicio);
+        return inicio;
+    }
+
+    private long gravarGrande(Tarefa tarefa, int bytes) throws IOException {
+        int paginas = (CABECALHO_GRANDE + bytes + TAMANHO_PAGINA - 1) / TAMANHO_PAGINA;
+        int pagina = novasPaginas(paginas);
+        MappedByteBuffer segmento = segmento(pagina);
+        int base = base(pagina);
+        segmento.put(base, GRANDE);
+        segmento.putInt(base + 4, paginas);
+        segmento.putInt(base + 8, bytes);
+        for (int p = pagina; p < pagina + paginas; p++) {
+            livres[p] = 0;
+        }
+        CodecTarefa.codificar(tarefa, segmento.slice(base + CABECALHO_GRANDE, bytes));
+        return BIT_GRANDE | pagina;
+    }
+
+    // Acrescenta paginas livres no fim do arquivo; um registro grande nunca atravessa segmentos
+    private int novasPaginas(int quantidade) throws IOException {
+        int primeira = totalPaginas;
+        int restantesNoSegmento = PAGINAS_POR_SEGMENTO - primeira % PAGINAS_POR_SEGMENTO;
+        if (quantidade > restantesNoSegmento) {
+            primeira += restantesNoSegmento;
+        }
+        int total = primeira + quantidade;
+        garantirSegmentoPaginas(total - 1);
+        if (total > livres.length) {
+            livres = Arrays.copyOf(livres, Math.max(total, livres.length * 2));
+        }
+        for (int pagina = totalPaginas; pagina < total; pagina++) {
+            segmento(pagina).put(base(pagina), LIVRE);
+            livres[pagina] = (char) CAPACIDADE_PAGINA;
+            if (pagina < primeira) {
+                paginasComEspaco.add(pagina);
+            }
+        }
+        totalPaginas = total;
+        segmentosPaginas.get(0).putInt(POS_TOTAL_PAGINAS, totalPaginas);
+        return primeira;
+    }
+
+    private long lerDiretorio(long id) {
+        if (id <= 0 || id > maiorId) {
+            return 0;
+        }
+        return segmentosDiretorio.get((int) (id / IDS_POR_SEGMENTO)).getLong(posicaoDiretorio(id));
+    }
+
+    private void escreverDiretorio(long id, long endereco) throws IOException {
+        int segmento = (int) (id / IDS_POR_SEGMENTO);
+        garantirSegmentoDiretorio(segmento);
+        segmentosDiretorio.get(segmento).putLong(posicaoDiretorio(id), endereco);
+    }
+
+    private static int posicaoDiretorio(long id) {
+        return (int) (id % IDS_POR_SEGMENTO) * 8;
+    }
+
+    private MappedByteBuffer segmento(int pagina) {
+        return segmentosPaginas.get(pagina / PAGINAS_POR_SEGMENTO);
+    }
+
+    private static int base(int pagina) {
+        return pagina % PAGINAS_POR_SEGMENTO * TAMANHO_PAGINA;
+    }
+
+    private void garantirSegmentoPaginas(int pagina) throws IOException {
+        while (segmentosPaginas.size() <= pagina / PAGINAS_POR_SEGMENTO) {
+            segmentosPaginas.add(canalPaginas.map(FileChannel.MapMode.READ_WRITE,
+                segmentosPaginas.size() * TAMANHO_SEGMENTO, TAMANHO_SEGMENTO));
+        }
+    }
+
+    private void garantirSegmentoDiretorio(int segmento) throws IOException {
+        while (segmentosDiretorio.size() <= segmento) {
+            segmentosDiretorio.add(canalDiretorio.map(FileChannel.MapMode.READ_WRITE,
+                (long) segmentosDiretorio.size() * IDS_POR_SEGMENTO * 8, (long) IDS_POR_SEGMENTO * 8));
+        }
+    }
+
+    private static int espacoLivre(MappedByteBuffer segmento, int base) {
+        int slots = lerShort(segmento, base + 2);
+        int usados = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            usados += lerShort(segmento, base + CABECALHO_PAGINA + slot * TAMANHO_SLOT + 2);
+        }
+        return CAPACIDADE_PAGINA - slots * TAMANHO_SLOT - usados;
+    }
+
+    private static int lerShort(ByteBuffer buffer, int posicao) {
+        return Short.toUnsignedInt(buffer.getShort(posicao));
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Armazem padrao: as tarefas ficam no heap, em um vetor indexado pelo id. Como os ids sao
+// atribuidos em sequencia, o vetor e denso. obter() pode ser chamado de qualquer thread sem lock.
+public class ArmazemMemoria implements ArmazemTarefas {
+    private volatile AtomicReferenceArray<Tarefa> porId = new AtomicReferenceArray<>(16);
+    private int tamanho;
+
+    @Override
+    public Tarefa obter(long id) {
+        AtomicReferenceArray<Tarefa> atual = porId;
+        return id >= 0 && id < atual.length() ? atual.get((int) id) : null;
+    }
+
+    @Override
+    public void gravar(Tarefa tarefa) {
+        if (tarefa.id() <= 0 || tarefa.id() >= LIMITE_ID) {
+            throw new IllegalArgumentException("Id de tarefa invalido: " + tarefa.id());
+        }
+        int indice = (int) tarefa.id();
+        garantirCapacidade(indice + 1);
+        if (porId.getAndSet(indice, tarefa) == null) {
+            tamanho++;
+        }
+    }
+
+    @Override
+    public void remover(long id) {
+        AtomicReferenceArray<Tarefa> atual = porId;
+        if (id >= 0 && id < atual.length() && atual.getAndSet((int) id, null) != null) {
+            tamanho--;
+        }
+    }
+
+    @Override
+    public int tamanho() {
+        return tamanho;
+    }
+
+    @Override
+    public void percorrer(Consumer<Tarefa> acao) {
+        AtomicReferenceArray<Tarefa> atual = porId;
+        for (int i = 0; i < atual.length(); i++) {
+            Tarefa tarefa = atual.get(i);
+            if (tarefa != null) {
+                acao.accept(tarefa);
+            }
+        }
+    }
+
+    private void garantirCapacidade(int capacidade) {
+        AtomicReferenceArray<Tarefa> atual = porId;
+        if (capacidade <= atual.length()) {
+            return;
+        }
+        int novaCapacidade = (int) Math.min(LIMITE_ID, Math.max(capacidade, atual.length() * 2L));
+        AtomicReferenceArray<Tarefa> maior = new AtomicReferenceArray<>(novaCapacidade);
+        for (int i = 0; i < atual.length(); i++) {
+            maior.lazySet(i, atual.get(i));
+        }
+        // A escrita volatil publica o vetor ja preenchido
+        porId = maior;
+    }
+}
@@ -0,0 +1,33 @@
+import java.util.function.Consumer;
+
+// Onde o TarefaService guarda as tarefas, enderecadas pelo id. Os vetores e indices do servico
+// guardam apenas ids e obtem as tarefas daqui.
+public interface ArmazemTarefas {
+    // Ids a partir deste valor nao sao aceitos pelos armazens
+    long LIMITE_ID = Integer.MAX_VALUE - 8;
+
+    // Tarefa com o id informado, ou null se ela nao existir
+    Tarefa obter(long id);
+
+    // Insere a tarefa ou substitui a de mesmo id
+    void gravar(Tarefa tarefa);
+
+    void remover(long id);
+
+    int tamanho();
+
+    // Entrega todas as tarefas em ordem crescente de id
+    void percorrer(Consumer<Tarefa> acao);
+
+    // Se a tarefa existe e pertence a visao do filtro. Armazens que guardam os campos em separado
+    // respondem sem criar a tarefa.
+    default boolean aceita(long id, TarefaService.FiltroTarefa filtro, long hoje) {
+        Tarefa tarefa = obter(id);
+        return tarefa != null && filtro.aceita(tarefa, hoje);
+    }
+
+    // Garante que as alteracoes chegaram ao disco; nada a fazer para armazens em memoria
+    default void descarregar() {}
+
+    default void fechar() {}
+}
@@ -0,0 +1,35 @@
+/*
+ * Cache das linhas ja montadas da JList, de tamanho fixo e mapeamento direto pelo id: cada id
+ * ocupa uma unica posicao, e uma tarefa nova naquela posicao substitui a anterior. A entrada
+ * guarda a tarefa que gerou a linha e so vale enquanto a tarefa pedida for igual a ela, entao
+ * uma linha e remontada apenas quando a sua tarefa muda. Com o armazem em memoria a tarefa e a
+ * mesma instancia e a comparacao para na identidade; nos outros armazens cai no equals do record,
+ * que compara os campos sem alocar. Usado apenas na EDT.
+ */
+public class CacheLinhas {
+    private final Tarefa[] tarefas;
+    private final String[] linhas;
+    private final int mascara;
+
+    // 'capacidade' e arredondada para a potencia de dois seguinte
+    public CacheLinhas(int capacidade) {
+        int tamanho = Integer.highestOneBit(Math.max(capacidade - 1, 1)) << 1;
+        tarefas = new Tarefa[tamanho];
+        linhas = new String[tamanho];
+        mascara = tamanho - 1;
+    }
+
+    public String linha(Tarefa tarefa) {
+        int i = (int) tarefa.id() & mascara;
+        Tarefa anterior = tarefas[i];
+        if (anterior == tarefa || tarefa.equals(anterior)) {
+            // A instancia mais recente fica guardada para que a proxima consulta pare na identidade
+            tarefas[i] = tarefa;
+            return linhas[i];
+        }
+        String linha = FormatoTarefa.linhaLista(tarefa);
+        tarefas[i] = tarefa;
+        linhas[i] = linha;
+        return linha;
+    }
+}
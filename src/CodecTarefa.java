@@ -0,0 +1,334 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/*
+ * Formato binario das tarefas (versao 2):
+ *   id (8)          ausente na versao 1, cujas tarefas recebem id ao carregar
+ *   flags (1)       bit 0 = concluida, bit 1 = possui data de vencimento
+ *   prioridade (1)  ordinal do enum, -1 quando nula
+ *   vencimento (4)  epoch-day, presente apenas se o bit 1 estiver ligado
+ *   descricao, observacao, categoria: tamanho (4, -1 quando nula) + bytes UTF-8
+ * Em tarefas.dat, a partir da versao 3 (VERSAO_SNAPSHOT), a categoria e gravada apenas como codigo
+ * (4, -1 quando nula) em uma tabela de nomes que o cabecalho do arquivo traz uma unica vez.
+ */
+public final class CodecTarefa {
+    public static final byte VERSAO = 2;
+    public static final byte VERSAO_SNAPSHOT = 3;
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+    private static final byte CONCLUIDA = 1;
+    private static final byte COM_VENCIMENTO = 2;
+    private static final Tarefa.Prioridade[] PRIORIDADES = Tarefa.Prioridade.values();
+
+    private CodecTarefa() {}
+
+    public static int tamanho(Tarefa t) {
+        return tamanho(t, false);
+    }
+
+    // Com 'categoriaCodificada', a categoria ocupa apenas os 4 bytes do codigo
+    public static int tamanho(Tarefa t, boolean categoriaCodificada) {
+        int tamanho = 8 + 2 + 12;
+        if (t.dataVencimento() != null) {
+            tamanho += 4;
+        }
+        tamanho += tamanhoUtf8(t.descricao()) + tamanhoUtf8(t.observacao());
+        return categoriaCodificada ? tamanho : tamanho + tamanhoUtf8(t.categoria());
+    }
+
+    public static void codificar(Tarefa t, ByteBuffer destino) {
+        codificar(t, destino, null);
+    }
+
+    // Com um dicionario, grava o codigo da categoria no lugar do nome
+    public static void codificar(Tarefa t, ByteBuffer destino, DicionarioCategorias dicionario) {
+        byte flags = 0;
+        if (t.concluida()) flags |= CONCLUIDA;
+        if (t.dataVencimento() != null) flags |= COM_VENCIMENTO;
+
+        destino.putLong(t.id());
+        destino.put(flags);
+        destino.put(t.prioridade() != null ? (byte) t.prioridade().ordinal() : -1);
+        if (t.dataVencimento() != null) {
+            destino.putInt(Math.toIntExact(t.dataVencimento().toEpochDay()));
+        }
+        codificarTexto(t.descricao(), destino);
+        codificarTexto(t.observacao(), destino);
+        if (dicionario != null) {
+            destino.putInt(dicionario.codigo(t.categoria()));
+        } else {
+            codificarTexto(t.categoria(), destino);
+        }
+    }
+
+    public static Tarefa decodificar(ByteBuffer origem) throws IOException {
+        return decodificar(origem, VERSAO, null, null);
+    }
+
+    // Troca a categoria lida pela instancia do dicionario
+    public static Tarefa decodificar(ByteBuffer origem, DicionarioCategorias dicionario) throws IOException {
+        return decodificar(origem, VERSAO, null, dicionario);
+    }
+
+    public static Tarefa decodificar(ByteBuffer origem, int versao) throws IOException {
+        return decodificar(origem, versao, null, null);
+    }
+
+    // 'categorias' traduz os codigos de categoria da versao 3 (a tabela do arquivo) em nomes
+    private static Tarefa decodificar(ByteBuffer origem, int versao, String[] categorias,
+                                      DicionarioCategorias dicionario) throws IOException {
+        long id = versao >= 2 ? origem.getLong() : 0;
+        byte flags = origem.get();
+        byte prioridade = origem.get();
+        if (prioridade >= PRIORIDADES.length) {
+            throw new IOException("Prioridade invalida: " + prioridade);
+        }
+        LocalDate vencimento = (flags & COM_VENCIMENTO) != 0 ? LocalDate.ofEpochDay(origem.getInt()) : null;
+        String descricao = decodificarTexto(origem);
+        String observacao = decodificarTexto(origem);
+        String categoria;
+        if (versao >= VERSAO_SNAPSHOT) {
+            int codigo = origem.getInt();
+            if (codigo < DicionarioCategorias.SEM_CATEGORIA || categorias == null || codigo >= categorias.length) {
+                throw new IOException("Codigo de categoria invalido: " + codigo);
+            }
+            categoria = codigo != DicionarioCategorias.SEM_CATEGORIA ? categorias[codigo] : null;
+        } else {
+            categoria = decodificarTexto(origem);
+            if (dicionario != null) {
+                categoria = dicionario.canonica(categoria);
+            }
+        }
+
+        return new Tarefa(
+            id,
+            descricao,
+            (flags & CONCLUIDA) != 0,
+            observacao,
+            prioridade >= 0 ? PRIORIDADES[prioridade] : null,
+            categoria,
+            vencimento
+        );
+    }
+
+    private static int tamanhoUtf8(String texto) {
+        if (texto == null) return 0;
+        int bytes = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length()
+                    && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private static void codificarTexto(String texto, ByteBuffer destino) {
+        if (texto == null) {
+            destino.putInt(-1);
+            return;
+        }
+        destino.putInt(tamanhoUtf8(texto));
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                destino.put((byte) c);
+            } else if (c < 0x800) {
+                destino.put((byte) (0xC0 | (c >> 6)));
+                destino.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length()
+                    && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, texto.charAt(++i));
+                destino.put((byte) (0xF0 | (cp >> 18)));
+                destino.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                destino.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                destino.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                // Surrogates isolados viram '?', como em String.getBytes
+                if (Character.isSurrogate(c)) c = '?';
+                destino.put((byte) (0xE0 | (c >> 12)));
+                destino.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                destino.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static String decodificarTexto(ByteBuffer origem) throws IOException {
+        int tamanho = origem.getInt();
+        if (tamanho < 0) return null;
+        if (tamanho > origem.remaining()) {
+            throw new IOException("Texto truncado no registro");
+        }
+        String texto;
+        if (origem.hasArray()) {
+            texto = new String(origem.array(), origem.arrayOffset() + origem.position(), tamanho, StandardCharsets.UTF_8);
+            origem.position(origem.position() + tamanho);
+        } else {
+            byte[] bytes = new byte[tamanho];
+            origem.get(bytes);
+            texto = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return texto;
+    }
+
+    // Grava registros prefixados pelo tamanho em um canal, acumulando em um buffer reutilizado
+    public static class Escritor implements Closeable {
+        private final FileChannel canal;
+        private ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BUFFER);
+
+        public Escritor(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        public void escreverInt(int valor) throws IOException {
+            garantir(4);
+            buffer.putInt(valor);
+        }
+
+        public void escreverLong(long valor) throws IOException {
+            garantir(8);
+            buffer.putLong(valor);
+        }
+
+        public void escreverByte(byte valor) throws IOException {
+            garantir(1);
+            buffer.put(valor);
+        }
+
+        public void escreverTarefa(Tarefa tarefa) throws IOException {
+            escreverTarefa(tarefa, null);
+        }
+
+        // Com um dicionario, a categoria vai como codigo (formato VERSAO_SNAPSHOT)
+        public void escreverTarefa(Tarefa tarefa, DicionarioCategorias dicionario) throws IOException {
+            int tamanho = tamanho(tarefa, dicionario != null);
+            garantir(4 + tamanho);
+            buffer.putInt(tamanho);
+            codificar(tarefa, buffer, dicionario);
+        }
+
+        public void escreverTexto(String texto) throws IOException {
+            garantir(4 + 3 * (texto != null ? texto.length() : 0));
+            codificarTexto(texto, buffer);
+        }
+
+        public void descarregar() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void garantir(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                descarregar();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocate(bytes);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            descarregar();
+        }
+    }
+
+    // Le registros prefixados pelo tamanho de um canal, reabastecendo o buffer sob demanda
+    public static class Leitor {
+        private final FileChannel canal;
+        private ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_BUFFER).flip();
+        private long lidos;
+
+        public Leitor(FileChannel canal) {
+            this.canal = canal;
+        }
+
+        // Posicao no canal do proximo byte ainda nao consumido
+        public long getPosicao() {
+            return lidos - buffer.remaining();
+        }
+
+        public int lerInt() throws IOException {
+            garantir(4);
+            return buffer.getInt();
+        }
+
+        public long lerLong() throws IOException {
+            garantir(8);
+            return buffer.getLong();
+        }
+
+        public byte lerByte() throws IOException {
+            garantir(1);
+            return buffer.get();
+        }
+
+        public Tarefa lerTarefa() throws IOException {
+            return lerTarefa(VERSAO);
+        }
+
+        public Tarefa lerTarefa(int versao) throws IOException {
+            return lerTarefa(versao, null);
+        }
+
+        // 'categorias' e a tabela de nomes do arquivo, para a versao 3
+        public Tarefa lerTarefa(int versao, String[] categorias) throws IOException {
+            int tamanho = lerInt();
+            garantir(tamanho);
+            int fim = buffer.position() + tamanho;
+            ByteBuffer registro = buffer.slice(buffer.position(), tamanho);
+            buffer.position(fim);
+            return decodificar(registro, versao, categorias, null);
+        }
+
+        public String lerTexto() throws IOException {
+            int tamanho = lerInt();
+            if (tamanho < 0) {
+                return null;
+            }
+            garantir(tamanho);
+            String texto = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), tamanho, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + tamanho);
+            return texto;
+        }
+
+        private void garantir(int bytes) throws IOException {
+            if (bytes < 0) {
+                throw new IOException("Tamanho de registro invalido: " + bytes);
+            }
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (buffer.capacity() < bytes) {
+                ByteBuffer maior = ByteBuffer.allocate(bytes);
+                maior.put(buffer);
+                buffer = maior;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes) {
+                int n = canal.read(buffer);
+                if (n < 0) {
+                    buffer.flip();
+                    throw new EOFException();
+                }
+                lidos += n;
+            }
+            buffer.flip();
+        }
+    }
+}
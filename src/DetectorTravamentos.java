@@ -0,0 +1,278 @@
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.InvocationEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Detecta travamentos da interface: uma EventQueue propria marca o inicio e o fim de cada evento
+ * despachado na EDT, e uma thread de vigia confere periodicamente o evento em andamento. Quando ele
+ * passa do limite, a vigia passa a amostrar a pilha da EDT ate o evento terminar e registra o
+ * travamento (duracao, evento que o causou e as pilhas mais frequentes) em travamentos.log, que e
+ * girado ao crescer. Vao tambem para Metricas (edt.evento, edt.travamentos) e para o JFR.
+ *
+ * Um evento que abre um dialogo modal despacha os eventos seguintes dentro de si (um loop secundario);
+ * enquanto isso a EDT esta livre, entao so conta o tempo do evento mais interno, e uma EDT parada a
+ * espera de eventos nunca e tratada como travada.
+ *
+ *   -Dtarefas.edt.limite=200   limite em ms (0 desliga o detector)
+ */
+public final class DetectorTravamentos extends EventQueue {
+    private static final long LIMITE_PADRAO_MS = 200;
+    // Um travamento que nao termina e registrado parcialmente depois desse tempo, para nao se perder
+    private static final long REGISTRO_PARCIAL_MS = 10_000;
+    private static final int MAXIMO_AMOSTRAS = 200;
+    // Pilhas diferentes e quadros de cada uma que vao para o log
+    private static final int PILHAS_NO_LOG = 3;
+    private static final int QUADROS_NO_LOG = 30;
+    private static final long TAMANHO_MAXIMO_LOG = 1024 * 1024;
+    // Arquivos girados mantidos: travamentos.log.1 (o mais recente) ate .3
+    private static final int LOGS_ANTIGOS = 3;
+    private static final DateTimeFormatter FORMATO_DATA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final Metricas.Histograma TEMPO_EVENTO = Metricas.histograma("edt.evento");
+    private static final Metricas.Contador TRAVAMENTOS = Metricas.contador("edt.travamentos");
+
+    // Evento em despacho; 'externo' e o que o despachou por um loop secundario
+    private static final class Despacho {
+        final AWTEvent evento;
+        final long inicio;
+        final Despacho externo;
+        volatile long fim;
+        // Houve despacho aninhado: o tempo do evento inclui o de um dialogo modal
+        boolean aninhou;
+
+        Despacho(AWTEvent evento, long inicio, Despacho externo) {
+            this.evento = evento;
+            this.inicio = inicio;
+            this.externo = externo;
+        }
+    }
+
+    private final long limiteNanos;
+    private final Path log;
+    private final ScheduledExecutorService vigia = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "detector-travamentos");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Escritos pela EDT e lidos pela vigia
+    private volatile Despacho atual;
+    private volatile Thread edt;
+    // Estado da vigia, acessado apenas pela thread dela
+    private Despacho observado;
+    private Despacho ocioso;
+    private final List<StackTraceElement[]> amostras = new ArrayList<>();
+    private boolean registradoParcial;
+
+    private DetectorTravamentos(long limiteMs, Path log) {
+        this.limiteNanos = TimeUnit.MILLISECONDS.toNanos(limiteMs);
+        this.log = log;
+        long periodo = Math.max(10, Math.min(50, limiteMs / 4));
+        vigia.scheduleWithFixedDelay(this::verificar, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    // Instala o detector na fila de eventos do AWT, com o limite de -Dtarefas.edt.limite
+    public static void instalar(Path log) {
+        long limite = LIMITE_PADRAO_MS;
+        String configurado = System.getProperty("tarefas.edt.limite");
+        if (configurado != null) {
+            try {
+                limite = Long.parseLong(configurado.strip());
+            } catch (NumberFormatException e) {
+                System.err.println("Limite de travamento invalido: " + configurado + "; usando " + LIMITE_PADRAO_MS + " ms.");
+            }
+        }
+        if (limite > 0) {
+            Toolkit.getDefaultToolkit().getSystemEventQueue().push(new DetectorTravamentos(limite, log));
+        }
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent evento) {
+        Despacho externo = atual;
+        if (externo != null) {
+            externo.aninhou = true;
+        }
+        Despacho despacho = new Despacho(evento, System.nanoTime(), externo);
+        edt = Thread.currentThread();
+        atual = despacho;
+        try {
+            super.dispatchEvent(evento);
+        } finally {
+            long fim = System.nanoTime();
+            despacho.fim = fim;
+            if (!despacho.aninhou) {
+                TEMPO_EVENTO.registrar(fim - despacho.inicio);
+            }
+            // O evento externo volta a rodar agora; o tempo do loop secundario nao e dele
+            atual = externo != null ? retomar(externo, fim) : null;
+        }
+    }
+
+    private static Despacho retomar(Despacho externo, long agora) {
+        Despacho retomado = new Despacho(externo.evento, agora, externo.externo);
+        retomado.aninhou = true;
+        return retomado;
+    }
+
+    private void verificar() {
+        try {
+            Despacho despacho = atual;
+            long agora = System.nanoTime();
+            if (observado != null && despacho != observado) {
+                registrar(observado, (observado.fim != 0 ? observado.fim : agora) - observado.inicio, false);
+                observado = null;
+            }
+            if (despacho == null || despacho == ocioso || (despacho != observado && agora - despacho.inicio < limiteNanos)) {
+                return;
+            }
+            Thread thread = edt;
+            StackTraceElement[] pilha = thread != null ? thread.getStackTrace() : new StackTraceElement[0];
+            if (despacho != observado) {
+                if (aguardandoEventos(pilha)) {
+                    // Loop secundario de um dialogo modal, parado a espera do usuario
+                    ocioso = despacho;
+                    return;
+                }
+                observado = despacho;
+                amostras.clear();
+                registradoParcial = false;
+            }
+            if (amostras.size() < MAXIMO_AMOSTRAS) {
+                amostras.add(pilha);
+            }
+            if (!registradoParcial && agora - despacho.inicio > TimeUnit.MILLISECONDS.toNanos(REGISTRO_PARCIAL_MS)) {
+                registrar(despacho, agora - despacho.inicio, true);
+                registradoParcial = true;
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean aguardandoEventos(StackTraceElement[] pilha) {
+        for (int i = 0; i < Math.min(pilha.length, 8); i++) {
+            if (pilha[i].getClassName().equals("java.awt.EventQueue") && pilha[i].getMethodName().equals("getNextEvent")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void registrar(Despacho despacho, long duracaoNanos, boolean parcial) {
+        long duracaoMs = TimeUnit.NANOSECONDS.toMillis(duracaoNanos);
+        String acao = descrever(despacho.evento, amostras.isEmpty() ? new StackTraceElement[0] : amostras.get(0));
+        if (!parcial) {
+            TRAVAMENTOS.incrementar();
+            EventosDesempenho.TravamentoEdt evento = new EventosDesempenho.TravamentoEdt();
+            if (evento.shouldCommit()) {
+                evento.duracao = duracaoMs;
+                evento.acao = acao;
+                evento.pilha = amostras.isEmpty() ? "" : formatarPilha(amostras.get(0), 8);
+                evento.commit();
+            }
+        }
+        System.err.printf("Travamento de %d ms na interface (%s)%s; detalhes em %s%n",
+            duracaoMs, acao, parcial ? ", ainda em andamento" : "", log.getFileName());
+
+        StringBuilder entrada = new StringBuilder();
+        entrada.append(LocalDateTime.now().format(FORMATO_DATA))
+               .append(parcial ? " travamento em andamento ha " : " travamento de ")
+               .append(duracaoMs).append(" ms (limite ").append(TimeUnit.NANOSECONDS.toMillis(limiteNanos)).append(" ms)\n")
+               .append("  evento: ").append(acao).append('\n')
+               .append("  amostras: ").append(amostras.size()).append('\n');
+        for (Map.Entry<List<StackTraceElement>, Integer> pilha : pilhasMaisFrequentes()) {
+            entrada.append("  pilha em ").append(pilha.getValue()).append(" de ").append(amostras.size()).append(" amostras:\n")
+                   .append(formatarPilha(pilha.getKey().toArray(new StackTraceElement[0]), QUADROS_NO_LOG));
+        }
+        entrada.append('\n');
+        escrever(entrada.toString());
+    }
+
+    private List<Map.Entry<List<StackTraceElement>, Integer>> pilhasMaisFrequentes() {
+        Map<List<StackTraceElement>, Integer> contagem = new HashMap<>();
+        for (StackTraceElement[] pilha : amostras) {
+            contagem.merge(Arrays.asList(pilha), 1, Integer::sum);
+        }
+        List<Map.Entry<List<StackTraceElement>, Integer>> ordenadas = new ArrayList<>(contagem.entrySet());
+        ordenadas.sort(Map.Entry.<List<StackTraceElement>, Integer>comparingByValue().reversed());
+        return ordenadas.subList(0, Math.min(PILHAS_NO_LOG, ordenadas.size()));
+    }
+
+    private static String formatarPilha(StackTraceElement[] pilha, int quadros) {
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0; i < Math.min(pilha.length, quadros); i++) {
+            texto.append("    at ").append(pilha[i]).append('\n');
+        }
+        if (pilha.length > quadros) {
+            texto.append("    ... mais ").append(pilha.length - quadros).append('\n');
+        }
+        return texto.toString();
+    }
+
+    // Descricao do evento apenas pelos campos dele, sem consultar componentes fora da EDT
+    private static String descrever(AWTEvent evento, StackTraceElement[] pilha) {
+        String origem = evento.getSource() != null ? evento.getSource().getClass().getSimpleName() : "?";
+        if (evento instanceof ActionEvent acao) {
+            return "acao \"" + acao.getActionCommand() + "\" em " + origem;
+        }
+        if (evento instanceof KeyEvent tecla) {
+            String modificadores = InputEvent.getModifiersExText(tecla.getModifiersEx());
+            return "tecla " + (modificadores.isEmpty() ? "" : modificadores + "+") + KeyEvent.getKeyText(tecla.getKeyCode()) + " em " + origem;
+        }
+        if (evento instanceof MouseEvent mouse) {
+            return "mouse " + mouse.paramString().split(",")[0] + " em " + origem;
+        }
+        if (evento instanceof InvocationEvent) {
+            // invokeLater: o Runnable e o quadro logo acima do despacho mais interno
+            for (int i = 1; i < pilha.length; i++) {
+                if (pilha[i].getClassName().equals(InvocationEvent.class.getName()) && pilha[i].getMethodName().equals("dispatch")) {
+                    return "invocacao " + pilha[i - 1];
+                }
+            }
+            return "invocacao " + evento.getClass().getSimpleName();
+        }
+        return evento.getClass().getSimpleName() + " em " + origem;
+    }
+
+    private void escrever(String entrada) {
+        try {
+            if (Files.exists(log) && Files.size(log) + entrada.length() > TAMANHO_MAXIMO_LOG) {
+                girar();
+            }
+            Files.writeString(log, entrada, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Nao foi possivel gravar " + log + ": " + e);
+        }
+    }
+
+    private void girar() throws IOException {
+        for (int i = LOGS_ANTIGOS - 1; i >= 1; i--) {
+            Path origem = antigo(i);
+            if (Files.exists(origem)) {
+                Files.move(origem, antigo(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(log, antigo(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path antigo(int numero) {
+        return log.resolveSibling(log.getFileName() + "." + numero);
+    }
+}
@@ -1,8 +1,7 @@
 import javax.swing.*;
 import java.awt.*;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.Set;
+import java.util.Map;
 
 public class DialogoTarefa {
     private final TemaManager tema;
@@ -13,7 +12,7 @@ public class DialogoTarefa {
     private final JTextField txtData;
     private final JPanel panel;
     
-    public DialogoTarefa(TemaManager tema, Set<String> categorias, Tarefa tarefaExistente) {
+    public DialogoTarefa(TemaManager tema, Map<String, Integer> categorias, Tarefa tarefaExistente) {
         this.tema = tema;
         
         panel = new JPanel(new GridLayout(6, 2, 10, 10));
@@ -53,9 +52,19 @@ public class DialogoTarefa {
         // Categoria
         JLabel lblCategoria = criarLabel("Categoria:");
         comboCategoria = new JComboBox<>();
-        for (String cat : categorias) {
+        for (String cat : categorias.keySet()) {
             comboCategoria.addItem(cat);
         }
+        // Mostra quantas tarefas cada categoria possui, sem alterar o valor selecionado
+        comboCategoria.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Integer quantidade = categorias.get(value);
+                String texto = quantidade != null ? value + " (" + quantidade + ")" : String.valueOf(value);
+                return super.getListCellRendererComponent(list, texto, index, isSelected, cellHasFocus);
+            }
+        });
         comboCategoria.setEditable(true);
         estilizarCombo(comboCategoria);
         if (tarefaExistente != null) {
@@ -68,7 +77,7 @@ public class DialogoTarefa {
         JLabel lblData = criarLabel("Vencimento (dd/mm/aaaa):");
         txtData = criarTextField();
         if (tarefaExistente != null && tarefaExistente.dataVencimento() != null) {
-            txtData.setText(tarefaExistente.dataVencimento().format(DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+            txtData.setText(FormatoTarefa.data(tarefaExistente.dataVencimento()));
         }
         panel.add(lblData);
         panel.add(txtData);
@@ -131,8 +140,7 @@ public class DialogoTarefa {
         if (dataStr.isEmpty()) {
             return null;
         }
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        return LocalDate.parse(dataStr, formatter);
+        return LocalDate.parse(dataStr, FormatoTarefa.DATA);
     }
 }
 
@@ -0,0 +1,408 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Formato do diario: cabecalho seguido de registros
+ *   sequencia (8) + tipo (1) + id (8) [+ tamanho (4) + tarefa codificada]
+ * O cabecalho tem magico + formato e, a partir do formato 3, base (8) + versao do armazem (8): o arquivo
+ * contem todos os registros com sequencia maior que a base e ate a versao, que e a do ultimo gravado.
+ * As sequencias sao do armazem, nao de cada instancia, e so avancam (ver GravadorTarefas).
+ * Nos formatos 1 e 2 o cabecalho tinha so magico + versao do codec; no 1, o registro trazia a posicao
+ * da tarefa na lista (4 bytes) em vez do id.
+ *
+ * Leituras e escritas que alteram o arquivo devem acontecer sob a trava de GravadorTarefas.
+ */
+public class DiarioTarefas {
+    private static final int MAGICO = 0x544C4F47; // "TLOG"
+    // Formato 3: cabecalho com base e versao; os registros seguem o codec da versao 2
+    private static final byte FORMATO = 3;
+    private static final int TAMANHO_CABECALHO_ANTIGO = 5;
+    private static final int TAMANHO_CABECALHO = 21;
+    private static final int POSICAO_BASE = 5;
+    private static final int POSICAO_VERSAO = 13;
+    private static final int CABECALHO_REGISTRO = 17;
+    // Registros mantidos no diario depois de um snapshot, para que outra instancia um pouco atrasada
+    // ainda os encontre em vez de precisar reler o snapshot inteiro
+    private static final int RETENCAO = 128;
+
+    private final Path path;
+    private ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+    // Versao do armazem ate onde o arquivo foi lido ou gravado por esta instancia
+    private long sequencia;
+    private long base;
+    // Fim do ultimo registro completo conhecido; 0 quando o arquivo ainda nao existe
+    private long posicao;
+    private int registros;
+    private int versao = FORMATO;
+    // Posicao no arquivo dos registros mais recentes, indexada pela sequencia modulo RETENCAO
+    private final long[] sequenciasRecentes = new long[RETENCAO];
+    private final long[] posicoesRecentes = new long[RETENCAO];
+
+    public enum TipoRegistro {
+        ADICIONAR, SUBSTITUIR, REMOVER
+    }
+
+    // Em diarios da versao 1, id contem a posicao da tarefa na lista
+    public record Registro(long sequencia, TipoRegistro tipo, long id, Tarefa tarefa) {}
+
+    public DiarioTarefas(Path path) {
+        this.path = path;
+    }
+
+    // Acrescenta um lote de registros, ja numerados a partir da versao atual, com uma unica escrita, e so
+    // retorna depois de forca-la ao disco. Retorna quantos bytes de registros foram gravados.
+    public synchronized int registrar(List<Registro> lote) throws IOException {
+        int tamanhoTotal = 0;
+        for (Registro registro : lote) {
+            tamanhoTotal += CABECALHO_REGISTRO;
+            if (registro.tarefa() != null) {
+                tamanhoTotal += 4 + CodecTarefa.tamanho(registro.tarefa());
+            }
+        }
+        if (buffer.capacity() < tamanhoTotal) {
+            buffer = ByteBuffer.allocate(tamanhoTotal);
+        }
+
+        try (FileChannel c = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (posicao < TAMANHO_CABECALHO) {
+                // Diario novo: comeca logo antes do primeiro registro
+                base = lote.get(0).sequencia() - 1;
+                registros = 0;
+                c.truncate(0);
+                escreverCabecalho(c, base, base);
+                posicao = TAMANHO_CABECALHO;
+            } else if (c.size() > posicao) {
+                // Final incompleto de uma gravacao interrompida
+                c.truncate(posicao);
+            }
+
+            buffer.clear();
+            for (Registro registro : lote) {
+                lembrarPosicao(registro.sequencia(), posicao + buffer.position());
+                buffer.putLong(registro.sequencia())
+                      .put((byte) registro.tipo().ordinal())
+                      .putLong(registro.id());
+                if (registro.tarefa() != null) {
+                    buffer.putInt(CodecTarefa.tamanho(registro.tarefa()));
+                    CodecTarefa.codificar(registro.tarefa(), buffer);
+                }
+            }
+            buffer.flip();
+            long destino = posicao;
+            while (buffer.hasRemaining()) {
+                destino += c.write(buffer, destino);
+            }
+            posicao = destino;
+            sequencia = lote.get(lote.size() - 1).sequencia();
+            registros += lote.size();
+            // A versao so e atualizada depois dos registros; se a gravacao for interrompida entre os
+            // dois, a proxima leitura completa a corrige
+            escreverVersao(c, sequencia);
+            c.force(false);
+        }
+        return tamanhoTotal;
+    }
+
+    // Le os registros posteriores a sequencia do snapshot, descartando um final incompleto.
+    // Diarios do formato 2 sao regravados no formato atual; os do 1 ficam para a migracao.
+    public synchronized List<Registro> ler(long sequenciaSnapshot) throws IOException {
+        List<Registro> lidos = new ArrayList<>();
+        sequencia = sequenciaSnapshot;
+        base = sequenciaSnapshot;
+        posicao = 0;
+        registros = 0;
+        versao = FORMATO;
+        if (!Files.exists(path)) {
+            return lidos;
+        }
+
+        long posicaoValida = 0;
+        long versaoCabecalho = -1;
+        boolean incompativel = false;
+        boolean semCabecalho = false;
+        try (FileChannel leitura = FileChannel.open(path, StandardOpenOption.READ)) {
+            CodecTarefa.Leitor leitor = new CodecTarefa.Leitor(leitura);
+            try {
+                incompativel = leitor.lerInt() != MAGICO;
+                if (!incompativel) {
+                    versao = leitor.lerByte();
+                    incompativel = versao < 1 || versao > FORMATO;
+                }
+                if (!incompativel && versao >= FORMATO) {
+                    base = leitor.lerLong();
+                    versaoCabecalho = leitor.lerLong();
+                }
+            } catch (EOFException cabecalhoIncompleto) {
+                semCabecalho = true;
+            }
+            if (!incompativel && !semCabecalho) {
+                posicaoValida = lerRegistros(leitor, 0, versao, sequenciaSnapshot, lidos);
+            }
+        }
+
+        if (incompativel) {
+            descartarIncompativel();
+            return lidos;
+        }
+        if (semCabecalho) {
+            // O arquivo foi criado mas o cabecalho nao chegou ao disco; a proxima gravacao o refaz
+            Files.delete(path);
+            versao = FORMATO;
+            return lidos;
+        }
+        if (versao == 2) {
+            converter(posicaoValida);
+            return ler(sequenciaSnapshot);
+        }
+        sequencia = Math.max(sequencia, versaoCabecalho);
+        posicao = posicaoValida;
+        try (FileChannel c = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (c.size() > posicaoValida) {
+                c.truncate(posicaoValida);
+            }
+            if (versao >= FORMATO && versaoCabecalho != sequencia) {
+                escreverVersao(c, sequencia);
+            }
+        }
+        return lidos;
+    }
+
+    // Registros gravados por outras instancias depois de 'desde', a versao que esta instancia ja conhece.
+    // Le apenas a partir de onde a leitura anterior parou, ou do inicio quando o arquivo foi refeito.
+    // Retorna null se o diario ja nao tem todos os registros desde 'desde' (foi compactado alem desse
+    // ponto): eles estao so no snapshot.
+    public synchronized List<Registro> lerNovos(long desde) throws IOException {
+        if (!Files.exists(path)) {
+            posicao = 0;
+            return List.of();
+        }
+        try (FileChannel leitura = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer cabecalho = lerCabecalho(leitura);
+            if (cabecalho.limit() < TAMANHO_CABECALHO_ANTIGO) {
+                posicao = 0;
+                return List.of();
+            }
+            if (cabecalho.getInt(0) != MAGICO) {
+                throw new IOException("Diario em formato desconhecido");
+            }
+            if (cabecalho.get(4) != FORMATO) {
+                // Diario antigo, ainda nao migrado: basta saber se mudou desde o carregamento
+                return leitura.size() == posicao ? List.of() : null;
+            }
+            if (cabecalho.limit() < TAMANHO_CABECALHO) {
+                posicao = 0;
+                return List.of();
+            }
+            long baseArquivo = cabecalho.getLong(POSICAO_BASE);
+            long versaoArquivo = cabecalho.getLong(POSICAO_VERSAO);
+            long inicio = posicao;
+            boolean refeito = baseArquivo != base || posicao < TAMANHO_CABECALHO || leitura.size() < posicao;
+            if (refeito) {
+                if (baseArquivo > desde) {
+                    return null;
+                }
+                inicio = TAMANHO_CABECALHO;
+                registros = 0;
+            } else if (leitura.size() == posicao && versaoArquivo <= sequencia) {
+                return List.of();
+            }
+
+            leitura.position(inicio);
+            List<Registro> lidos = new ArrayList<>();
+            long fim = lerRegistros(new CodecTarefa.Leitor(leitura), inicio, FORMATO, desde, lidos);
+            long ultima = lidos.isEmpty() ? desde : lidos.get(lidos.size() - 1).sequencia();
+            if ((!lidos.isEmpty() && lidos.get(0).sequencia() != desde + 1) || versaoArquivo > ultima) {
+                return null;
+            }
+            base = baseArquivo;
+            posicao = fim;
+            sequencia = ultima;
+            return lidos;
+        }
+    }
+
+    // Verificacao rapida, sem a trava, de que o arquivo continua como esta instancia o deixou
+    public synchronized boolean semAlteracoes() {
+        try (FileChannel leitura = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (leitura.size() != posicao) {
+                return false;
+            }
+            ByteBuffer cabecalho = lerCabecalho(leitura);
+            return cabecalho.limit() == TAMANHO_CABECALHO
+                && cabecalho.getLong(POSICAO_BASE) == base
+                && cabecalho.getLong(POSICAO_VERSAO) == sequencia;
+        } catch (NoSuchFileException ausente) {
+            return posicao == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Refaz o diario depois de um snapshot que cobre ate 'versaoSnapshot', mantendo os ultimos registros
+    // (ate RETENCAO) para as instancias que ainda nao os leram. Uma versao alem da ultima gravada
+    // (snapshot de um lote que nao passou pelo diario) deixa o diario vazio, com a base nela.
+    public synchronized void recomecar(long versaoSnapshot) throws IOException {
+        long novaBase = versaoSnapshot;
+        long inicio = posicao;
+        if (versaoSnapshot == sequencia && posicao >= TAMANHO_CABECALHO) {
+            long primeira = Math.max(base, sequencia - RETENCAO) + 1;
+            int i = Math.floorMod(primeira, RETENCAO);
+            if (primeira <= sequencia && sequenciasRecentes[i] == primeira) {
+                novaBase = primeira - 1;
+                inicio = posicoesRecentes[i];
+            }
+        }
+        Path temporario = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel novo = FileChannel.open(temporario,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            escreverCabecalho(novo, novaBase, versaoSnapshot);
+            if (inicio < posicao) {
+                try (FileChannel atual = FileChannel.open(path, StandardOpenOption.READ)) {
+                    transferir(atual, inicio, posicao, novo);
+                }
+            }
+            novo.force(false);
+        }
+        substituir(temporario, path);
+        long deslocamento = TAMANHO_CABECALHO - inicio;
+        for (int i = 0; i < RETENCAO; i++) {
+            posicoesRecentes[i] += deslocamento;
+        }
+        posicao = inicio < posicao ? posicao + deslocamento : TAMANHO_CABECALHO;
+        registros = (int) (versaoSnapshot - novaBase);
+        base = novaBase;
+        sequencia = versaoSnapshot;
+        versao = FORMATO;
+    }
+
+    // Diario vazio na versao informada, para um snapshot gravado fora do fluxo de compactacao
+    public synchronized void reiniciar(long versaoArmazem) throws IOException {
+        Path temporario = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel novo = FileChannel.open(temporario,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            escreverCabecalho(novo, versaoArmazem, versaoArmazem);
+            novo.force(false);
+        }
+        substituir(temporario, path);
+        base = versaoArmazem;
+        sequencia = versaoArmazem;
+        posicao = TAMANHO_CABECALHO;
+        registros = 0;
+        versao = FORMATO;
+    }
+
+    public synchronized int getVersao() {
+        return versao;
+    }
+
+    public synchronized long getSequencia() {
+        return sequencia;
+    }
+
+    public synchronized int getRegistros() {
+        return registros;
+    }
+
+    // Le registros ate o fim do arquivo, guardando em 'lidos' os posteriores a 'desde'. 'inicio' e a posicao
+    // do leitor no arquivo; retorna o fim do ultimo registro completo.
+    private long lerRegistros(CodecTarefa.Leitor leitor, long inicio, int formato, long desde, List<Registro> lidos) {
+        long fim = inicio + leitor.getPosicao();
+        try {
+            while (true) {
+                long seq = leitor.lerLong();
+                TipoRegistro tipo = TipoRegistro.values()[leitor.lerByte()];
+                long id = formato >= 2 ? leitor.lerLong() : leitor.lerInt();
+                Tarefa tarefa = tipo != TipoRegistro.REMOVER ? leitor.lerTarefa(Math.min(formato, CodecTarefa.VERSAO)) : null;
+
+                lembrarPosicao(seq, fim);
+                fim = inicio + leitor.getPosicao();
+                registros++;
+                if (seq > desde) {
+                    lidos.add(new Registro(seq, tipo, id, tarefa));
+                    sequencia = Math.max(sequencia, seq);
+                }
+            }
+        } catch (EOFException fimDoDiario) {
+            // Registro parcial de uma gravacao interrompida
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Diario corrompido, ignorando registros a partir da posicao " + fim);
+        }
+        return fim;
+    }
+
+    private void lembrarPosicao(long seq, long inicioRegistro) {
+        int i = Math.floorMod(seq, RETENCAO);
+        sequenciasRecentes[i] = seq;
+        posicoesRecentes[i] = inicioRegistro;
+    }
+
+    // Regrava um diario do formato 2 com o cabecalho atual; os registros sao copiados sem alteracao
+    private void converter(long fim) throws IOException {
+        Path temporario = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel atual = FileChannel.open(path, StandardOpenOption.READ);
+             FileChannel novo = FileChannel.open(temporario,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            escreverCabecalho(novo, base, sequencia);
+            transferir(atual, TAMANHO_CABECALHO_ANTIGO, fim, novo);
+            novo.force(false);
+        }
+        substituir(temporario, path);
+    }
+
+    // Troca 'destino' pelo arquivo temporario, ja forcado ao disco, e sincroniza o diretorio para que a
+    // renomeacao tambem sobreviva a uma queda
+    static void substituir(Path temporario, Path destino) throws IOException {
+        Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path diretorio = destino.toAbsolutePath().getParent();
+        try (FileChannel canal = FileChannel.open(diretorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException naoSuportado) {
+            // Alguns sistemas (como o Windows) nao permitem abrir um diretorio como canal
+        }
+    }
+
+    private void descartarIncompativel() throws IOException {
+        Path antigo = path.resolveSibling(path.getFileName() + ".antigo");
+        System.err.println("Diario em formato desconhecido, movido para " + antigo);
+        Files.move(path, antigo, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Ate TAMANHO_CABECALHO bytes do inicio do arquivo; o limite do buffer e o que havia para ler
+    private static ByteBuffer lerCabecalho(FileChannel origem) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+        while (cabecalho.hasRemaining()) {
+            if (origem.read(cabecalho, cabecalho.position()) < 0) {
+                break;
+            }
+        }
+        return cabecalho.flip();
+    }
+
+    private static void transferir(FileChannel origem, long inicio, long fim, FileChannel destino) throws IOException {
+        long posicao = inicio;
+        while (posicao < fim) {
+            posicao += origem.transferTo(posicao, fim - posicao, destino);
+        }
+    }
+
+    // Escreve na posicao atual do canal, que deve ser o inicio de um arquivo novo
+    private static void escreverCabecalho(FileChannel destino, long base, long versaoArmazem) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO)
+            .putInt(MAGICO).put(FORMATO).putLong(base).putLong(versaoArmazem).flip();
+        while (cabecalho.hasRemaining()) {
+            destino.write(cabecalho);
+        }
+    }
+
+    private static void escreverVersao(FileChannel destino, long versaoArmazem) throws IOException {
+        ByteBuffer versao = ByteBuffer.allocate(8).putLong(versaoArmazem).flip();
+        long posicao = POSICAO_VERSAO;
+        while (versao.hasRemaining()) {
+            posicao += destino.write(versao, posicao);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dicionario de categorias do servico: cada nome recebe um codigo inteiro pequeno, na ordem em que
+// aparece, e uma unica instancia de String compartilhada por todas as tarefas da categoria. Os
+// codigos nunca mudam nem sao reaproveitados, entao podem ser guardados fora do dicionario.
+public class DicionarioCategorias {
+    // Codigo de uma categoria nula
+    public static final int SEM_CATEGORIA = -1;
+
+    private final List<String> nomes = new ArrayList<>();
+    private final Map<String, Integer> codigos = new HashMap<>();
+
+    public synchronized int codigo(String nome) {
+        if (nome == null) {
+            return SEM_CATEGORIA;
+        }
+        Integer codigo = codigos.get(nome);
+        if (codigo == null) {
+            codigo = nomes.size();
+            nomes.add(nome);
+            codigos.put(nome, codigo);
+        }
+        return codigo;
+    }
+
+    public synchronized String nome(int codigo) {
+        return codigo != SEM_CATEGORIA ? nomes.get(codigo) : null;
+    }
+
+    // Instancia compartilhada do nome, registrando-o se for novo
+    public synchronized String canonica(String nome) {
+        return nome(codigo(nome));
+    }
+
+    // Nomes em ordem de codigo
+    public synchronized List<String> nomes() {
+        return List.copyOf(nomes);
+    }
+}
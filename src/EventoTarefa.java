@@ -0,0 +1,29 @@
+// Alteracao em uma tarefa, publicada pelo TarefaService aos seus ouvintes.
+// 'anterior' e nulo quando a tarefa foi adicionada e 'atual' e nulo quando ela foi removida.
+public record EventoTarefa(Tipo tipo, long id, Tarefa anterior, Tarefa atual) {
+
+    public enum Tipo {
+        ADICIONADA, ATUALIZADA, REMOVIDA
+    }
+
+    public static EventoTarefa adicionada(Tarefa tarefa) {
+        return new EventoTarefa(Tipo.ADICIONADA, tarefa.id(), null, tarefa);
+    }
+
+    public static EventoTarefa atualizada(Tarefa anterior, Tarefa atual) {
+        return new EventoTarefa(Tipo.ATUALIZADA, atual.id(), anterior, atual);
+    }
+
+    public static EventoTarefa removida(Tarefa anterior) {
+        return new EventoTarefa(Tipo.REMOVIDA, anterior.id(), anterior, null);
+    }
+
+    // Um unico evento com o efeito deste seguido de um posterior sobre a mesma tarefa,
+    // ou nulo quando os dois se anulam (adicionada e removida no mesmo lote)
+    public EventoTarefa seguidoDe(EventoTarefa posterior) {
+        if (posterior.atual == null) {
+            return anterior == null ? null : removida(anterior);
+        }
+        return anterior == null ? adicionada(posterior.atual) : atualizada(anterior, posterior.atual);
+    }
+}
@@ -0,0 +1,132 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*
+ * Eventos do JDK Flight Recorder para as operacoes que costumam pesar: gravacao e leitura dos arquivos,
+ * consultas que copiam ou filtram tarefas, atualizacao da lista na interface e exportacoes. Ficam em uma
+ * gravacao do JFR junto com GC, locks e I/O do proprio JDK:
+ *
+ *   java -XX:StartFlightRecording=filename=todoapp.jfr -cp <classes> TodoApp
+ *   jfr print --categories TodoApp todoapp.jfr
+ *
+ * Sem gravacao ativa, begin() e commit() nao fazem nada. As mesmas medicoes vao para Metricas.
+ */
+public final class EventosDesempenho {
+    private EventosDesempenho() {}
+
+    // Falhas de persistencia, que antes so apareciam no console
+    public static void falha(String operacao, Exception erro) {
+        Metricas.contador("falhas." + operacao).incrementar();
+        Falha evento = new Falha();
+        if (evento.shouldCommit()) {
+            evento.operacao = operacao;
+            evento.erro = String.valueOf(erro);
+            evento.commit();
+        }
+    }
+
+    @Name("todoapp.Snapshot")
+    @Label("Gravacao do snapshot")
+    @Category({"TodoApp", "Persistencia"})
+    public static final class Snapshot extends Event {
+        @Label("Tarefas")
+        public int tarefas;
+        @Label("Bytes") @DataAmount
+        public long bytes;
+        @Label("Versao do armazem")
+        public long versao;
+    }
+
+    @Name("todoapp.Diario")
+    @Label("Gravacao no diario")
+    @Category({"TodoApp", "Persistencia"})
+    public static final class Diario extends Event {
+        @Label("Registros")
+        public int registros;
+        @Label("Bytes") @DataAmount
+        public long bytes;
+    }
+
+    @Name("todoapp.Carga")
+    @Label("Carregamento das tarefas")
+    @Category({"TodoApp", "Persistencia"})
+    public static final class Carga extends Event {
+        @Label("Tarefas do snapshot")
+        public int tarefas;
+        @Label("Registros do diario")
+        public int registros;
+        @Label("Bytes") @DataAmount
+        public long bytes;
+    }
+
+    @Name("todoapp.Falha")
+    @Label("Falha de persistencia")
+    @Category({"TodoApp", "Persistencia"})
+    public static final class Falha extends Event {
+        @Label("Operacao")
+        public String operacao;
+        @Label("Erro")
+        public String erro;
+    }
+
+    @Name("todoapp.Consulta")
+    @Label("Consulta de tarefas")
+    @Description("Consulta do servico que filtra ou copia tarefas")
+    @Category({"TodoApp", "Servico"})
+    @StackTrace(false)
+    public static final class Consulta extends Event {
+        @Label("Operacao")
+        public String operacao;
+        @Label("Filtro")
+        public String filtro;
+        @Label("Tarefas")
+        public int tarefas;
+    }
+
+    @Name("todoapp.AtualizacaoLista")
+    @Label("Atualizacao da lista")
+    @Category({"TodoApp", "Interface"})
+    @StackTrace(false)
+    public static final class AtualizacaoLista extends Event {
+        @Label("Incremental")
+        @Description("Aplicacao de eventos do servico, em vez de uma nova copia da visao")
+        public boolean incremental;
+        @Label("Eventos")
+        public int eventos;
+        @Label("Tarefas na lista")
+        public int tarefas;
+    }
+
+    // Registrado quando o travamento termina; a pilha e a primeira amostra, tirada ao passar do limite
+    @Name("todoapp.TravamentoEdt")
+    @Label("Travamento da interface")
+    @Description("Evento da EDT que passou do limite de DetectorTravamentos")
+    @Category({"TodoApp", "Interface"})
+    @StackTrace(false)
+    public static final class TravamentoEdt extends Event {
+        @Label("Duracao") @Timespan(Timespan.MILLISECONDS)
+        public long duracao;
+        @Label("Evento")
+        public String acao;
+        @Label("Pilha da EDT")
+        public String pilha;
+    }
+
+    @Name("todoapp.Exportacao")
+    @Label("Exportacao")
+    @Category({"TodoApp", "Exportacao"})
+    public static final class Exportacao extends Event {
+        @Label("Formato")
+        public String formato;
+        @Label("Tarefas")
+        public int tarefas;
+        @Label("Bytes") @DataAmount
+        public long bytes;
+    }
+}
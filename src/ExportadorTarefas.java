@@ -0,0 +1,307 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/*
+ * Exportacao em fluxo: cada tarefa e escrita diretamente no arquivo por um buffer de tamanho
+ * fixo, com o escape feito em uma unica passada. A memoria usada nao depende da quantidade
+ * de tarefas e o arquivo comeca a ser gravado desde a primeira.
+ */
+public final class ExportadorTarefas {
+    private static final int TAMANHO_BUFFER = 16 * 1024;
+    // Uma tarefa isolada raramente passa disso; o buffer e descarregado quando enche
+    private static final int TAMANHO_BUFFER_TAREFA = 1024;
+    // De quantas em quantas tarefas o progresso e verificado
+    private static final int INTERVALO_PROGRESSO = 1024;
+    // Primeira linha do CSV; ImportadorTarefas a reconhece para nao importa-la como tarefa
+    static final String CABECALHO_CSV = "Descrição;Status;Observação;Prioridade;Categoria;Data Vencimento";
+    private static final char[] HEXA = "0123456789abcdef".toCharArray();
+    private static final Metricas.Histograma TEMPO_CSV = Metricas.histograma("exportacao.csv");
+    private static final Metricas.Histograma TEMPO_JSON = Metricas.histograma("exportacao.json");
+    private static final Metricas.Contador BYTES_EXPORTADOS = Metricas.contador("exportacao.bytes");
+
+    private ExportadorTarefas() {}
+
+    // O progresso recebe o percentual concluido (0 a 100) e pode ser nulo
+    public static void exportarCSV(List<Tarefa> tarefas, Path destino, IntConsumer progresso) throws IOException {
+        exportar(destino, progresso, tarefas.size(), "csv", saida -> documentoCSV(saida, tarefas));
+    }
+
+    public static void exportarJSON(List<Tarefa> tarefas, Path destino, IntConsumer progresso) throws IOException {
+        exportar(destino, progresso, tarefas.size(), "json", saida -> documentoJSON(saida, tarefas, false));
+    }
+
+    // Os mesmos documentos escritos em um fluxo, que e fechado ao final
+    public static void exportarCSV(List<Tarefa> tarefas, OutputStream destino) throws IOException {
+        escrever(destino, null, tarefas.size(), "csv", saida -> documentoCSV(saida, tarefas));
+    }
+
+    // Com 'comIds', cada tarefa leva tambem o campo "id" (ignorado pela importacao)
+    public static void exportarJSON(List<Tarefa> tarefas, OutputStream destino, boolean comIds) throws IOException {
+        escrever(destino, null, tarefas.size(), "json", saida -> documentoJSON(saida, tarefas, comIds));
+    }
+
+    // Uma unica tarefa, como objeto JSON com id
+    public static void exportarJSON(Tarefa tarefa, OutputStream destino) throws IOException {
+        try (Saida saida = new Saida(destino, null, 1, TAMANHO_BUFFER_TAREFA)) {
+            objetoJSON(saida, tarefa, "", true);
+        }
+    }
+
+    private static void documentoCSV(Saida saida, List<Tarefa> tarefas) throws IOException {
+        saida.escrever(CABECALHO_CSV);
+        saida.escrever('\n');
+        for (int i = 0; i < tarefas.size(); i++) {
+            Tarefa t = tarefas.get(i);
+            if (t == null) {
+                // Removida depois que a lista foi obtida (TarefaService.getTarefasSobDemanda)
+                saida.tarefaEscrita(i + 1);
+                continue;
+            }
+            saida.escreverCSV(t.descricao());
+            saida.escrever(t.concluida() ? ";Concluída;" : ";Pendente;");
+            saida.escreverCSV(t.observacao());
+            saida.escrever(';');
+            saida.escrever(String.valueOf(t.prioridade()));
+            saida.escrever(';');
+            saida.escreverCSV(t.categoria());
+            saida.escrever(';');
+            if (t.dataVencimento() != null) {
+                saida.escreverData(t.dataVencimento());
+            }
+            saida.escrever('\n');
+            saida.tarefaEscrita(i + 1);
+        }
+    }
+
+    private static void documentoJSON(Saida saida, List<Tarefa> tarefas, boolean comIds) throws IOException {
+        saida.escrever("{\n  \"tarefas\": [");
+        boolean primeira = true;
+        for (int i = 0; i < tarefas.size(); i++) {
+            Tarefa t = tarefas.get(i);
+            if (t != null) {
+                saida.escrever(primeira ? "\n    " : ",\n    ");
+                objetoJSON(saida, t, "    ", comIds);
+                primeira = false;
+            }
+            saida.tarefaEscrita(i + 1);
+        }
+        saida.escrever("\n  ]\n}");
+    }
+
+    // Objeto de uma tarefa; 'recuo' e o da chave de abertura, e os campos ficam dois espacos adiante
+    private static void objetoJSON(Saida saida, Tarefa t, String recuo, boolean comId) throws IOException {
+        saida.escrever("{\n");
+        if (comId) {
+            saida.escrever(recuo);
+            saida.escrever("  \"id\": ");
+            saida.escrever(Long.toString(t.id()));
+            saida.escrever(",\n");
+        }
+        saida.escrever(recuo);
+        saida.escrever("  \"descricao\": \"");
+        saida.escreverJSON(t.descricao());
+        saida.escrever("\",\n");
+        saida.escrever(recuo);
+        saida.escrever("  \"concluida\": ");
+        saida.escrever(t.concluida() ? "true" : "false");
+        saida.escrever(",\n");
+        saida.escrever(recuo);
+        saida.escrever("  \"observacao\": \"");
+        saida.escreverJSON(t.observacao());
+        saida.escrever("\",\n");
+        saida.escrever(recuo);
+        saida.escrever("  \"prioridade\": \"");
+        saida.escrever(String.valueOf(t.prioridade()));
+        saida.escrever("\",\n");
+        saida.escrever(recuo);
+        saida.escrever("  \"categoria\": \"");
+        saida.escreverJSON(t.categoria());
+        saida.escrever("\",\n");
+        saida.escrever(recuo);
+        saida.escrever("  \"dataVencimento\": ");
+        LocalDate vencimento = t.dataVencimento();
+        if (vencimento != null) {
+            saida.escrever('"');
+            saida.escrever(vencimento.toString());
+            saida.escrever('"');
+        } else {
+            saida.escrever("null");
+        }
+        saida.escrever('\n');
+        saida.escrever(recuo);
+        saida.escrever('}');
+    }
+
+    private interface Conteudo {
+        void escrever(Saida saida) throws IOException;
+    }
+
+    // Um arquivo incompleto (por erro ou cancelamento) e apagado
+    private static void exportar(Path destino, IntConsumer progresso, int total, String formato, Conteudo conteudo) throws IOException {
+        try {
+            escrever(Files.newOutputStream(destino), progresso, total, formato, conteudo);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(destino);
+            throw e;
+        }
+    }
+
+    // Escreve o documento e registra o tempo e os bytes em Metricas e, com o JFR gravando, em um evento
+    private static void escrever(OutputStream destino, IntConsumer progresso, int total, String formato, Conteudo conteudo) throws IOException {
+        EventosDesempenho.Exportacao evento = new EventosDesempenho.Exportacao();
+        evento.begin();
+        long inicio = System.nanoTime();
+        Contagem contagem = new Contagem(destino);
+        try (Saida saida = new Saida(contagem, progresso, total, TAMANHO_BUFFER)) {
+            conteudo.escrever(saida);
+        }
+        (formato.equals("csv") ? TEMPO_CSV : TEMPO_JSON).registrar(System.nanoTime() - inicio);
+        BYTES_EXPORTADOS.somar(contagem.bytes);
+        evento.formato = formato;
+        evento.tarefas = total;
+        evento.bytes = contagem.bytes;
+        evento.commit();
+    }
+
+    // Conta os bytes que passam para o destino; o OutputStreamWriter ja escreve em blocos
+    private static final class Contagem extends FilterOutputStream {
+        long bytes;
+
+        Contagem(OutputStream destino) {
+            super(destino);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int inicio, int tamanho) throws IOException {
+            out.write(b, inicio, tamanho);
+            bytes += tamanho;
+        }
+    }
+
+    private static final class Saida implements Closeable {
+        private final Writer writer;
+        private final char[] buffer;
+        private final StringBuilder data = new StringBuilder(10);
+        private final IntConsumer progresso;
+        private final int total;
+        private int posicao;
+        private int percentual = -1;
+
+        Saida(OutputStream destino, IntConsumer progresso, int total, int tamanhoBuffer) {
+            this.buffer = new char[tamanhoBuffer];
+            this.writer = new OutputStreamWriter(destino, StandardCharsets.UTF_8);
+            this.progresso = progresso;
+            this.total = total;
+        }
+
+        void escrever(char c) throws IOException {
+            if (posicao == buffer.length) {
+                descarregar();
+            }
+            buffer[posicao++] = c;
+        }
+
+        void escrever(String texto) throws IOException {
+            int inicio = 0;
+            while (inicio < texto.length()) {
+                if (posicao == buffer.length) {
+                    descarregar();
+                }
+                int fim = Math.min(texto.length(), inicio + buffer.length - posicao);
+                texto.getChars(inicio, fim, buffer, posicao);
+                posicao += fim - inicio;
+                inicio = fim;
+            }
+        }
+
+        // dd/MM/yyyy montada no builder reaproveitado, sem criar uma String por linha
+        void escreverData(LocalDate data) throws IOException {
+            this.data.setLength(0);
+            FormatoTarefa.anexarData(this.data, data);
+            for (int i = 0; i < this.data.length(); i++) {
+                escrever(this.data.charAt(i));
+            }
+        }
+
+        // Campo entre aspas, com as aspas internas duplicadas; nulo vira campo vazio
+        void escreverCSV(String valor) throws IOException {
+            if (valor == null) {
+                return;
+            }
+            escrever('"');
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                if (c == '"') {
+                    escrever('"');
+                }
+                escrever(c);
+            }
+            escrever('"');
+        }
+
+        // Conteudo de uma string JSON, sem as aspas; nulo vira string vazia
+        void escreverJSON(String valor) throws IOException {
+            if (valor == null) {
+                return;
+            }
+            for (int i = 0; i < valor.length(); i++) {
+                char c = valor.charAt(i);
+                switch (c) {
+                    case '\\' -> escrever("\\\\");
+                    case '"' -> escrever("\\\"");
+                    case '\n' -> escrever("\\n");
+                    case '\r' -> escrever("\\r");
+                    case '\t' -> escrever("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            escrever("\\u00");
+                            escrever(HEXA[c >> 4]);
+                            escrever(HEXA[c & 0xF]);
+                        } else {
+                            escrever(c);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Informa o progresso e interrompe a exportacao se a thread tiver sido cancelada
+        void tarefaEscrita(int escritas) throws IOException {
+            if (escritas % INTERVALO_PROGRESSO != 0 && escritas != total) {
+                return;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Exportacao cancelada");
+            }
+            int atual = (int) (100L * escritas / Math.max(total, 1));
+            if (progresso != null && atual != percentual) {
+                percentual = atual;
+                progresso.accept(atual);
+            }
+        }
+
+        private void descarregar() throws IOException {
+            writer.write(buffer, 0, posicao);
+            posicao = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                descarregar();
+            } finally {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/*
+ * Textos exibidos para as tarefas (linha da lista, detalhes, datas). O formatador de datas e
+ * compartilhado, e cada thread reaproveita o seu StringBuilder, de modo que montar um texto
+ * aloca apenas a String resultante.
+ */
+public final class FormatoTarefa {
+    public static final DateTimeFormatter DATA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final String SEM_CATEGORIA_VISIVEL = "Geral";
+    // Builders que cresceram alem disso (observacoes longas) sao descartados apos o uso
+    private static final int CAPACIDADE_MAXIMA = 4096;
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(128));
+
+    private FormatoTarefa() {}
+
+    // "[X] Descricao [Categoria] (dd/MM/yyyy)", o texto de Tarefa.toString()
+    public static String linha(Tarefa t) {
+        StringBuilder sb = builder();
+        anexarLinha(sb, t);
+        return texto(sb);
+    }
+
+    // Linha da JList: "   id.  " + linha + "  " + prioridade
+    public static String linhaLista(Tarefa t) {
+        StringBuilder sb = builder();
+        sb.append("   ").append(t.id()).append(".  ");
+        anexarLinha(sb, t);
+        sb.append("  ").append(t.prioridade());
+        return texto(sb);
+    }
+
+    public static String detalhes(Tarefa t) {
+        StringBuilder sb = builder();
+        sb.append("\n================================\n");
+        sb.append("DETALHES DA TAREFA\n");
+        sb.append("================================\n\n");
+        sb.append("Descricao: ").append(t.descricao()).append("\n");
+        sb.append("Status: ").append(t.concluida() ? "Concluida" : "Pendente").append("\n");
+        sb.append("Prioridade: ").append(t.prioridade()).append("\n");
+        sb.append("Categoria: ").append(t.categoria()).append("\n");
+
+        if (t.dataVencimento() != null) {
+            sb.append("Vencimento: ");
+            anexarData(sb, t.dataVencimento());
+            sb.append("\n");
+        } else {
+            sb.append("Vencimento: Sem data definida\n");
+        }
+
+        if (t.observacao() != null && !t.observacao().isEmpty()) {
+            sb.append("\nObservacao:\n");
+            sb.append(t.observacao()).append("\n");
+        }
+
+        sb.append("\n================================\n");
+        return texto(sb);
+    }
+
+    public static String data(LocalDate data) {
+        StringBuilder sb = builder();
+        anexarData(sb, data);
+        return texto(sb);
+    }
+
+    // dd/MM/yyyy digito a digito; anos fora de 1..9999 ficam com o formatador, que trata sinal e era
+    public static void anexarData(StringBuilder sb, LocalDate data) {
+        int ano = data.getYear();
+        if (ano < 1 || ano > 9999) {
+            DATA.formatTo(data, sb);
+            return;
+        }
+        anexarDigitos(sb, data.getDayOfMonth(), 2);
+        sb.append('/');
+        anexarDigitos(sb, data.getMonthValue(), 2);
+        sb.append('/');
+        anexarDigitos(sb, ano, 4);
+    }
+
+    private static void anexarLinha(StringBuilder sb, Tarefa t) {
+        sb.append(t.concluida() ? "[X] " : "[ ] ");
+        sb.append(t.descricao());
+
+        String categoria = t.categoria();
+        if (categoria != null && !categoria.isEmpty() && !categoria.equals(SEM_CATEGORIA_VISIVEL)) {
+            sb.append(" [").append(categoria).append("]");
+        }
+
+        if (t.dataVencimento() != null) {
+            sb.append(" (");
+            anexarData(sb, t.dataVencimento());
+            sb.append(")");
+        }
+    }
+
+    private static void anexarDigitos(StringBuilder sb, int valor, int digitos) {
+        for (int divisor = digitos == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            sb.append((char) ('0' + valor / divisor % 10));
+        }
+    }
+
+    private static StringBuilder builder() {
+        StringBuilder sb = BUILDER.get();
+        sb.setLength(0);
+        return sb;
+    }
+
+    private static String texto(StringBuilder sb) {
+        String texto = sb.toString();
+        if (sb.capacity() > CAPACIDADE_MAXIMA) {
+            BUILDER.set(new StringBuilder(128));
+        }
+        return texto;
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/*
+ * Gerador de listas de tarefas sinteticas, sem interface grafica. A mesma semente e a mesma data de
+ * referencia geram sempre as mesmas tarefas, para medicoes e testes de carga reproduziveis.
+ *
+ *   java -cp <classes> GeradorTarefas <quantidade> <destino> [semente] [referencia AAAA-MM-DD]
+ *
+ * Destinos terminados em .csv ou .json recebem uma exportacao, que pode ser importada pela
+ * aplicacao; qualquer outro destino e tratado como diretorio de dados (tarefas.dat e tarefas.log).
+ */
+public final class GeradorTarefas {
+    public static final long SEMENTE_PADRAO = 42;
+
+    private static final String[] VERBOS = {
+        "Revisar", "Enviar", "Comprar", "Ligar para", "Agendar", "Preparar", "Estudar", "Organizar",
+        "Pagar", "Responder", "Atualizar", "Planejar", "Corrigir", "Escrever", "Ler", "Limpar"
+    };
+    private static final String[] OBJETOS = {
+        "relatorio mensal", "orcamento", "contrato", "apresentacao", "consulta medica", "mercado",
+        "documentacao", "fatura do cartao", "e-mail do cliente", "curriculo", "backup", "reuniao de equipe",
+        "capitulo 3", "garagem", "plano de viagem", "testes de integracao", "notas fiscais", "aluguel"
+    };
+    private static final String[] CATEGORIAS = {
+        "Geral", "Trabalho", "Casa", "Estudos", "Saude", "Financas", "Compras", "Lazer", "Viagem", "Projetos"
+    };
+    private static final String[] OBSERVACOES = {
+        "Verificar com a equipe antes de concluir.",
+        "Prazo combinado por telefone; confirmar por e-mail.",
+        "Levar documentos originais e copias.",
+        "Depende da aprovacao do financeiro.",
+        "Separar uma hora sem interrupcoes para isso."
+    };
+    private static final Tarefa.Prioridade[] PRIORIDADES = Tarefa.Prioridade.values();
+
+    private GeradorTarefas() {}
+
+    // Tarefas com ids de 1 a 'quantidade'; os vencimentos ficam entre 30 dias antes e 60 dias depois da referencia
+    public static List<Tarefa> gerar(int quantidade, long semente, LocalDate referencia) {
+        SplittableRandom aleatorio = new SplittableRandom(semente);
+        List<Tarefa> tarefas = new ArrayList<>(quantidade);
+        for (int i = 1; i <= quantidade; i++) {
+            String descricao = VERBOS[aleatorio.nextInt(VERBOS.length)] + " "
+                + OBJETOS[aleatorio.nextInt(OBJETOS.length)] + " #" + i;
+            // Cerca de um terco das tarefas tem observacao e metade tem vencimento
+            String observacao = aleatorio.nextInt(3) == 0 ? OBSERVACOES[aleatorio.nextInt(OBSERVACOES.length)] : "";
+            LocalDate vencimento = aleatorio.nextBoolean() ? referencia.plusDays(aleatorio.nextInt(-30, 61)) : null;
+            tarefas.add(new Tarefa(i, descricao, aleatorio.nextInt(4) == 0, observacao,
+                PRIORIDADES[aleatorio.nextInt(PRIORIDADES.length)], CATEGORIAS[aleatorio.nextInt(CATEGORIAS.length)],
+                vencimento));
+        }
+        return tarefas;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Uso: GeradorTarefas <quantidade> <destino.csv|destino.json|diretorio> [semente] [referencia AAAA-MM-DD]");
+            System.exit(2);
+        }
+        int quantidade = Integer.parseInt(args[0]);
+        Path destino = Paths.get(args[1]);
+        long semente = args.length > 2 ? Long.parseLong(args[2]) : SEMENTE_PADRAO;
+        LocalDate referencia = args.length > 3 ? LocalDate.parse(args[3]) : LocalDate.now();
+
+        long inicio = System.nanoTime();
+        List<Tarefa> tarefas = gerar(quantidade, semente, referencia);
+        String nome = destino.getFileName().toString().toLowerCase();
+        if (nome.endsWith(".csv")) {
+            ExportadorTarefas.exportarCSV(tarefas, destino, null);
+        } else if (nome.endsWith(".json")) {
+            ExportadorTarefas.exportarJSON(tarefas, destino, null);
+        } else {
+            Files.createDirectories(destino);
+            TarefaService service = new TarefaService(TarefaService.Armazenamento.MEMORIA, destino);
+            service.adicionarTodas(tarefas);
+            service.fechar();
+        }
+        System.out.printf("%d tarefas geradas em %s (%d ms)%n", quantidade, destino, (System.nanoTime() - inicio) / 1_000_000);
+    }
+}
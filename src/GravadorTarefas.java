@@ -0,0 +1,694 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/*
+ * Persistencia das tarefas fora da thread da interface: as mutacoes apenas enfileiram
+ * registros e uma unica thread de gravacao descarrega cada rajada no diario de uma vez.
+ * Quando o diario cresce demais, a mesma thread grava um novo snapshot.
+ *
+ * Varias instancias (processos ou servicos) podem usar os mesmos arquivos. Toda escrita acontece sob a
+ * trava (tarefas.lock) e so depois de conferir que o diario ainda esta na versao do armazem que esta
+ * instancia conhece. Se outra gravou antes, os registros dela sao lidos e entregues ao Receptor, que os
+ * aplica e resolve os conflitos com as mutacoes ainda pendentes daqui, e a conferencia e refeita. Um
+ * VigiaDiretorio traz as gravacoes externas tambem enquanto esta instancia nao grava nada.
+ */
+public class GravadorTarefas {
+    private static final int MAGICO = 0x54444154; // "TDAT"
+    // Dois primeiros bytes de um arquivo gerado por ObjectOutputStream
+    private static final int MAGICO_SERIALIZACAO = 0xACED;
+    // Quantidade de registros no diario que dispara a compactacao em snapshot
+    private static final int LIMITE_DIARIO = 500;
+    // Janela em que mutacoes consecutivas sao agrupadas em uma unica escrita
+    private static final long ATRASO_DESCARGA_MS = 200;
+    // Uma gravacao externa costuma gerar alguns eventos seguidos (registros, versao, troca de arquivo)
+    private static final long ATRASO_SINCRONIZACAO_MS = 20;
+    // Cada medicao vai tambem para um evento do JFR (EventosDesempenho), com os detalhes da operacao
+    private static final Metricas.Histograma TEMPO_SNAPSHOT = Metricas.histograma("gravador.snapshot");
+    private static final Metricas.Histograma TEMPO_DIARIO = Metricas.histograma("gravador.diario");
+    private static final Metricas.Histograma TEMPO_CARGA = Metricas.histograma("gravador.carga");
+    private static final Metricas.Contador BYTES_GRAVADOS = Metricas.contador("gravador.bytes");
+    private static final Metricas.Contador REGISTROS_EXTERNOS = Metricas.contador("gravador.registros.externos");
+
+    private final Path path;
+    private final Path pathDiario;
+    private final DiarioTarefas diario;
+    private final TravaArquivo trava;
+    // Nulo quando o gravador so le os arquivos (como na importacao para o armazem mapeado)
+    private final Receptor receptor;
+    // Categorias gravadas uma unica vez no cabecalho do snapshot; os registros levam so o codigo
+    private final DicionarioCategorias categorias;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "gravador-tarefas");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private VigiaDiretorio vigia;
+
+    private final ArrayDeque<Pendente> pendentes = new ArrayDeque<>();
+    // Cada tarefa com mutacoes pendentes, como estava antes delas (null se ainda nao existia)
+    private final Map<Long, Tarefa> bases = new HashMap<>();
+    // Numero da ultima mutacao enfileirada; conta tambem os lotes gravados apenas por snapshot
+    private long enfileiradas;
+    // Lote ainda nao gravado que nao passou pelo diario; o snapshot que o incluir precisa de versao propria
+    private long loteForaDoDiario;
+    // Tarefas desse lote, que tambem tem base ate o snapshot ser gravado
+    private final Set<Long> idsForaDoDiario = new HashSet<>();
+    // Versao do armazem ate a qual esta instancia ja incorporou os arquivos
+    private long versaoConhecida;
+    // Quantas vezes gravacoes externas foram aplicadas; uma copia tirada antes disso nao serve de snapshot
+    private long aplicacoes;
+    private long ordemCopia;
+    private long aplicacoesCopia;
+    private int registrosNoDiario;
+    private boolean descargaAgendada;
+    private boolean sincronizacaoAgendada;
+    private boolean compactando;
+    private boolean formatoSerializado;
+
+    // Quem aplica ao servico o que outras instancias gravaram. E chamado na thread de gravacao, fora da trava.
+    public interface Receptor {
+        // Registros do diario gravados por outras instancias, em ordem de sequencia
+        void registrosExternos(List<DiarioTarefas.Registro> registros);
+
+        // O diario foi compactado alem do que esta instancia leu: as tarefas do snapshot atual e os registros
+        // posteriores a ele, para serem comparados com o que esta na memoria
+        void estadoExterno(ArrayList<Tarefa> snapshot, List<DiarioTarefas.Registro> registros);
+
+        // Copia das tarefas para um snapshot; deve chamar marcarCopia() sob a mesma exclusao que protege a
+        // copia das mutacoes, para que se saiba exatamente quais delas ela inclui
+        List<Tarefa> copiarTarefas();
+    }
+
+    public GravadorTarefas(Path path, Path pathDiario, DicionarioCategorias categorias, Receptor receptor) {
+        this.path = path;
+        this.pathDiario = pathDiario;
+        this.diario = new DiarioTarefas(pathDiario);
+        this.trava = new TravaArquivo(path.resolveSibling("tarefas.lock"));
+        this.categorias = categorias;
+        this.receptor = receptor;
+    }
+
+    // Mutacao ainda sem numero de sequencia, usada para registrar lotes. 'anterior' e a tarefa antes dela
+    // (nula ao adicionar), para reconhecer conflitos com gravacoes de outras instancias.
+    public record Mutacao(DiarioTarefas.TipoRegistro tipo, long id, Tarefa tarefa, Tarefa anterior) {}
+
+    private record Pendente(long ordem, Mutacao mutacao) {}
+
+    private interface AcaoTravada {
+        void executar() throws IOException;
+    }
+
+    // Chamado na thread que altera a lista; nao realiza I/O
+    public synchronized void registrar(DiarioTarefas.TipoRegistro tipo, long id, Tarefa tarefa, Tarefa anterior) {
+        enfileirar(new Mutacao(tipo, id, tarefa, anterior));
+        agendarDescarga();
+        if (registrosNoDiario >= LIMITE_DIARIO && !compactando) {
+            agendarCompactacao();
+        }
+    }
+
+    // Registra um lote de mutacoes como uma unica gravacao. Lotes grandes nao passam pelo
+    // diario: um snapshot do estado atual, que ja inclui o lote, sai mais barato.
+    public synchronized void registrarLote(List<Mutacao> lote) {
+        if (lote.isEmpty()) {
+            return;
+        }
+        if (lote.size() >= LIMITE_DIARIO && !compactando && receptor != null) {
+            loteForaDoDiario = ++enfileiradas;
+            for (Mutacao mutacao : lote) {
+                bases.putIfAbsent(mutacao.id(), mutacao.anterior());
+                idsForaDoDiario.add(mutacao.id());
+            }
+            agendarCompactacao();
+            return;
+        }
+        for (Mutacao mutacao : lote) {
+            enfileirar(mutacao);
+        }
+        agendarDescarga();
+        if (registrosNoDiario >= LIMITE_DIARIO && !compactando) {
+            agendarCompactacao();
+        }
+    }
+
+    // Se ha mutacoes desta instancia ainda nao gravadas para a tarefa
+    public synchronized boolean temPendentes(long id) {
+        return bases.containsKey(id);
+    }
+
+    // A tarefa como estava antes das mutacoes pendentes (null se foi criada por elas)
+    public synchronized Tarefa getBase(long id) {
+        return bases.get(id);
+    }
+
+    // Descarta as mutacoes pendentes da tarefa, vencidas por uma gravacao externa. Retorna se elas criaram
+    // a tarefa, caso em que o id apenas coincidiu com o de uma tarefa criada por outra instancia.
+    public synchronized boolean descartarPendentes(long id) {
+        boolean criada = bases.containsKey(id) && bases.remove(id) == null;
+        pendentes.removeIf(pendente -> pendente.mutacao().id() == id);
+        idsForaDoDiario.remove(id);
+        return criada;
+    }
+
+    // Ver Receptor.copiarTarefas()
+    public synchronized void marcarCopia() {
+        ordemCopia = enfileiradas;
+        aplicacoesCopia = aplicacoes;
+    }
+
+    // Passa a acompanhar as gravacoes de outras instancias; chamado quando as tarefas terminam de carregar
+    public void observar() {
+        if (receptor == null) {
+            return;
+        }
+        Path diretorio = path.toAbsolutePath().getParent();
+        try {
+            VigiaDiretorio novo = new VigiaDiretorio(diretorio,
+                Set.of(path.getFileName().toString(), pathDiario.getFileName().toString()), this::agendarSincronizacao);
+            synchronized (this) {
+                vigia = novo;
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("Nao foi possivel acompanhar " + diretorio
+                + "; alteracoes de outras instancias serao lidas antes de cada gravacao.");
+        }
+        // O que outra instancia gravou entre o carregamento e agora
+        agendarSincronizacao();
+    }
+
+    private void enfileirar(Mutacao mutacao) {
+        pendentes.add(new Pendente(++enfileiradas, mutacao));
+        bases.putIfAbsent(mutacao.id(), mutacao.anterior());
+        registrosNoDiario++;
+    }
+
+    private void agendarDescarga() {
+        if (!descargaAgendada) {
+            descargaAgendada = true;
+            executor.schedule(this::descarregar, ATRASO_DESCARGA_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // A copia das tarefas e feita pela thread de gravacao, quando a compactacao comeca
+    private void agendarCompactacao() {
+        if (receptor == null) {
+            return;
+        }
+        compactando = true;
+        executor.execute(this::compactar);
+    }
+
+    private synchronized void agendarSincronizacao() {
+        if (sincronizacaoAgendada) {
+            return;
+        }
+        try {
+            executor.schedule(this::sincronizar, ATRASO_SINCRONIZACAO_MS, TimeUnit.MILLISECONDS);
+            sincronizacaoAgendada = true;
+        } catch (RejectedExecutionException encerrado) {
+            // fechar() ja foi chamado
+        }
+    }
+
+    // Descarrega tudo o que estiver pendente e encerra a thread de gravacao
+    public void fechar() {
+        VigiaDiretorio encerrado;
+        synchronized (this) {
+            encerrado = vigia;
+            vigia = null;
+        }
+        if (encerrado != null) {
+            encerrado.fechar();
+        }
+        executor.execute(this::descarregar);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("Tempo esgotado ao gravar tarefas pendentes.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        trava.fechar();
+    }
+
+    private void descarregar() {
+        synchronized (this) {
+            descargaAgendada = false;
+        }
+        try {
+            emDia(() -> descarregarAte(Long.MAX_VALUE));
+        } catch (IOException e) {
+            EventosDesempenho.falha("diario", e);
+            e.printStackTrace();
+        }
+    }
+
+    private void sincronizar() {
+        synchronized (this) {
+            sincronizacaoAgendada = false;
+        }
+        // Os avisos das gravacoes desta propria instancia param aqui, sem a trava
+        if (diario.semAlteracoes()) {
+            return;
+        }
+        try {
+            emDia(() -> {});
+        } catch (IOException e) {
+            EventosDesempenho.falha("sincronizacao", e);
+            e.printStackTrace();
+        }
+    }
+
+    // Executa 'acao' sob a trava, com esta instancia em dia com os arquivos: o que outras instancias
+    // gravaram e entregue ao receptor (fora da trava) e a conferencia se repete ate nao haver mais nada
+    private void emDia(AcaoTravada acao) throws IOException {
+        while (true) {
+            List<DiarioTarefas.Registro> externos;
+            ArrayList<Tarefa> snapshot = null;
+            long versaoLida;
+            trava.travar();
+            try {
+                externos = diario.lerNovos(getVersaoConhecida());
+                if (externos != null && externos.isEmpty()) {
+                    acao.executar();
+                    return;
+                }
+                if (externos == null) {
+                    snapshot = new ArrayList<>();
+                    externos = lerSnapshot(snapshot);
+                }
+                versaoLida = diario.getSequencia();
+            } finally {
+                trava.liberar();
+            }
+            REGISTROS_EXTERNOS.somar(externos.size());
+            if (receptor != null) {
+                if (snapshot != null) {
+                    receptor.estadoExterno(snapshot, externos);
+                } else {
+                    receptor.registrosExternos(externos);
+                }
+            }
+            synchronized (this) {
+                versaoConhecida = versaoLida;
+                aplicacoes++;
+                registrosNoDiario = diario.getRegistros() + pendentes.size();
+            }
+        }
+    }
+
+    // Grava no diario as mutacoes pendentes ate 'ultimaOrdem', numeradas a partir da versao conhecida.
+    // So pode ser chamado dentro de emDia().
+    private void descarregarAte(long ultimaOrdem) throws IOException {
+        List<DiarioTarefas.Registro> lote = new ArrayList<>();
+        synchronized (this) {
+            long sequencia = versaoConhecida;
+            while (!pendentes.isEmpty() && pendentes.peek().ordem() <= ultimaOrdem) {
+                Mutacao mutacao = pendentes.poll().mutacao();
+                lote.add(new DiarioTarefas.Registro(++sequencia, mutacao.tipo(), mutacao.id(), mutacao.tarefa()));
+            }
+        }
+        if (lote.isEmpty()) {
+            return;
+        }
+        EventosDesempenho.Diario evento = new EventosDesempenho.Diario();
+        evento.begin();
+        long inicio = System.nanoTime();
+        int bytes = diario.registrar(lote);
+        TEMPO_DIARIO.registrar(System.nanoTime() - inicio);
+        BYTES_GRAVADOS.somar(bytes);
+        evento.registros = lote.size();
+        evento.bytes = bytes;
+        evento.commit();
+        synchronized (this) {
+            versaoConhecida = diario.getSequencia();
+            registrosNoDiario = diario.getRegistros() + pendentes.size();
+            esquecerBases(lote);
+        }
+    }
+
+    // Depois de uma gravacao, a base de uma tarefa que ainda tem mutacoes pendentes passa a ser o que foi gravado
+    private void esquecerBases(List<DiarioTarefas.Registro> gravados) {
+        if (pendentes.isEmpty() && idsForaDoDiario.isEmpty()) {
+            bases.clear();
+            return;
+        }
+        Set<Long> aindaPendentes = idsPendentes();
+        aindaPendentes.addAll(idsForaDoDiario);
+        for (DiarioTarefas.Registro registro : gravados) {
+            if (aindaPendentes.contains(registro.id())) {
+                bases.put(registro.id(), registro.tarefa());
+            } else {
+                bases.remove(registro.id());
+            }
+        }
+    }
+
+    // O snapshot gravou o lote que nao passou pelo diario; as tarefas dele sem outras mutacoes pendentes
+    // deixam de ter base
+    private void esquecerLoteForaDoDiario() {
+        Set<Long> aindaPendentes = idsPendentes();
+        for (long id : idsForaDoDiario) {
+            if (!aindaPendentes.contains(id)) {
+                bases.remove(id);
+            }
+        }
+        idsForaDoDiario.clear();
+    }
+
+    private Set<Long> idsPendentes() {
+        Set<Long> ids = new HashSet<>();
+        for (Pendente pendente : pendentes) {
+            ids.add(pendente.mutacao().id());
+        }
+        return ids;
+    }
+
+    // Grava um snapshot das tarefas e recomeca o diario. A copia so vale se nenhuma gravacao externa foi
+    // aplicada depois dela; se foi, ela e refeita.
+    private void compactar() {
+        try {
+            boolean concluida = false;
+            while (!concluida) {
+                emDia(() -> {});
+                List<Tarefa> copia = receptor.copiarTarefas();
+                long ordem;
+                long aplicacoesDaCopia;
+                synchronized (this) {
+                    ordem = ordemCopia;
+                    aplicacoesDaCopia = aplicacoesCopia;
+                }
+                boolean[] gravada = {false};
+                emDia(() -> {
+                    synchronized (this) {
+                        if (aplicacoes != aplicacoesDaCopia) {
+                            return;
+                        }
+                    }
+                    // O snapshot so pode substituir registros que ja estao no diario
+                    descarregarAte(ordem);
+                    long versaoSnapshot;
+                    synchronized (this) {
+                        versaoSnapshot = versaoConhecida;
+                        if (loteForaDoDiario != 0 && loteForaDoDiario <= ordem) {
+                            // Nenhum registro representa o lote; as outras instancias o percebem pela versao nova
+                            versaoSnapshot++;
+                        }
+                    }
+                    salvar(copia, versaoSnapshot);
+                    diario.recomecar(versaoSnapshot);
+                    synchronized (this) {
+                        versaoConhecida = versaoSnapshot;
+                        if (loteForaDoDiario != 0 && loteForaDoDiario <= ordem) {
+                            loteForaDoDiario = 0;
+                            esquecerLoteForaDoDiario();
+                        }
+                        registrosNoDiario = diario.getRegistros() + pendentes.size();
+                    }
+                    gravada[0] = true;
+                });
+                concluida = gravada[0];
+            }
+        } catch (IOException e) {
+            EventosDesempenho.falha("snapshot", e);
+            e.printStackTrace();
+        } finally {
+            synchronized (this) {
+                compactando = false;
+            }
+        }
+        // As mutacoes posteriores a copia
+        descarregar();
+    }
+
+    private void salvar(List<Tarefa> snapshot, long sequenciaSnapshot) throws IOException {
+        EventosDesempenho.Snapshot evento = new EventosDesempenho.Snapshot();
+        evento.begin();
+        long inicio = System.nanoTime();
+        long bytes;
+        Path temporario = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporario,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             CodecTarefa.Escritor escritor = new CodecTarefa.Escritor(canal)) {
+            escritor.escreverInt(MAGICO);
+            escritor.escreverByte(CodecTarefa.VERSAO_SNAPSHOT);
+            escritor.escreverLong(sequenciaSnapshot);
+            // Toda categoria do snapshot precisa estar na tabela antes que ela seja gravada
+            for (Tarefa t : snapshot) {
+                categorias.codigo(t.categoria());
+            }
+            List<String> tabela = categorias.nomes();
+            escritor.escreverInt(tabela.size());
+            for (String categoria : tabela) {
+                escritor.escreverTexto(categoria);
+            }
+            escritor.escreverInt(snapshot.size());
+            for (Tarefa t : snapshot) {
+                escritor.escreverTarefa(t, categorias);
+            }
+            escritor.descarregar();
+            canal.force(false);
+            bytes = canal.size();
+        }
+        // A troca atomica garante que tarefas.dat nunca fica parcialmente gravado
+        DiarioTarefas.substituir(temporario, path);
+        TEMPO_SNAPSHOT.registrar(System.nanoTime() - inicio);
+        BYTES_GRAVADOS.somar(bytes);
+        evento.tarefas = snapshot.size();
+        evento.bytes = bytes;
+        evento.versao = sequenciaSnapshot;
+        evento.commit();
+    }
+
+    // Le o snapshot atual, gravado por outra instancia (portanto no formato corrente), e retorna os
+    // registros do diario posteriores a ele. Chamado sob a trava.
+    private List<DiarioTarefas.Registro> lerSnapshot(List<Tarefa> destino) throws IOException {
+        long sequenciaSnapshot;
+        try (FileChannel canal = FileChannel.open(path, StandardOpenOption.READ)) {
+            CodecTarefa.Leitor leitor = new CodecTarefa.Leitor(canal);
+            if (leitor.lerInt() != MAGICO || leitor.lerByte() != CodecTarefa.VERSAO_SNAPSHOT) {
+                throw new IOException("Snapshot em formato inesperado");
+            }
+            sequenciaSnapshot = leitor.lerLong();
+            String[] tabela = lerTabela(leitor);
+            int quantidade = leitor.lerInt();
+            for (int i = 0; i < quantidade; i++) {
+                destino.add(leitor.lerTarefa(CodecTarefa.VERSAO_SNAPSHOT, tabela));
+            }
+        }
+        return diario.ler(sequenciaSnapshot);
+    }
+
+    // Os codigos do arquivo sao traduzidos para as instancias do dicionario
+    private String[] lerTabela(CodecTarefa.Leitor leitor) throws IOException {
+        String[] tabela = new String[leitor.lerInt()];
+        for (int i = 0; i < tabela.length; i++) {
+            tabela[i] = categorias.canonica(leitor.lerTexto());
+        }
+        return tabela;
+    }
+
+    // Carrega o snapshot na lista e entrega os registros do diario ao reprodutor.
+    // Retorna true quando os arquivos estao em um formato anterior e devem ser migrados.
+    public boolean carregar(ArrayList<Tarefa> tarefas, Consumer<DiarioTarefas.Registro> reprodutor) {
+        return carregar(tarefas, reprodutor, null);
+    }
+
+    // O mesmo, avisando 'lidas' a cada tarefa do snapshot colocada na lista, com a quantidade ja lida,
+    // enquanto a leitura prossegue; o aviso e chamado na thread que carrega. Nao ha avisos quando o
+    // diario enderecar as tarefas pela posicao (versao 1) e puder mover as ja lidas.
+    public boolean carregar(ArrayList<Tarefa> tarefas, Consumer<DiarioTarefas.Registro> reprodutor, IntConsumer lidas) {
+        EventosDesempenho.Carga evento = new EventosDesempenho.Carga();
+        evento.begin();
+        long inicio = System.nanoTime();
+        long sequenciaSnapshot = 0;
+        boolean migrar = false;
+        // O diario e lido logo apos o cabecalho do snapshot, que traz a sua sequencia. Os dois sao abertos
+        // sob a trava, para que uma compactacao de outra instancia nao troque um deles entre as leituras;
+        // as tarefas vem depois, do snapshot ja aberto.
+        List<DiarioTarefas.Registro> registros = null;
+        boolean travado = travarParaLeitura();
+        try {
+            if (Files.exists(path)) {
+                try (FileChannel canal = FileChannel.open(path, StandardOpenOption.READ)) {
+                    CodecTarefa.Leitor leitor = new CodecTarefa.Leitor(canal);
+                    int magico = leitor.lerInt();
+                    if ((magico >>> 16) == MAGICO_SERIALIZACAO) {
+                        formatoSerializado = true;
+                    } else if (magico != MAGICO) {
+                        throw new IOException("Formato de arquivo desconhecido");
+                    } else {
+                        byte versao = leitor.lerByte();
+                        if (versao < 1 || versao > CodecTarefa.VERSAO_SNAPSHOT) {
+                            throw new IOException("Versao de arquivo desconhecida: " + versao);
+                        }
+                        migrar = versao < CodecTarefa.VERSAO_SNAPSHOT;
+                        sequenciaSnapshot = leitor.lerLong();
+                        String[] tabela = versao >= CodecTarefa.VERSAO_SNAPSHOT ? lerTabela(leitor) : null;
+                        int quantidade = leitor.lerInt();
+                        registros = lerDiario(sequenciaSnapshot);
+                        if (travado) {
+                            trava.liberar();
+                            travado = false;
+                        }
+                        IntConsumer aviso = versao >= 2 && (registros.isEmpty() || diario.getVersao() >= 2) ? lidas : null;
+                        tarefas.clear();
+                        tarefas.ensureCapacity(quantidade);
+                        for (int i = 0; i < quantidade; i++) {
+                            tarefas.add(leitor.lerTarefa(versao, tabela));
+                            if (aviso != null) {
+                                aviso.accept(i + 1);
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    EventosDesempenho.falha("carga", e);
+                    System.err.println("Erro ao carregar dados: " + e);
+                }
+                if (formatoSerializado) {
+                    sequenciaSnapshot = carregarFormatoAntigo(tarefas);
+                    formatoSerializado = sequenciaSnapshot >= 0;
+                    migrar = formatoSerializado;
+                    sequenciaSnapshot = Math.max(sequenciaSnapshot, 0);
+                }
+            }
+
+            if (registros == null) {
+                registros = lerDiario(sequenciaSnapshot);
+            }
+        } finally {
+            if (travado) {
+                trava.liberar();
+            }
+        }
+        try {
+            if (diario.getVersao() < 2) {
+                // Diarios da versao 1 enderecam as tarefas pela posicao na lista
+                migrar |= !registros.isEmpty();
+                for (DiarioTarefas.Registro registro : registros) {
+                    int indice = (int) registro.id();
+                    switch (registro.tipo()) {
+                        case ADICIONAR -> tarefas.add(indice, registro.tarefa());
+                        case SUBSTITUIR -> tarefas.set(indice, registro.tarefa());
+                        case REMOVER -> tarefas.remove(indice);
+                    }
+                }
+            } else {
+                registros.forEach(reprodutor);
+            }
+        } catch (Exception e) {
+            EventosDesempenho.falha("carga", e);
+            System.err.println("Erro ao reproduzir o diario de tarefas: " + e);
+        }
+
+        synchronized (this) {
+            versaoConhecida = diario.getSequencia();
+            registrosNoDiario = diario.getRegistros();
+        }
+        TEMPO_CARGA.registrar(System.nanoTime() - inicio);
+        if (evento.shouldCommit()) {
+            evento.tarefas = tarefas.size();
+            evento.registros = registros.size();
+            evento.bytes = tamanho(path) + tamanho(pathDiario);
+            evento.commit();
+        }
+        return migrar;
+    }
+
+    private static long tamanho(Path arquivo) {
+        try {
+            return Files.size(arquivo);
+        } catch (IOException ausente) {
+            return 0;
+        }
+    }
+
+    private boolean travarParaLeitura() {
+        try {
+            trava.travar();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Nao foi possivel travar os arquivos de tarefas; lendo sem exclusao.");
+            return false;
+        }
+    }
+
+    private List<DiarioTarefas.Registro> lerDiario(long sequenciaSnapshot) {
+        try {
+            return diario.ler(sequenciaSnapshot);
+        } catch (Exception e) {
+            EventosDesempenho.falha("carga", e);
+            System.err.println("Erro ao reproduzir o diario de tarefas: " + e);
+            return List.of();
+        }
+    }
+
+    // Leitura do formato baseado em serializacao Java, usada apenas para migracao (-1 em caso de erro)
+    @SuppressWarnings("unchecked")
+    private long carregarFormatoAntigo(List<Tarefa> tarefas) {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            tarefas.addAll((List<Tarefa>) ois.readObject());
+            try {
+                return ois.readLong();
+            } catch (EOFException semSequencia) {
+                return 0;
+            }
+        } catch (Exception e) {
+            EventosDesempenho.falha("carga", e);
+            System.err.println("Erro ao carregar dados: " + e);
+            return -1;
+        }
+    }
+
+    // Regrava os dados no formato atual e reinicia o diario, que passa a estar contido no snapshot.
+    // Um tarefas.dat em serializacao Java e preservado em tarefas.dat.bak. Se outra instancia ja gravou
+    // desde o carregamento, a lista nao e mais o estado do armazem e a migracao nao acontece.
+    public void migrar(List<Tarefa> tarefas) {
+        try {
+            trava.travar();
+            try {
+                List<DiarioTarefas.Registro> externos = diario.lerNovos(getVersaoConhecida());
+                if (externos == null || !externos.isEmpty()) {
+                    System.err.println("Outra instancia alterou as tarefas; a migracao fica para a proxima abertura.");
+                    return;
+                }
+                if (formatoSerializado) {
+                    Files.copy(path, path.resolveSibling(path.getFileName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+                    formatoSerializado = false;
+                }
+                long versao = getVersaoConhecida();
+                salvar(tarefas, versao);
+                diario.reiniciar(versao);
+                synchronized (this) {
+                    registrosNoDiario = pendentes.size();
+                }
+            } finally {
+                trava.liberar();
+            }
+        } catch (IOException e) {
+            EventosDesempenho.falha("migracao", e);
+            System.err.println("Erro ao migrar tarefas.dat para o formato atual.");
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized long getVersaoConhecida() {
+        return versaoConhecida;
+    }
+}
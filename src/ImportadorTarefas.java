@@ -0,0 +1,564 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Importacao dos mesmos formatos gerados por ExportadorTarefas. Os arquivos sao lidos em fluxo,
+ * um registro por vez, sem carregar o documento inteiro na memoria. Linhas invalidas sao
+ * descartadas e relatadas; as tarefas validas sao entregues em lotes de ate TAMANHO_LOTE, sem id,
+ * que e atribuido pelo servico, e cada lote e descartado depois de entregue.
+ */
+public final class ImportadorTarefas {
+    private static final int TAMANHO_BUFFER = 64 * 1024;
+    // Para o corpo de uma unica tarefa
+    private static final int TAMANHO_BUFFER_TAREFA = 1024;
+    // Quantas mensagens de erro sao guardadas; as demais linhas invalidas sao apenas contadas
+    private static final int LIMITE_ERROS = 100;
+    // De quantas em quantas tarefas a leitura verifica se foi cancelada
+    private static final int INTERVALO_CANCELAMENTO = 1024;
+    // Tarefas validas acumuladas antes de cada entrega
+    private static final int TAMANHO_LOTE = 4096;
+    private static final DateTimeFormatter FORMATO_DATA =
+        DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    private ImportadorTarefas() {}
+
+    public record Resultado(int importadas, int rejeitadas, List<String> erros) {}
+
+    // Guarda os lotes recebidos codificados (CodecTarefa), bem mais compactos que objetos Tarefa, para
+    // que o servico aplique o arquivo inteiro de uma vez, so depois de le-lo ate o fim
+    public static final class Estagio implements Consumer<List<Tarefa>> {
+        private static final int TAMANHO_BLOCO = 1024 * 1024;
+
+        private final List<ByteBuffer> blocos = new ArrayList<>();
+        private ByteBuffer atual = ByteBuffer.allocate(0);
+        private int quantidade;
+
+        @Override
+        public void accept(List<Tarefa> lote) {
+            for (Tarefa tarefa : lote) {
+                int bytes = CodecTarefa.tamanho(tarefa);
+                if (atual.remaining() < bytes) {
+                    atual = ByteBuffer.allocate(Math.max(TAMANHO_BLOCO, bytes));
+                    blocos.add(atual);
+                }
+                CodecTarefa.codificar(tarefa, atual);
+                quantidade++;
+            }
+        }
+
+        public int quantidade() {
+            return quantidade;
+        }
+
+        // Decodifica as tarefas na ordem em que foram lidas
+        public void percorrer(Consumer<Tarefa> acao) {
+            try {
+                for (ByteBuffer bloco : blocos) {
+                    ByteBuffer leitura = bloco.duplicate().flip();
+                    while (leitura.hasRemaining()) {
+                        acao.accept(CodecTarefa.decodificar(leitura));
+                    }
+                }
+            } catch (IOException e) {
+                // Os bytes foram gravados por codificar() logo acima
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // 'destino' recebe cada lote na thread que le o arquivo; se a leitura falhar ou for cancelada, os
+    // lotes ja entregues permanecem
+    public static Resultado lerCSV(Path origem, Consumer<List<Tarefa>> destino) throws IOException {
+        Coletor coletor = new Coletor(destino);
+        try (Entrada entrada = abrir(origem)) {
+            LeitorCSV csv = new LeitorCSV(entrada);
+            List<String> campos = new ArrayList<>();
+            boolean primeiro = true;
+            int linha;
+            while ((linha = csv.proximo(campos)) > 0) {
+                if (primeiro && String.join(";", campos).equals(ExportadorTarefas.CABECALHO_CSV)) {
+                    primeiro = false;
+                    continue;
+                }
+                primeiro = false;
+                if (campos.size() == 1 && campos.get(0) == null) {
+                    continue; // linha em branco
+                }
+                try {
+                    coletor.aceitar(tarefaDoCSV(campos));
+                } catch (IllegalArgumentException e) {
+                    coletor.rejeitar("Linha " + linha + ": " + e.getMessage());
+                }
+            }
+        }
+        return coletor.resultado();
+    }
+
+    public static Resultado lerJSON(Path origem, Consumer<List<Tarefa>> destino) throws IOException {
+        Coletor coletor = new Coletor(destino);
+        try (Entrada entrada = abrir(origem)) {
+            LeitorJSON json = new LeitorJSON(entrada);
+            // Aceita o documento exportado ({"tarefas": [...]}) ou apenas o array
+            if (json.proximoSinal() == '{') {
+                json.esperar('{');
+                boolean encontrou = false;
+                while (!encontrou && json.proximoSinal() != '}') {
+                    String chave = json.lerChave();
+                    if (chave.equals("tarefas")) {
+                        encontrou = true;
+                    } else {
+                        json.pularValor();
+                        json.separador('}');
+                    }
+                }
+                if (!encontrou) {
+                    throw json.erro("campo \"tarefas\" nao encontrado");
+                }
+            }
+            json.esperar('[');
+            while (json.proximoSinal() != ']') {
+                int linha = json.getLinha();
+                CamposJSON campos = json.lerTarefa();
+                try {
+                    coletor.aceitar(tarefaDoJSON(campos));
+                } catch (IllegalArgumentException e) {
+                    coletor.rejeitar("Tarefa na linha " + linha + ": " + e.getMessage());
+                }
+                json.separador(']');
+            }
+        }
+        return coletor.resultado();
+    }
+
+    // Uma tarefa no formato dos elementos do array exportado, lida de um fluxo (que e fechado). Campos
+    // ausentes ficam nulos (ou falsos); JSON malformado gera IOException e valores invalidos,
+    // IllegalArgumentException. A tarefa volta sem id.
+    public static Tarefa lerTarefaJSON(InputStream origem) throws IOException {
+        try (Entrada entrada = new Entrada(new InputStreamReader(origem, StandardCharsets.UTF_8), TAMANHO_BUFFER_TAREFA)) {
+            entrada.pularMarcaDeOrdem();
+            return tarefaDoJSON(new LeitorJSON(entrada).lerTarefa());
+        }
+    }
+
+    private static Entrada abrir(Path origem) throws IOException {
+        Entrada entrada = new Entrada(new InputStreamReader(Files.newInputStream(origem), StandardCharsets.UTF_8), TAMANHO_BUFFER);
+        entrada.pularMarcaDeOrdem();
+        return entrada;
+    }
+
+    private static Tarefa tarefaDoCSV(List<String> campos) {
+        if (campos.size() < 5 || campos.size() > 6) {
+            throw new IllegalArgumentException("esperados 6 campos separados por ';', encontrados " + campos.size());
+        }
+        String status = campos.get(1) != null ? campos.get(1).strip() : "";
+        boolean concluida;
+        if (status.equalsIgnoreCase("Concluída") || status.equalsIgnoreCase("Concluida")) {
+            concluida = true;
+        } else if (status.equalsIgnoreCase("Pendente") || status.isEmpty()) {
+            concluida = false;
+        } else {
+            throw new IllegalArgumentException("status invalido: " + status);
+        }
+        String data = campos.size() == 6 ? campos.get(5) : null;
+        return criar(campos.get(0), concluida, campos.get(2), campos.get(3), campos.get(4), data);
+    }
+
+    private static Tarefa tarefaDoJSON(CamposJSON campos) {
+        return criar(campos.descricao, campos.concluida, campos.observacao, campos.prioridade,
+                     campos.categoria, campos.dataVencimento);
+    }
+
+    private static Tarefa criar(String descricao, boolean concluida, String observacao,
+                                String prioridade, String categoria, String data) {
+        if (descricao == null || descricao.isBlank()) {
+            throw new IllegalArgumentException("descricao vazia");
+        }
+        return new Tarefa(0, descricao, concluida, observacao, prioridade(prioridade), categoria, data(data));
+    }
+
+    private static Tarefa.Prioridade prioridade(String texto) {
+        if (texto == null || texto.isBlank() || texto.equals("null")) {
+            return null;
+        }
+        String valor = texto.strip();
+        for (Tarefa.Prioridade p : Tarefa.Prioridade.values()) {
+            if (p.name().equalsIgnoreCase(valor) || p.toString().equalsIgnoreCase(valor)) {
+                return p;
+            }
+        }
+        if (valor.equalsIgnoreCase("Média")) {
+            return Tarefa.Prioridade.MEDIA;
+        }
+        throw new IllegalArgumentException("prioridade invalida: " + valor);
+    }
+
+    // Aceita dd/MM/yyyy (CSV) e yyyy-MM-dd (JSON)
+    private static LocalDate data(String texto) {
+        if (texto == null || texto.isBlank()) {
+            return null;
+        }
+        String valor = texto.strip();
+        try {
+            // Caminho rapido para o formato do exportador, sem passar pelo DateTimeFormatter
+            if (valor.length() == 10 && valor.charAt(2) == '/' && valor.charAt(5) == '/') {
+                return LocalDate.of(Integer.parseInt(valor, 6, 10, 10),
+                                    Integer.parseInt(valor, 3, 5, 10),
+                                    Integer.parseInt(valor, 0, 2, 10));
+            }
+            return valor.indexOf('/') >= 0 ? LocalDate.parse(valor, FORMATO_DATA) : LocalDate.parse(valor);
+        } catch (DateTimeException | NumberFormatException e) {
+            throw new IllegalArgumentException("data invalida: " + valor);
+        }
+    }
+
+    // Leitura caractere a caractere sobre um buffer proprio, sem a sincronizacao de Reader.read()
+    private static class Entrada implements Closeable {
+        private final Reader reader;
+        private final char[] buffer;
+        private int posicao;
+        private int limite;
+
+        Entrada(Reader reader, int tamanhoBuffer) {
+            this.reader = reader;
+            this.buffer = new char[tamanhoBuffer];
+        }
+
+        int read() throws IOException {
+            if (posicao == limite) {
+                limite = reader.read(buffer, 0, buffer.length);
+                posicao = 0;
+                if (limite <= 0) {
+                    limite = 0;
+                    return -1;
+                }
+            }
+            return buffer[posicao++];
+        }
+
+        void pularMarcaDeOrdem() throws IOException {
+            if (read() != '\uFEFF' && limite > 0) {
+                posicao--;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static class Coletor {
+        private final Consumer<List<Tarefa>> destino;
+        private List<Tarefa> lote = new ArrayList<>();
+        private final List<String> erros = new ArrayList<>();
+        private int importadas;
+        private int rejeitadas;
+
+        Coletor(Consumer<List<Tarefa>> destino) {
+            this.destino = destino;
+        }
+
+        void aceitar(Tarefa tarefa) throws InterruptedIOException {
+            lote.add(tarefa);
+            importadas++;
+            if (lote.size() == TAMANHO_LOTE) {
+                entregar();
+            }
+            verificarCancelamento();
+        }
+
+        void rejeitar(String erro) throws InterruptedIOException {
+            if (erros.size() < LIMITE_ERROS) {
+                erros.add(erro);
+            }
+            rejeitadas++;
+            verificarCancelamento();
+        }
+
+        private void verificarCancelamento() throws InterruptedIOException {
+            if ((importadas + rejeitadas) % INTERVALO_CANCELAMENTO == 0 && Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Importacao cancelada");
+            }
+        }
+
+        // O destino pode guardar a lista recebida, entao cada lote e uma lista nova
+        private void entregar() {
+            if (!lote.isEmpty()) {
+                destino.accept(lote);
+                lote = new ArrayList<>();
+            }
+        }
+
+        Resultado resultado() {
+            entregar();
+            return new Resultado(importadas, rejeitadas, erros);
+        }
+    }
+
+    // Le registros separados por ';' com campos opcionalmente entre aspas (aspas internas duplicadas).
+    // Um campo vazio sem aspas e lido como nulo, como o exportador grava os valores nulos.
+    private static class LeitorCSV {
+        private final Entrada entrada;
+        private final StringBuilder campo = new StringBuilder();
+        private int linha = 1;
+
+        LeitorCSV(Entrada entrada) {
+            this.entrada = entrada;
+        }
+
+        // Preenche os campos do proximo registro e retorna a linha em que ele comeca, ou 0 no fim do arquivo
+        int proximo(List<String> campos) throws IOException {
+            campos.clear();
+            int inicio = linha;
+            int c = entrada.read();
+            if (c < 0) {
+                return 0;
+            }
+            while (true) {
+                campo.setLength(0);
+                boolean entreAspas = false;
+                boolean comAspas = false;
+                if (c == '"') {
+                    entreAspas = comAspas = true;
+                    c = entrada.read();
+                }
+                while (c >= 0) {
+                    if (entreAspas) {
+                        if (c == '"') {
+                            c = entrada.read();
+                            if (c != '"') {
+                                entreAspas = false;
+                                continue;
+                            }
+                        } else if (c == '\n') {
+                            linha++;
+                        }
+                    } else if (c == ';' || c == '\n') {
+                        break;
+                    } else if (c == '\r') {
+                        c = entrada.read();
+                        continue;
+                    }
+                    campo.append((char) c);
+                    c = entrada.read();
+                }
+                if (entreAspas) {
+                    throw new IOException("Aspas nao fechadas no registro da linha " + inicio);
+                }
+                campos.add(comAspas || !campo.isEmpty() ? campo.toString() : null);
+                if (c == ';') {
+                    c = entrada.read();
+                    continue;
+                }
+                if (c == '\n') {
+                    linha++;
+                }
+                return inicio;
+            }
+        }
+    }
+
+    private static class CamposJSON {
+        String descricao;
+        boolean concluida;
+        String observacao;
+        String prioridade;
+        String categoria;
+        String dataVencimento;
+    }
+
+    // Leitor JSON minimo, em fluxo, suficiente para o formato do exportador
+    private static class LeitorJSON {
+        private static final Object NULO = new Object();
+
+        private final Entrada entrada;
+        private final StringBuilder texto = new StringBuilder();
+        private int atual = -2;
+        private int linha = 1;
+
+        LeitorJSON(Entrada entrada) {
+            this.entrada = entrada;
+        }
+
+        int getLinha() {
+            return linha;
+        }
+
+        CamposJSON lerTarefa() throws IOException {
+            CamposJSON campos = new CamposJSON();
+            esperar('{');
+            while (proximoSinal() != '}') {
+                String chave = lerChave();
+                Object valor = lerValor();
+                switch (chave) {
+                    case "descricao" -> campos.descricao = comoTexto(chave, valor);
+                    case "observacao" -> campos.observacao = comoTexto(chave, valor);
+                    case "prioridade" -> campos.prioridade = comoTexto(chave, valor);
+                    case "categoria" -> campos.categoria = comoTexto(chave, valor);
+                    case "dataVencimento" -> campos.dataVencimento = comoTexto(chave, valor);
+                    case "concluida" -> {
+                        if (!(valor instanceof Boolean b)) {
+                            throw erro("\"concluida\" deve ser true ou false");
+                        }
+                        campos.concluida = b;
+                    }
+                    default -> { } // campos desconhecidos sao ignorados
+                }
+                separador('}');
+            }
+            esperar('}');
+            return campos;
+        }
+
+        private String comoTexto(String chave, Object valor) throws IOException {
+            if (valor == NULO) {
+                return null;
+            }
+            if (!(valor instanceof String s)) {
+                throw erro("\"" + chave + "\" deve ser texto");
+            }
+            return s;
+        }
+
+        String lerChave() throws IOException {
+            if (proximoSinal() != '"') {
+                throw erro("esperado nome de campo");
+            }
+            String chave = lerString();
+            esperar(':');
+            return chave;
+        }
+
+        // Consome a virgula entre elementos; no ultimo elemento deixa o fechamento para o chamador
+        void separador(char fechamento) throws IOException {
+            int c = proximoSinal();
+            if (c == ',') {
+                atual = -2;
+            } else if (c != fechamento) {
+                throw erro("esperado ',' ou '" + fechamento + "'");
+            }
+        }
+
+        void pularValor() throws IOException {
+            int c = proximoSinal();
+            if (c == '{' || c == '[') {
+                char fechamento = c == '{' ? '}' : ']';
+                atual = -2;
+                while (proximoSinal() != fechamento) {
+                    if (c == '{') {
+                        lerChave();
+                    }
+                    pularValor();
+                    separador(fechamento);
+                }
+                atual = -2;
+            } else {
+                lerValor();
+            }
+        }
+
+        private Object lerValor() throws IOException {
+            int c = proximoSinal();
+            if (c == '"') {
+                return lerString();
+            }
+            if (c == '{' || c == '[') {
+                pularValor();
+                return NULO;
+            }
+            texto.setLength(0);
+            while (c >= 0 && c != ',' && c != '}' && c != ']' && !Character.isWhitespace(c)) {
+                texto.append((char) c);
+                c = ler();
+            }
+            atual = c;
+            return switch (texto.toString()) {
+                case "true" -> Boolean.TRUE;
+                case "false" -> Boolean.FALSE;
+                case "null" -> NULO;
+                case "" -> throw erro("valor esperado");
+                default -> texto.toString();
+            };
+        }
+
+        private String lerString() throws IOException {
+            texto.setLength(0);
+            int c = ler();
+            while (c != '"') {
+                if (c < 0) {
+                    throw erro("texto nao terminado");
+                }
+                if (c == '\\') {
+                    c = ler();
+                    switch (c) {
+                        case 'n' -> texto.append('\n');
+                        case 'r' -> texto.append('\r');
+                        case 't' -> texto.append('\t');
+                        case 'b' -> texto.append('\b');
+                        case 'f' -> texto.append('\f');
+                        case 'u' -> {
+                            int codigo = 0;
+                            for (int i = 0; i < 4; i++) {
+                                int digito = Character.digit(ler(), 16);
+                                if (digito < 0) {
+                                    throw erro("escape \\u invalido");
+                                }
+                                codigo = codigo * 16 + digito;
+                            }
+                            texto.append((char) codigo);
+                        }
+                        case '"', '\\', '/' -> texto.append((char) c);
+                        default -> throw erro("escape invalido");
+                    }
+                } else {
+                    texto.append((char) c);
+                }
+                c = ler();
+            }
+            atual = -2;
+            return texto.toString();
+        }
+
+        void esperar(char esperado) throws IOException {
+            if (proximoSinal() != esperado) {
+                throw erro("esperado '" + esperado + "'");
+            }
+            atual = -2;
+        }
+
+        // Proximo caractere que nao e espaco, sem consumi-lo
+        int proximoSinal() throws IOException {
+            if (atual == -2) {
+                atual = ler();
+            }
+            while (atual >= 0 && Character.isWhitespace(atual)) {
+                atual = ler();
+            }
+            if (atual < 0) {
+                throw erro("fim inesperado do arquivo");
+            }
+            return atual;
+        }
+
+        private int ler() throws IOException {
+            int c = entrada.read();
+            if (c == '\n') {
+                linha++;
+            }
+            return c;
+        }
+
+        IOException erro(String mensagem) {
+            return new IOException("JSON invalido na linha " + linha + ": " + mensagem);
+        }
+    }
+}
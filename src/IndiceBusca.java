@@ -0,0 +1,394 @@
+import java.text.Normalizer;
+import java.util.*;
+import java.util.function.LongPredicate;
+
+/*
+ * Indice invertido sobre descricao, observacao e categoria. Cada termo (minusculo e sem
+ * acentos) aponta para a lista de ids das tarefas que o contem, ordenada por id, junto com
+ * os campos em que ele aparece. A busca intersecta as listas dos termos da consulta; o
+ * ultimo termo, se tiver ao menos duas letras, e tratado como prefixo para permitir a busca
+ * enquanto se digita.
+ */
+public class IndiceBusca {
+    private static final byte DESCRICAO = 1;
+    private static final byte OBSERVACAO = 2;
+    private static final byte CATEGORIA = 4;
+    // Um prefixo de uma letra abrangeria boa parte do vocabulario e uniria as listas de quase todas
+    // as tarefas; como termos de uma letra nao sao indexados, ele e ignorado como as palavras comuns
+    private static final int TAMANHO_MINIMO_PREFIXO = 2;
+    private static final Set<String> PALAVRAS_IGNORADAS = Set.of(
+        "de", "da", "do", "das", "dos", "em", "no", "na", "nos", "nas", "um", "uma",
+        "para", "com", "por", "os", "as", "ao", "que", "se"
+    );
+    // Minusculas sem acento para os caracteres de Latin-1 e Latin Extended-A
+    private static final char[] SEM_ACENTO = new char[0x180];
+
+    static {
+        for (char c = 0; c < SEM_ACENTO.length; c++) {
+            String decomposto = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            SEM_ACENTO[c] = Character.toLowerCase(decomposto.charAt(0));
+        }
+    }
+
+    private final TreeMap<String, Postagens> termos = new TreeMap<>();
+    // Termos da tarefa sendo indexada e os campos de cada um, reaproveitados entre chamadas
+    private final List<String> termosTarefa = new ArrayList<>();
+    private byte[] camposTarefa = new byte[16];
+    private final StringBuilder token = new StringBuilder();
+    // Durante um lote, o estado final de cada (termo, id): campos > 0 presente, 0 removido
+    private Map<String, Map<Long, Byte>> alteracoesLote;
+
+    public record Resultado(long id, float pontuacao) {}
+
+    // A partir daqui as alteracoes sao acumuladas e aplicadas de uma vez em concluirLote,
+    // com uma unica passada por lista de postagens em vez de um deslocamento por tarefa
+    public void iniciarLote() {
+        if (alteracoesLote == null) {
+            alteracoesLote = new HashMap<>();
+        }
+    }
+
+    public void concluirLote() {
+        if (alteracoesLote == null) {
+            return;
+        }
+        alteracoesLote.forEach((termo, alteracoes) -> {
+            Postagens postagens = termos.computeIfAbsent(termo, t -> new Postagens());
+            postagens.aplicar(alteracoes);
+            if (postagens.tamanho == 0) {
+                termos.remove(termo);
+            }
+        });
+        alteracoesLote = null;
+    }
+
+    public void adicionar(Tarefa tarefa) {
+        coletarTermos(tarefa);
+        for (int i = 0; i < termosTarefa.size(); i++) {
+            String termo = termosTarefa.get(i);
+            if (alteracoesLote != null) {
+                alteracoesLote.computeIfAbsent(termo, t -> new HashMap<>()).put(tarefa.id(), camposTarefa[i]);
+                continue;
+            }
+            Postagens postagens = termos.get(termo);
+            if (postagens == null) {
+                postagens = new Postagens();
+                termos.put(termo, postagens);
+            }
+            postagens.adicionar(tarefa.id(), camposTarefa[i]);
+        }
+    }
+
+    public void remover(Tarefa tarefa) {
+        coletarTermos(tarefa);
+        for (String termo : termosTarefa) {
+            if (alteracoesLote != null) {
+                alteracoesLote.computeIfAbsent(termo, t -> new HashMap<>()).put(tarefa.id(), (byte) 0);
+                continue;
+            }
+            Postagens postagens = termos.get(termo);
+            if (postagens != null && postagens.remover(tarefa.id()) && postagens.tamanho == 0) {
+                termos.remove(termo);
+            }
+        }
+    }
+
+    public void atualizar(Tarefa anterior, Tarefa atual) {
+        if (Objects.equals(anterior.descricao(), atual.descricao())
+                && Objects.equals(anterior.observacao(), atual.observacao())
+                && Objects.equals(anterior.categoria(), atual.categoria())) {
+            return;
+        }
+        remover(anterior);
+        adicionar(atual);
+    }
+
+    // Ids que contem todos os termos da consulta, do mais relevante para o menos relevante
+    public List<Resultado> buscar(String consulta, int totalTarefas, LongPredicate aceitar, int limite) {
+        List<String> termosConsulta = tokenizar(consulta, false);
+        boolean ultimoEhPrefixo = !consulta.isEmpty() && Character.isLetterOrDigit(consulta.charAt(consulta.length() - 1));
+
+        List<Candidatos> listas = new ArrayList<>();
+        for (int i = 0; i < termosConsulta.size(); i++) {
+            String termo = termosConsulta.get(i);
+            boolean prefixo = ultimoEhPrefixo && i == termosConsulta.size() - 1;
+            if (prefixo ? termo.length() < TAMANHO_MINIMO_PREFIXO : !indexavel(termo)) {
+                continue;
+            }
+            Candidatos candidatos = candidatos(termo, prefixo, totalTarefas);
+            if (candidatos.tamanho == 0) {
+                return List.of();
+            }
+            listas.add(candidatos);
+        }
+        if (listas.isEmpty() || limite <= 0) {
+            return List.of();
+        }
+
+        // Intersecao a partir da lista mais curta, somando as pontuacoes de cada termo
+        listas.sort(Comparator.comparingInt(c -> c.tamanho));
+        Candidatos resultado = listas.get(0);
+        for (int i = 1; i < listas.size() && resultado.tamanho > 0; i++) {
+            resultado = resultado.intersectar(listas.get(i));
+        }
+        return melhores(resultado, aceitar, limite);
+    }
+
+    private Candidatos candidatos(String termo, boolean prefixo, int totalTarefas) {
+        if (!prefixo) {
+            Postagens postagens = termos.get(termo);
+            return postagens != null ? postagens.pontuar(1f, totalTarefas) : new Candidatos(0);
+        }
+
+        // Termo exato pesa mais que os termos apenas iniciados pelo prefixo. Todos os termos do prefixo
+        // entram; as listas sao unidas enquanto o intervalo ordenado e percorrido, sempre que a do topo
+        // da pilha nao for maior que a nova, para que cada id seja copiado O(log k) vezes
+        ArrayDeque<Candidatos> pilha = new ArrayDeque<>();
+        for (Map.Entry<String, Postagens> entrada : termos.tailMap(termo, true).entrySet()) {
+            if (!entrada.getKey().startsWith(termo)) {
+                break;
+            }
+            float peso = entrada.getKey().length() == termo.length() ? 1f : 0.6f;
+            Candidatos expansao = entrada.getValue().pontuar(peso, totalTarefas);
+            while (!pilha.isEmpty() && pilha.peek().tamanho <= expansao.tamanho) {
+                expansao = pilha.pop().unir(expansao);
+            }
+            pilha.push(expansao);
+        }
+        if (pilha.isEmpty()) {
+            return new Candidatos(0);
+        }
+        Candidatos uniao = pilha.pop();
+        while (!pilha.isEmpty()) {
+            uniao = pilha.pop().unir(uniao);
+        }
+        return uniao;
+    }
+
+    private static List<Resultado> melhores(Candidatos candidatos, LongPredicate aceitar, int limite) {
+        PriorityQueue<Resultado> fila = new PriorityQueue<>(Comparator.comparingDouble(Resultado::pontuacao));
+        for (int i = 0; i < candidatos.tamanho; i++) {
+            float pontuacao = candidatos.pontuacoes[i];
+            if (fila.size() == limite && pontuacao <= fila.peek().pontuacao()) {
+                continue;
+            }
+            if (!aceitar.test(candidatos.ids[i])) {
+                continue;
+            }
+            fila.add(new Resultado(candidatos.ids[i], pontuacao));
+            if (fila.size() > limite) {
+                fila.poll();
+            }
+        }
+        List<Resultado> ordenados = new ArrayList<>(fila);
+        ordenados.sort(Comparator.comparingDouble(Resultado::pontuacao).reversed()
+                                 .thenComparingLong(Resultado::id));
+        return ordenados;
+    }
+
+    // Preenche termosTarefa/camposTarefa sem alocar mapas; uma tarefa tem poucos termos
+    private void coletarTermos(Tarefa tarefa) {
+        termosTarefa.clear();
+        coletar(tarefa.descricao(), DESCRICAO);
+        coletar(tarefa.observacao(), OBSERVACAO);
+        coletar(tarefa.categoria(), CATEGORIA);
+    }
+
+    private void coletar(String texto, byte campo) {
+        if (texto == null) {
+            return;
+        }
+        for (int i = 0; i <= texto.length(); i++) {
+            char c = i < texto.length() ? texto.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c < SEM_ACENTO.length ? SEM_ACENTO[c] : Character.toLowerCase(c));
+            } else if (!token.isEmpty()) {
+                String termo = token.toString();
+                token.setLength(0);
+                if (indexavel(termo)) {
+                    registrarTermo(termo, campo);
+                }
+            }
+        }
+    }
+
+    private void registrarTermo(String termo, byte campo) {
+        for (int i = 0; i < termosTarefa.size(); i++) {
+            if (termosTarefa.get(i).equals(termo)) {
+                camposTarefa[i] |= campo;
+                return;
+            }
+        }
+        if (termosTarefa.size() == camposTarefa.length) {
+            camposTarefa = Arrays.copyOf(camposTarefa, camposTarefa.length * 2);
+        }
+        camposTarefa[termosTarefa.size()] = campo;
+        termosTarefa.add(termo);
+    }
+
+    // Divide o texto em termos minusculos e sem acento; ao indexar, descarta termos curtos e comuns
+    static List<String> tokenizar(String texto, boolean indexacao) {
+        List<String> tokens = new ArrayList<>();
+        if (texto == null) {
+            return tokens;
+        }
+        StringBuilder atual = new StringBuilder();
+        for (int i = 0; i <= texto.length(); i++) {
+            char c = i < texto.length() ? texto.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                atual.append(c < SEM_ACENTO.length ? SEM_ACENTO[c] : Character.toLowerCase(c));
+            } else if (!atual.isEmpty()) {
+                String token = atual.toString();
+                atual.setLength(0);
+                if (!indexacao || indexavel(token)) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean indexavel(String termo) {
+        return termo.length() > 1 && !PALAVRAS_IGNORADAS.contains(termo);
+    }
+
+    private static float pesoCampos(byte campos) {
+        float peso = 0;
+        if ((campos & DESCRICAO) != 0) peso += 3f;
+        if ((campos & CATEGORIA) != 0) peso += 2f;
+        if ((campos & OBSERVACAO) != 0) peso += 1f;
+        return peso;
+    }
+
+    // Lista de ids de um termo, ordenada por id, com os campos em que o termo aparece
+    private static class Postagens {
+        long[] ids = new long[4];
+        byte[] campos = new byte[4];
+        int tamanho;
+
+        void adicionar(long id, byte campo) {
+            int posicao = tamanho > 0 && ids[tamanho - 1] < id ? -(tamanho + 1) : Arrays.binarySearch(ids, 0, tamanho, id);
+            if (posicao >= 0) {
+                campos[posicao] |= campo;
+                return;
+            }
+            posicao = -posicao - 1;
+            if (tamanho == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, tamanho * 2));
+                campos = Arrays.copyOf(campos, Math.max(4, tamanho * 2));
+            }
+            System.arraycopy(ids, posicao, ids, posicao + 1, tamanho - posicao);
+            System.arraycopy(campos, posicao, campos, posicao + 1, tamanho - posicao);
+            ids[posicao] = id;
+            campos[posicao] = campo;
+            tamanho++;
+        }
+
+        boolean remover(long id) {
+            int posicao = Arrays.binarySearch(ids, 0, tamanho, id);
+            if (posicao < 0) {
+                return false;
+            }
+            System.arraycopy(ids, posicao + 1, ids, posicao, tamanho - posicao - 1);
+            System.arraycopy(campos, posicao + 1, campos, posicao, tamanho - posicao - 1);
+            tamanho--;
+            return true;
+        }
+
+        // Aplica as alteracoes de um lote mesclando-as, ordenadas por id, com a lista atual
+        void aplicar(Map<Long, Byte> alteracoes) {
+            long[] idsAlterados = new long[alteracoes.size()];
+            int k = 0;
+            for (long id : alteracoes.keySet()) {
+                idsAlterados[k++] = id;
+            }
+            Arrays.sort(idsAlterados);
+
+            long[] novosIds = new long[tamanho + idsAlterados.length];
+            byte[] novosCampos = new byte[novosIds.length];
+            int n = 0, i = 0, j = 0;
+            while (i < tamanho || j < idsAlterados.length) {
+                if (j == idsAlterados.length || (i < tamanho && ids[i] < idsAlterados[j])) {
+                    novosIds[n] = ids[i];
+                    novosCampos[n++] = campos[i++];
+                    continue;
+                }
+                long id = idsAlterados[j++];
+                if (i < tamanho && ids[i] == id) {
+                    i++;
+                }
+                byte campo = alteracoes.get(id);
+                if (campo != 0) {
+                    novosIds[n] = id;
+                    novosCampos[n++] = campo;
+                }
+            }
+            ids = novosIds.length == n ? novosIds : Arrays.copyOf(novosIds, Math.max(n, 4));
+            campos = novosCampos.length == n ? novosCampos : Arrays.copyOf(novosCampos, Math.max(n, 4));
+            tamanho = n;
+        }
+
+        // Pontuacao de cada tarefa para este termo: peso dos campos ponderado pela raridade do termo
+        Candidatos pontuar(float peso, int totalTarefas) {
+            float idf = (float) Math.log(1 + (double) Math.max(totalTarefas, tamanho) / tamanho);
+            Candidatos candidatos = new Candidatos(tamanho);
+            System.arraycopy(ids, 0, candidatos.ids, 0, tamanho);
+            for (int i = 0; i < tamanho; i++) {
+                candidatos.pontuacoes[i] = peso * idf * pesoCampos(campos[i]);
+            }
+            candidatos.tamanho = tamanho;
+            return candidatos;
+        }
+    }
+
+    // Ids ordenados com a pontuacao acumulada de cada um
+    private static class Candidatos {
+        long[] ids;
+        float[] pontuacoes;
+        int tamanho;
+
+        Candidatos(int capacidade) {
+            ids = new long[capacidade];
+            pontuacoes = new float[capacidade];
+        }
+
+        Candidatos intersectar(Candidatos outros) {
+            Candidatos resultado = new Candidatos(Math.min(tamanho, outros.tamanho));
+            int i = 0, j = 0;
+            while (i < tamanho && j < outros.tamanho) {
+                if (ids[i] < outros.ids[j]) {
+                    i++;
+                } else if (ids[i] > outros.ids[j]) {
+                    j++;
+                } else {
+                    resultado.ids[resultado.tamanho] = ids[i];
+                    resultado.pontuacoes[resultado.tamanho++] = pontuacoes[i++] + outros.pontuacoes[j++];
+                }
+            }
+            return resultado;
+        }
+
+        // Uniao usada na expansao de prefixo: a tarefa fica com a melhor pontuacao entre os termos
+        Candidatos unir(Candidatos outros) {
+            Candidatos resultado = new Candidatos(tamanho + outros.tamanho);
+            int i = 0, j = 0;
+            while (i < tamanho || j < outros.tamanho) {
+                long id;
+                float pontuacao;
+                if (j == outros.tamanho || (i < tamanho && ids[i] < outros.ids[j])) {
+                    id = ids[i];
+                    pontuacao = pontuacoes[i++];
+                } else if (i == tamanho || ids[i] > outros.ids[j]) {
+                    id = outros.ids[j];
+                    pontuacao = outros.pontuacoes[j++];
+                } else {
+                    id = ids[i];
+                    pontuacao = Math.max(pontuacoes[i++], outros.pontuacoes[j++]);
+                }
+                resultado.ids[resultado.tamanho] = id;
+                resultado.pontuacoes[resultado.tamanho++] = pontuacao;
+            }
+            return resultado;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Registro de metricas do processo: histogramas de latencia e contadores, por nome, criados na primeira
+ * vez em que sao pedidos. Quem mede guarda o histograma em um campo estatico; registrar um tempo e so
+ * alguns incrementos atomicos, sem lock e sem alocacao, e pode acontecer em qualquer thread.
+ *
+ * Os histogramas sao log-lineares: cada potencia de 2 de nanossegundos e dividida em 16 faixas iguais,
+ * entao um percentil sai com erro de no maximo 1/16 do valor. O maximo e exato.
+ *
+ * relatorio() resume tudo em texto (ServidorTarefas o expoe em /metricas, e a interface no Ctrl+M).
+ */
+public final class Metricas {
+    private static final Map<String, Histograma> histogramas = new ConcurrentSkipListMap<>();
+    private static final Map<String, Contador> contadores = new ConcurrentSkipListMap<>();
+
+    private Metricas() {}
+
+    public static Histograma histograma(String nome) {
+        return histogramas.computeIfAbsent(nome, n -> new Histograma());
+    }
+
+    public static Contador contador(String nome) {
+        return contadores.computeIfAbsent(nome, n -> new Contador());
+    }
+
+    // Resumo de um histograma; os tempos em nanossegundos
+    public record Resumo(long quantidade, long p50, long p99, long maximo, long total) {}
+
+    public static final class Histograma {
+        private static final int BITS_FAIXA = 4;
+        private static final int FAIXAS = 1 << BITS_FAIXA;
+        // Valores abaixo de FAIXAS tem faixa propria; dali em diante, FAIXAS por potencia de 2
+        private static final int TAMANHO = (64 - BITS_FAIXA) * FAIXAS;
+
+        private final AtomicLongArray contagens = new AtomicLongArray(TAMANHO);
+        private final LongAdder total = new LongAdder();
+        private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+        private Histograma() {}
+
+        public void registrar(long nanos) {
+            long valor = Math.max(nanos, 0);
+            contagens.incrementAndGet(faixa(valor));
+            total.add(valor);
+            maximo.accumulate(valor);
+        }
+
+        // O resumo e tirado sem parar quem registra, entao pode misturar registros em andamento
+        public Resumo resumir() {
+            long[] copia = new long[TAMANHO];
+            long soma = 0;
+            for (int i = 0; i < TAMANHO; i++) {
+                copia[i] = contagens.get(i);
+                soma += copia[i];
+            }
+            long max = maximo.get();
+            return new Resumo(soma, percentil(copia, soma, 0.50, max), percentil(copia, soma, 0.99, max), max, total.sum());
+        }
+
+        private static int faixa(long valor) {
+            if (valor < FAIXAS) {
+                return (int) valor;
+            }
+            int expoente = 63 - Long.numberOfLeadingZeros(valor);
+            int subfaixa = (int) (valor >>> (expoente - BITS_FAIXA)) & (FAIXAS - 1);
+            return (expoente - BITS_FAIXA + 1) * FAIXAS + subfaixa;
+        }
+
+        // Maior valor que cai na faixa
+        private static long limite(int faixa) {
+            if (faixa < FAIXAS) {
+                return faixa;
+            }
+            int deslocamento = faixa / FAIXAS - 1;
+            long inicio = (long) (FAIXAS + faixa % FAIXAS) << deslocamento;
+            return inicio + (1L << deslocamento) - 1;
+        }
+
+        private static long percentil(long[] contagens, long soma, double fracao, long maximo) {
+            if (soma == 0) {
+                return 0;
+            }
+            long posicao = Math.max(1, (long) Math.ceil(soma * fracao));
+            long acumulado = 0;
+            for (int i = 0; i < contagens.length; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= posicao) {
+                    return Math.min(limite(i), maximo);
+                }
+            }
+            return maximo;
+        }
+    }
+
+    public static final class Contador {
+        private final LongAdder valor = new LongAdder();
+
+        private Contador() {}
+
+        public void incrementar() {
+            valor.increment();
+        }
+
+        public void somar(long quantidade) {
+            valor.add(quantidade);
+        }
+
+        public long getValor() {
+            return valor.sum();
+        }
+    }
+
+    // Uma linha por histograma (tempos em ms) e por contador, em ordem de nome
+    public static String relatorio() {
+        StringBuilder texto = new StringBuilder();
+        texto.append(String.format(Locale.ROOT, "%-26s %10s %10s %10s %10s%n", "latencia (ms)", "n", "p50", "p99", "max"));
+        histogramas.forEach((nome, histograma) -> {
+            Resumo resumo = histograma.resumir();
+            if (resumo.quantidade() > 0) {
+                texto.append(String.format(Locale.ROOT, "%-26s %10d %10.3f %10.3f %10.3f%n", nome, resumo.quantidade(),
+                    resumo.p50() / 1e6, resumo.p99() / 1e6, resumo.maximo() / 1e6));
+            }
+        });
+        if (!contadores.isEmpty()) {
+            texto.append(String.format(Locale.ROOT, "%n%-26s %10s%n", "contador", "valor"));
+            contadores.forEach((nome, contador) ->
+                texto.append(String.format(Locale.ROOT, "%-26s %10d%n", nome, contador.getValor())));
+        }
+        return texto.toString();
+    }
+}
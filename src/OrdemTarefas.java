@@ -0,0 +1,241 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.function.LongFunction;
+
+/*
+ * Tarefas em uma ordem de classificacao, guardadas apenas como chaves long (ver TarefaService.Ordenacao):
+ * os campos da ordem ocupam os bits altos e o id os 31 bits baixos, entao cada chave e unica e comparar
+ * tarefas e comparar numeros. As chaves ficam em blocos ordenados de ate CAPACIDADE_BLOCO, com uma
+ * arvore de Fenwick sobre o tamanho de cada bloco. Localizar por chave ou por indice, inserir e remover
+ * custam O(log n) mais o deslocamento dentro de um unico bloco; nunca ha reordenacao completa.
+ */
+public class OrdemTarefas extends AbstractList<Tarefa> implements RandomAccess {
+    public static final long MASCARA_ID = (1L << 31) - 1;
+    private static final int CAPACIDADE_BLOCO = 1024;
+    // Blocos montados de uma vez ficam pela metade, com espaco para insercoes
+    private static final int PREENCHIMENTO_INICIAL = CAPACIDADE_BLOCO / 2;
+
+    private final LongFunction<Tarefa> armazem;
+    private long[][] blocos = new long[4][];
+    private int[] tamanhos = new int[4];
+    private int quantidadeBlocos;
+    // Indexada a partir de 1: fenwick[i] soma os tamanhos de um intervalo de blocos terminado em i - 1
+    private int[] fenwick = new int[5];
+    private int tamanho;
+
+    public OrdemTarefas(LongFunction<Tarefa> armazem) {
+        this.armazem = armazem;
+    }
+
+    // Ordem com as chaves informadas, em qualquer ordem e sem repeticoes; o vetor e reaproveitado
+    public OrdemTarefas(LongFunction<Tarefa> armazem, long[] chaves, int quantidade) {
+        this.armazem = armazem;
+        Arrays.sort(chaves, 0, quantidade);
+        int necessarios = (quantidade + PREENCHIMENTO_INICIAL - 1) / PREENCHIMENTO_INICIAL;
+        blocos = new long[Math.max(4, necessarios)][];
+        tamanhos = new int[blocos.length];
+        for (int inicio = 0; inicio < quantidade; inicio += PREENCHIMENTO_INICIAL) {
+            int fim = Math.min(quantidade, inicio + PREENCHIMENTO_INICIAL);
+            long[] bloco = new long[CAPACIDADE_BLOCO];
+            System.arraycopy(chaves, inicio, bloco, 0, fim - inicio);
+            blocos[quantidadeBlocos] = bloco;
+            tamanhos[quantidadeBlocos++] = fim - inicio;
+        }
+        tamanho = quantidade;
+        reconstruirFenwick();
+    }
+
+    // Todas as chaves, em ordem
+    public long[] copiarChaves() {
+        long[] chaves = new long[tamanho];
+        int copiadas = 0;
+        for (int b = 0; b < quantidadeBlocos; b++) {
+            System.arraycopy(blocos[b], 0, chaves, copiadas, tamanhos[b]);
+            copiadas += tamanhos[b];
+        }
+        return chaves;
+    }
+
+    @Override
+    public Tarefa get(int index) {
+        return armazem.apply(getId(index));
+    }
+
+    public long getId(int index) {
+        return getChave(index) & MASCARA_ID;
+    }
+
+    public long getChave(int index) {
+        if (index < 0 || index >= tamanho) {
+            throw new IndexOutOfBoundsException("Indice " + index + ", tamanho " + tamanho);
+        }
+        long local = localizar(index);
+        return blocos[(int) (local >>> 32)][(int) local];
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(blocos, 0, quantidadeBlocos, null);
+        quantidadeBlocos = 0;
+        tamanho = 0;
+        reconstruirFenwick();
+        modCount++;
+    }
+
+    // Posicao da chave, ou (-(ponto de insercao) - 1) se ela nao estiver na ordem
+    public int posicaoChave(long chave) {
+        if (tamanho == 0) {
+            return -1;
+        }
+        int b = blocoDaChave(chave);
+        int i = Arrays.binarySearch(blocos[b], 0, tamanhos[b], chave);
+        int antes = prefixo(b);
+        return i >= 0 ? antes + i : -(antes - i - 1) - 1;
+    }
+
+    // Insere a chave e retorna a sua posicao; uma chave ja presente nao e repetida
+    public int inserirChave(long chave) {
+        if (quantidadeBlocos == 0) {
+            blocos[0] = new long[CAPACIDADE_BLOCO];
+            quantidadeBlocos = 1;
+            reconstruirFenwick();
+        }
+        int b = blocoDaChave(chave);
+        int i = Arrays.binarySearch(blocos[b], 0, tamanhos[b], chave);
+        if (i >= 0) {
+            return prefixo(b) + i;
+        }
+        i = -i - 1;
+        if (tamanhos[b] == CAPACIDADE_BLOCO) {
+            dividir(b);
+            if (i > tamanhos[b]) {
+                i -= tamanhos[b];
+                b++;
+            }
+        }
+        long[] bloco = blocos[b];
+        System.arraycopy(bloco, i, bloco, i + 1, tamanhos[b] - i);
+        bloco[i] = chave;
+        tamanhos[b]++;
+        tamanho++;
+        somar(b, 1);
+        modCount++;
+        return prefixo(b) + i;
+    }
+
+    // Remove a chave e retorna a posicao que ela ocupava, ou -1 se ela nao estava na ordem
+    public int removerChave(long chave) {
+        if (tamanho == 0) {
+            return -1;
+        }
+        int b = blocoDaChave(chave);
+        int i = Arrays.binarySearch(blocos[b], 0, tamanhos[b], chave);
+        if (i < 0) {
+            return -1;
+        }
+        int posicao = prefixo(b) + i;
+        long[] bloco = blocos[b];
+        System.arraycopy(bloco, i + 1, bloco, i, tamanhos[b] - i - 1);
+        tamanhos[b]--;
+        tamanho--;
+        if (tamanhos[b] == 0) {
+            removerBloco(b);
+        } else {
+            somar(b, -1);
+        }
+        modCount++;
+        return posicao;
+    }
+
+    // Primeiro bloco cuja maior chave nao e menor que 'chave' (ou o ultimo, para chaves maiores que todas)
+    private int blocoDaChave(long chave) {
+        int inicio = 0;
+        int fim = quantidadeBlocos - 1;
+        while (inicio < fim) {
+            int meio = (inicio + fim) >>> 1;
+            if (blocos[meio][tamanhos[meio] - 1] < chave) {
+                inicio = meio + 1;
+            } else {
+                fim = meio;
+            }
+        }
+        return inicio;
+    }
+
+    // Bloco (32 bits altos) e posicao dentro dele (32 bits baixos) do indice, descendo a arvore de Fenwick
+    private long localizar(int indice) {
+        int bloco = 0;
+        int restante = indice;
+        for (int passo = Integer.highestOneBit(quantidadeBlocos); passo > 0; passo >>= 1) {
+            int proximo = bloco + passo;
+            if (proximo <= quantidadeBlocos && fenwick[proximo] <= restante) {
+                bloco = proximo;
+                restante -= fenwick[proximo];
+            }
+        }
+        return ((long) bloco << 32) | restante;
+    }
+
+    // Quantidade de chaves nos blocos anteriores a 'bloco'
+    private int prefixo(int bloco) {
+        int soma = 0;
+        for (int i = bloco; i > 0; i -= i & -i) {
+            soma += fenwick[i];
+        }
+        return soma;
+    }
+
+    private void somar(int bloco, int delta) {
+        for (int i = bloco + 1; i <= quantidadeBlocos; i += i & -i) {
+            fenwick[i] += delta;
+        }
+    }
+
+    // Divide um bloco cheio em dois; a arvore e refeita, o que custa O(numero de blocos) uma vez a
+    // cada CAPACIDADE_BLOCO / 2 insercoes no mesmo trecho
+    private void dividir(int b) {
+        if (quantidadeBlocos == blocos.length) {
+            blocos = Arrays.copyOf(blocos, blocos.length * 2);
+            tamanhos = Arrays.copyOf(tamanhos, tamanhos.length * 2);
+        }
+        System.arraycopy(blocos, b + 1, blocos, b + 2, quantidadeBlocos - b - 1);
+        System.arraycopy(tamanhos, b + 1, tamanhos, b + 2, quantidadeBlocos - b - 1);
+        int metade = tamanhos[b] / 2;
+        long[] novo = new long[CAPACIDADE_BLOCO];
+        System.arraycopy(blocos[b], metade, novo, 0, tamanhos[b] - metade);
+        blocos[b + 1] = novo;
+        tamanhos[b + 1] = tamanhos[b] - metade;
+        tamanhos[b] = metade;
+        quantidadeBlocos++;
+        reconstruirFenwick();
+    }
+
+    private void removerBloco(int b) {
+        System.arraycopy(blocos, b + 1, blocos, b, quantidadeBlocos - b - 1);
+        System.arraycopy(tamanhos, b + 1, tamanhos, b, quantidadeBlocos - b - 1);
+        quantidadeBlocos--;
+        blocos[quantidadeBlocos] = null;
+        reconstruirFenwick();
+    }
+
+    private void reconstruirFenwick() {
+        if (fenwick.length < quantidadeBlocos + 1) {
+            fenwick = new int[blocos.length + 1];
+        }
+        for (int i = 1; i <= quantidadeBlocos; i++) {
+            fenwick[i] = tamanhos[i - 1];
+        }
+        for (int i = 1; i <= quantidadeBlocos; i++) {
+            int pai = i + (i & -i);
+            if (pai <= quantidadeBlocos) {
+                fenwick[pai] += fenwick[i];
+            }
+        }
+    }
+}
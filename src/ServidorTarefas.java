@@ -0,0 +1,435 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Servidor HTTP sem interface grafica sobre o mesmo TarefaService (e os mesmos arquivos de dados)
+ * da aplicacao, para scripts e outras ferramentas. Atende apenas na interface local.
+ *
+ *   java -cp <classes> ServidorTarefas [porta] [diretorio]
+ *
+ *   GET    /tarefas?filtro=pendentes&busca=texto&categoria=Casa&inicio=0&limite=100
+ *   GET    /tarefas/{id}
+ *   POST   /tarefas               corpo: uma tarefa no formato da exportacao JSON
+ *   PUT    /tarefas/{id}          substitui todos os campos, inclusive "concluida"
+ *   DELETE /tarefas/{id}
+ *   GET    /exportar?formato=json|csv
+ *   GET    /metricas              latencias (p50/p99/max) e contadores de Metricas, em texto
+ *
+ * As tarefas saem no formato de ExportadorTarefas, com o campo "id". Cada requisicao roda em uma
+ * thread virtual propria; o servico ja e seguro para varias threads. Os GET levam um ETag com a
+ * versao do servico, e um If-None-Match com o ETag atual e respondido com 304 antes de qualquer
+ * copia ou serializacao: quem consulta periodicamente uma lista que nao mudou paga apenas a
+ * leitura de um campo volatil.
+ *
+ * Sem autenticacao, o servidor se protege das paginas abertas no navegador da propria maquina: o
+ * cabecalho Host precisa ser um nome local (contra DNS rebinding), e os corpos de POST e PUT precisam
+ * vir como application/json, tipo que um formulario ou outra requisicao "simples" de outro site nao
+ * consegue enviar sem uma verificacao previa (CORS) que este servidor nunca aprova.
+ */
+public final class ServidorTarefas {
+    private static final int PORTA_PADRAO = 8080;
+    private static final String PREFIXO_TAREFAS = "/tarefas";
+    private static final String TIPO_JSON = "application/json; charset=utf-8";
+    private static final String TIPO_CSV = "text/csv; charset=utf-8";
+    private static final String TIPO_TEXTO = "text/plain; charset=utf-8";
+    private static final Set<String> HOSTS_LOCAIS = Set.of("localhost", "127.0.0.1", "[::1]");
+    // Tamanho da pagina de busca quando a requisicao nao informa um limite
+    private static final int LIMITE_BUSCA = 100;
+    // Conexoes aguardando aceitacao; rajadas de clientes locais passam facilmente do padrao do sistema
+    private static final int FILA_CONEXOES = 1024;
+
+    private final TarefaService service;
+    private final HttpServer servidor;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // As versoes do servico recomecam a cada execucao; este prefixo impede que um ETag de uma
+    // execucao anterior coincida com o de agora
+    private final String instancia = Long.toString(System.currentTimeMillis(), 36);
+
+    public ServidorTarefas(TarefaService service, InetSocketAddress endereco) throws IOException {
+        this.service = service;
+        // Sem TCP_NODELAY, respostas pequenas em conexoes mantidas abertas esperam o ACK atrasado do
+        // cliente (dezenas de ms cada); a propriedade e lida quando o servidor e criado
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        servidor = HttpServer.create(endereco, FILA_CONEXOES);
+        servidor.createContext(PREFIXO_TAREFAS, this::tarefas);
+        servidor.createContext("/exportar", this::exportar);
+        servidor.createContext("/metricas", this::metricas);
+        servidor.setExecutor(executor);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int porta = args.length > 0 ? Integer.parseInt(args[0]) : PORTA_PADRAO;
+        Path diretorio = Paths.get(args.length > 1 ? args[1] : "");
+        TarefaService service = new TarefaService(TarefaService.armazenamentoConfigurado(), diretorio);
+        // A API nao tem autenticacao, entao nao fica exposta alem da propria maquina
+        ServidorTarefas servidor = new ServidorTarefas(service, new InetSocketAddress(InetAddress.getLoopbackAddress(), porta));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            servidor.parar();
+            service.fechar();
+        }));
+        servidor.iniciar();
+        System.out.printf("Servidor de tarefas em http://%s:%d%s (%d tarefas)%n",
+            InetAddress.getLoopbackAddress().getHostAddress(), servidor.getPorta(), PREFIXO_TAREFAS,
+            service.contar(TarefaService.FiltroTarefa.TODAS));
+    }
+
+    public void iniciar() {
+        servidor.start();
+    }
+
+    // Para de aceitar conexoes e aguarda as requisicoes em andamento
+    public void parar() {
+        servidor.stop(1);
+        executor.close();
+    }
+
+    public int getPorta() {
+        return servidor.getAddress().getPort();
+    }
+
+    private void tarefas(HttpExchange troca) throws IOException {
+        atender(troca, () -> {
+            String resto = troca.getRequestURI().getPath().substring(PREFIXO_TAREFAS.length());
+            String metodo = troca.getRequestMethod();
+            if (resto.isEmpty() || resto.equals("/")) {
+                switch (metodo) {
+                    case "GET" -> listar(troca);
+                    case "POST" -> criar(troca);
+                    default -> metodoNaoPermitido(troca, "GET, POST");
+                }
+                return;
+            }
+            long id = id(resto);
+            if (id <= 0) {
+                responderTexto(troca, 404, "Recurso nao encontrado: " + troca.getRequestURI().getPath());
+                return;
+            }
+            switch (metodo) {
+                case "GET" -> obter(troca, id);
+                case "PUT" -> substituir(troca, id);
+                case "DELETE" -> remover(troca, id);
+                default -> metodoNaoPermitido(troca, "GET, PUT, DELETE");
+            }
+        });
+    }
+
+    private void exportar(HttpExchange troca) throws IOException {
+        atender(troca, () -> {
+            if (!caminhoExato(troca, "/exportar")) {
+                return;
+            }
+            if (!troca.getRequestMethod().equals("GET")) {
+                metodoNaoPermitido(troca, "GET");
+                return;
+            }
+            String formato = parametros(troca).getOrDefault("formato", "json").toLowerCase(Locale.ROOT);
+            if (!formato.equals("json") && !formato.equals("csv")) {
+                throw new IllegalArgumentException("Formato desconhecido: " + formato);
+            }
+            String etag = etag(service.getVersao());
+            if (naoModificado(troca, etag)) {
+                return;
+            }
+            cabecalhos(troca, formato.equals("csv") ? TIPO_CSV : TIPO_JSON, etag);
+            troca.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"tarefas." + formato + "\"");
+            troca.sendResponseHeaders(200, 0);
+            if (formato.equals("csv")) {
+                service.exportarParaCSV(troca.getResponseBody());
+            } else {
+                service.exportarParaJSON(troca.getResponseBody());
+            }
+        });
+    }
+
+    private void metricas(HttpExchange troca) throws IOException {
+        atender(troca, () -> {
+            if (!caminhoExato(troca, "/metricas")) {
+                return;
+            }
+            if (!troca.getRequestMethod().equals("GET")) {
+                metodoNaoPermitido(troca, "GET");
+                return;
+            }
+            responderTexto(troca, 200, Metricas.relatorio());
+        });
+    }
+
+    private void listar(HttpExchange troca) throws IOException {
+        Map<String, String> parametros = parametros(troca);
+        TarefaService.FiltroTarefa filtro = filtro(parametros.get("filtro"));
+        String busca = parametros.get("busca");
+        String categoria = parametros.get("categoria");
+        int inicio = inteiro(parametros, "inicio", 0);
+        boolean buscando = busca != null && !busca.isBlank();
+        int limite = inteiro(parametros, "limite", buscando ? LIMITE_BUSCA : Integer.MAX_VALUE);
+        if (naoModificado(troca, etag(service.getVersao()))) {
+            return;
+        }
+
+        long versao;
+        List<Tarefa> tarefas;
+        if (buscando) {
+            // A versao e lida antes da busca, que portanto reflete no minimo esse estado. A busca
+            // ja filtra pela categoria e devolve os resultados ate o fim da pagina pedida
+            versao = service.getVersao();
+            tarefas = service.buscar(busca, filtro, categoria, (int) Math.min(Integer.MAX_VALUE, (long) inicio + limite));
+            int fim = (int) Math.min(tarefas.size(), (long) inicio + limite);
+            tarefas = tarefas.subList(Math.min(inicio, fim), fim);
+        } else {
+            // Sem copiar a visao: so as tarefas da pagina sao obtidas
+            TarefaService.Instantaneo pagina = service.getPagina(filtro, categoria, inicio, limite);
+            versao = pagina.versao();
+            tarefas = pagina.tarefas();
+        }
+
+        cabecalhos(troca, TIPO_JSON, etag(versao));
+        // Tamanho desconhecido de antemao: a lista vai em blocos, escrita a medida que e serializada
+        troca.sendResponseHeaders(200, 0);
+        ExportadorTarefas.exportarJSON(tarefas, troca.getResponseBody(), true);
+    }
+
+    private void obter(HttpExchange troca, long id) throws IOException {
+        long versao = service.getVersao();
+        String etag = etag(versao);
+        if (naoModificado(troca, etag)) {
+            return;
+        }
+        Tarefa tarefa = service.obter(id);
+        if (tarefa == null) {
+            responderTexto(troca, 404, "Tarefa " + id + " nao encontrada");
+            return;
+        }
+        responderTarefa(troca, 200, tarefa, etag);
+    }
+
+    private void criar(HttpExchange troca) throws IOException {
+        if (!corpoJson(troca)) {
+            return;
+        }
+        Tarefa dados = lerTarefa(troca);
+        Tarefa criada = service.adicionar(dados);
+        troca.getResponseHeaders().set("Location", PREFIXO_TAREFAS + "/" + criada.id());
+        responderTarefa(troca, 201, criada, null);
+    }
+
+    private void substituir(HttpExchange troca, long id) throws IOException {
+        if (!corpoJson(troca)) {
+            return;
+        }
+        Tarefa atualizada = service.atualizar(id, lerTarefa(troca));
+        if (atualizada == null) {
+            responderTexto(troca, 404, "Tarefa " + id + " nao encontrada");
+            return;
+        }
+        responderTarefa(troca, 200, atualizada, null);
+    }
+
+    private void remover(HttpExchange troca, long id) throws IOException {
+        if (!service.remover(id)) {
+            responderTexto(troca, 404, "Tarefa " + id + " nao encontrada");
+            return;
+        }
+        troca.sendResponseHeaders(204, -1);
+    }
+
+    private interface Atendimento {
+        void executar() throws IOException;
+    }
+
+    // Erros de requisicao (parametros ou corpo invalidos) viram 400; os demais, 500
+    private void atender(HttpExchange troca, Atendimento atendimento) throws IOException {
+        try (troca) {
+            try {
+                if (!hostLocal(troca.getRequestHeaders().getFirst("Host"))) {
+                    responderTexto(troca, 403, "Host nao permitido");
+                    return;
+                }
+                atendimento.executar();
+            } catch (IllegalArgumentException e) {
+                responderErro(troca, 400, e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                responderErro(troca, 500, "Erro interno");
+            }
+        }
+    }
+
+    // So e possivel responder com erro se nada tiver sido enviado ainda
+    private void responderErro(HttpExchange troca, int status, String mensagem) throws IOException {
+        if (troca.getResponseCode() == -1) {
+            responderTexto(troca, status, mensagem);
+        }
+    }
+
+    private Tarefa lerTarefa(HttpExchange troca) {
+        try {
+            return ImportadorTarefas.lerTarefaJSON(troca.getRequestBody());
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    // Com um ETag, o mesmo If-None-Match da requisicao devolve 304 sem corpo
+    private boolean naoModificado(HttpExchange troca, String etag) throws IOException {
+        String pedido = troca.getRequestHeaders().getFirst("If-None-Match");
+        if (pedido == null) {
+            return false;
+        }
+        for (String candidato : pedido.split(",")) {
+            candidato = candidato.strip();
+            if (candidato.startsWith("W/")) {
+                candidato = candidato.substring(2);
+            }
+            if (candidato.equals(etag) || candidato.equals("*")) {
+                troca.getResponseHeaders().set("ETag", etag);
+                troca.sendResponseHeaders(304, -1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A versao muda a cada mutacao; o dia entra porque os filtros por vencimento mudam com a data
+    private String etag(long versao) {
+        return "\"" + instancia + "-" + versao + "-" + LocalDate.now().toEpochDay() + "\"";
+    }
+
+    private static void cabecalhos(HttpExchange troca, String tipo, String etag) {
+        troca.getResponseHeaders().set("Content-Type", tipo);
+        if (etag != null) {
+            troca.getResponseHeaders().set("ETag", etag);
+            // O cliente pode guardar a resposta, mas deve revalida-la a cada uso
+            troca.getResponseHeaders().set("Cache-Control", "no-cache");
+        }
+    }
+
+    private static void responderTarefa(HttpExchange troca, int status, Tarefa tarefa, String etag) throws IOException {
+        ByteArrayOutputStream corpo = new ByteArrayOutputStream(512);
+        ExportadorTarefas.exportarJSON(tarefa, corpo);
+        cabecalhos(troca, TIPO_JSON, etag);
+        troca.sendResponseHeaders(status, corpo.size());
+        corpo.writeTo(troca.getResponseBody());
+    }
+
+    private static void responderTexto(HttpExchange troca, int status, String texto) throws IOException {
+        byte[] corpo = (texto + "\n").getBytes(StandardCharsets.UTF_8);
+        troca.getResponseHeaders().set("Content-Type", TIPO_TEXTO);
+        troca.sendResponseHeaders(status, corpo.length);
+        troca.getResponseBody().write(corpo);
+    }
+
+    private static void metodoNaoPermitido(HttpExchange troca, String permitidos) throws IOException {
+        troca.getResponseHeaders().set("Allow", permitidos);
+        responderTexto(troca, 405, "Metodo nao permitido: " + troca.getRequestMethod());
+    }
+
+    // Os contextos do HttpServer casam por prefixo: "/metricasX" tambem chegaria aqui
+    private static boolean caminhoExato(HttpExchange troca, String caminho) throws IOException {
+        if (troca.getRequestURI().getPath().equals(caminho)) {
+            return true;
+        }
+        responderTexto(troca, 404, "Recurso nao encontrado: " + troca.getRequestURI().getPath());
+        return false;
+    }
+
+    // Nome local, com ou sem porta. Uma pagina que aponta o proprio dominio para 127.0.0.1 (DNS
+    // rebinding) chega com o nome do dominio dela
+    private static boolean hostLocal(String host) {
+        if (host == null) {
+            return false;
+        }
+        host = host.strip().toLowerCase(Locale.ROOT);
+        int fimNome = host.startsWith("[") ? host.indexOf(']') + 1 : host.indexOf(':');
+        if (fimNome > 0 && fimNome < host.length()) {
+            String porta = host.substring(fimNome);
+            if (!porta.matches(":[0-9]{1,5}")) {
+                return false;
+            }
+            host = host.substring(0, fimNome);
+        }
+        return HOSTS_LOCAIS.contains(host);
+    }
+
+    private static boolean corpoJson(HttpExchange troca) throws IOException {
+        String tipo = troca.getRequestHeaders().getFirst("Content-Type");
+        String midia = tipo == null ? "" : tipo.split(";", 2)[0].strip();
+        if (midia.equalsIgnoreCase("application/json")) {
+            return true;
+        }
+        responderTexto(troca, 415, "O corpo deve ser enviado como application/json");
+        return false;
+    }
+
+    // Id de um caminho "/{id}", ou -1 se o caminho nao tiver esse formato ou o id nao for um numero positivo
+    private static long id(String caminho) {
+        if (caminho.length() < 2 || caminho.charAt(0) != '/' || caminho.charAt(1) < '0' || caminho.charAt(1) > '9') {
+            return -1;
+        }
+        try {
+            return Long.parseLong(caminho, 1, caminho.length(), 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static TarefaService.FiltroTarefa filtro(String nome) {
+        if (nome == null || nome.isBlank()) {
+            return TarefaService.FiltroTarefa.TODAS;
+        }
+        try {
+            return TarefaService.FiltroTarefa.valueOf(nome.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Filtro desconhecido: " + nome);
+        }
+    }
+
+    private static int inteiro(Map<String, String> parametros, String nome, int padrao) {
+        String valor = parametros.get(nome);
+        if (valor == null || valor.isBlank()) {
+            return padrao;
+        }
+        try {
+            int numero = Integer.parseInt(valor.strip());
+            if (numero < 0) {
+                throw new NumberFormatException();
+            }
+            return numero;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parametro \"" + nome + "\" invalido: " + valor);
+        }
+    }
+
+    private static Map<String, String> parametros(HttpExchange troca) {
+        Map<String, String> parametros = new HashMap<>();
+        String consulta = troca.getRequestURI().getRawQuery();
+        if (consulta == null || consulta.isEmpty()) {
+            return parametros;
+        }
+        for (String par : consulta.split("&")) {
+            int igual = par.indexOf('=');
+            String nome = igual >= 0 ? par.substring(0, igual) : par;
+            String valor = igual >= 0 ? par.substring(igual + 1) : "";
+            parametros.putIfAbsent(URLDecoder.decode(nome, StandardCharsets.UTF_8), URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+        return parametros;
+    }
+}
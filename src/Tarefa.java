@@ -1,8 +1,8 @@
 import java.io.Serializable;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 
 public record Tarefa(
+    long id,
     String descricao, 
     boolean concluida,
     String observacao,
@@ -10,6 +10,16 @@ public record Tarefa(
     String categoria,
     LocalDate dataVencimento
 ) implements Serializable {
+    // O formato binario e os armazens guardam o vencimento como um int em epoch-day; o menor int fica
+    // reservado para "sem vencimento" no armazem colunar
+    public static final LocalDate MENOR_VENCIMENTO = LocalDate.ofEpochDay(Integer.MIN_VALUE + 1L);
+    public static final LocalDate MAIOR_VENCIMENTO = LocalDate.ofEpochDay(Integer.MAX_VALUE);
+
+    public Tarefa {
+        if (dataVencimento != null && (dataVencimento.isBefore(MENOR_VENCIMENTO) || dataVencimento.isAfter(MAIOR_VENCIMENTO))) {
+            throw new IllegalArgumentException("Data de vencimento fora do intervalo aceito: " + dataVencimento);
+        }
+    }
     
     // Enum para prioridades
     public enum Prioridade {
@@ -29,51 +39,18 @@ public record Tarefa(
         }
     }
     
-    // Construtor para compatibilidade com tarefas antigas (sem observação)
+    // Construtor para compatibilidade com tarefas antigas (sem observação e sem id)
     public Tarefa(String descricao, boolean concluida) {
-        this(descricao, concluida, "", Prioridade.MEDIA, "Geral", null);
+        this(0, descricao, concluida, "", Prioridade.MEDIA, "Geral", null);
     }
     
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(concluida ? "[X] " : "[ ] ");
-        sb.append(descricao);
-        
-        if (categoria != null && !categoria.isEmpty() && !categoria.equals("Geral")) {
-            sb.append(" [").append(categoria).append("]");
-        }
-        
-        if (dataVencimento != null) {
-            sb.append(" (").append(dataVencimento.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"))).append(")");
-        }
-        
-        return sb.toString();
+        return FormatoTarefa.linha(this);
     }
     
     public String toDetailedString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n================================\n");
-        sb.append("DETALHES DA TAREFA\n");
-        sb.append("================================\n\n");
-        sb.append("Descricao: ").append(descricao).append("\n");
-        sb.append("Status: ").append(concluida ? "Concluida" : "Pendente").append("\n");
-        sb.append("Prioridade: ").append(prioridade).append("\n");
-        sb.append("Categoria: ").append(categoria).append("\n");
-        
-        if (dataVencimento != null) {
-            sb.append("Vencimento: ").append(dataVencimento.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"))).append("\n");
-        } else {
-            sb.append("Vencimento: Sem data definida\n");
-        }
-        
-        if (observacao != null && !observacao.isEmpty()) {
-            sb.append("\nObservacao:\n");
-            sb.append(observacao).append("\n");
-        }
-        
-        sb.append("\n================================\n");
-        return sb.toString();
+        return FormatoTarefa.detalhes(this);
     }
 }
 
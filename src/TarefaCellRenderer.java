@@ -0,0 +1,15 @@
+import javax.swing.*;
+import java.awt.*;
+
+// Monta o texto de cada linha apenas quando ela e pintada, e de novo so quando a tarefa muda
+public class TarefaCellRenderer extends DefaultListCellRenderer {
+    // Bem mais que as linhas visiveis de uma vez; rolar de volta reaproveita as linhas ja montadas
+    private final CacheLinhas linhas = new CacheLinhas(4096);
+
+    @Override
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                  boolean isSelected, boolean cellHasFocus) {
+        Tarefa t = (Tarefa) value;
+        return super.getListCellRendererComponent(list, linhas.linha(t), index, isSelected, cellHasFocus);
+    }
+}
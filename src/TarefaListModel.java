@@ -0,0 +1,245 @@
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// Modelo da JList com uma copia propria da visao filtrada, mantida pelos eventos do servico:
+// cada alteracao mexe apenas nas linhas afetadas, sem que a interface precise pedir atualizacao.
+// Com uma busca ativa, a visao passa a ser o resultado da busca, limitado aos mais relevantes.
+// Fora dos filtros por vencimento a visao guarda so os ids: a JList, com altura de celula fixa,
+// obtem do servico apenas as tarefas das linhas visiveis. Com uma ordenacao escolhida, a visao e uma
+// OrdemTarefas, e cada evento reposiciona a linha pela chave da tarefa, sem reordenar a lista.
+public class TarefaListModel extends AbstractListModel<Tarefa> implements TarefaService.Ouvinte {
+    private static final int LIMITE_BUSCA = 500;
+    // Prefixos de uma letra casam com boa parte do indice e pouco filtram
+    private static final int TAMANHO_MINIMO_BUSCA = 2;
+    // Lotes maiores que isso recarregam a visao inteira em vez de aplicar evento por evento
+    private static final int LIMITE_EVENTOS = 1024;
+    // Tempo na EDT para refazer a visao inteira e para aplicar um grupo de eventos
+    private static final Metricas.Histograma TEMPO_RECARGA = Metricas.histograma("lista.recarga");
+    private static final Metricas.Histograma TEMPO_EVENTOS = Metricas.histograma("lista.eventos");
+    private static final Comparator<Tarefa> POR_ID = Comparator.comparingLong(Tarefa::id);
+    private static final Comparator<Tarefa> POR_VENCIMENTO =
+        Comparator.comparing(Tarefa::dataVencimento).thenComparingLong(Tarefa::id);
+
+    private final TarefaService service;
+    private TarefaService.FiltroTarefa filtro = TarefaService.FiltroTarefa.TODAS;
+    private String busca = "";
+    private TarefaService.Ordenacao ordenacao = TarefaService.Ordenacao.INSERCAO;
+    // Postos de categoria com que as chaves da visao ordenada foram calculadas
+    private Map<String, Integer> postos = Map.of();
+    private List<Tarefa> visao = new ArrayList<>();
+    // Versao do servico refletida na visao; eventos ate ela ja estao aplicados
+    private long versao = -1;
+
+    public TarefaListModel(TarefaService service) {
+        this.service = service;
+        // Inscrito antes da primeira copia, para nao perder alteracoes feitas entre as duas coisas; as
+        // que a copia ja contem sao descartadas pela versao
+        service.adicionarOuvinte(this, SwingUtilities::invokeLater);
+        recarregar();
+    }
+
+    @Override
+    public int getSize() {
+        return visao.size();
+    }
+
+    @Override
+    public Tarefa getElementAt(int index) {
+        Tarefa tarefa = visao.get(index);
+        if (tarefa == null) {
+            // Tarefa ja removida no servico, cujo evento ainda nao chegou
+            long id = visao instanceof OrdemTarefas ordem ? ordem.getId(index) : ((VetorTarefas) visao).getId(index);
+            return new Tarefa(id, "", false, "", Tarefa.Prioridade.MEDIA, "", null);
+        }
+        return tarefa;
+    }
+
+    public TarefaService.FiltroTarefa getFiltro() {
+        return filtro;
+    }
+
+    public void setFiltro(TarefaService.FiltroTarefa filtro) {
+        this.filtro = filtro;
+        recarregar();
+    }
+
+    public TarefaService.Ordenacao getOrdenacao() {
+        return ordenacao;
+    }
+
+    public void setOrdenacao(TarefaService.Ordenacao ordenacao) {
+        this.ordenacao = ordenacao;
+        service.setOrdenacao(ordenacao);
+        recarregar();
+    }
+
+    public String getBusca() {
+        return busca;
+    }
+
+    public boolean isBuscando() {
+        return busca.strip().length() >= TAMANHO_MINIMO_BUSCA;
+    }
+
+    public void setBusca(String busca) {
+        this.busca = busca != null ? busca : "";
+        recarregar();
+    }
+
+    // Substitui toda a visao; usado quando o conjunto exibido muda por completo
+    public void recarregar() {
+        EventosDesempenho.AtualizacaoLista evento = new EventosDesempenho.AtualizacaoLista();
+        evento.begin();
+        long inicio = System.nanoTime();
+        int tamanhoAnterior = visao.size();
+        if (isBuscando()) {
+            // A versao e lida antes da busca, que portanto reflete no minimo esse estado
+            versao = service.getVersao();
+            visao = service.buscar(busca, filtro, LIMITE_BUSCA);
+        } else if (ordenacao != TarefaService.Ordenacao.INSERCAO) {
+            TarefaService.InstantaneoOrdem ordenados = service.getOrdenados(filtro);
+            versao = ordenados.versao();
+            postos = ordenados.postos();
+            ordenacao = ordenados.ordenacao();
+            visao = ordenados.tarefas();
+        } else if (filtro.isPorVencimento()) {
+            TarefaService.Instantaneo instantaneo = service.getInstantaneoFiltrado(filtro);
+            versao = instantaneo.versao();
+            visao = new ArrayList<>(instantaneo.tarefas());
+        } else {
+            TarefaService.InstantaneoIds ids = service.getIdsFiltrados(filtro);
+            versao = ids.versao();
+            visao = new VetorTarefas(service::obter, ids.ids());
+        }
+        if (tamanhoAnterior > 0) {
+            fireIntervalRemoved(this, 0, tamanhoAnterior - 1);
+        }
+        if (!visao.isEmpty()) {
+            fireIntervalAdded(this, 0, visao.size() - 1);
+        }
+        TEMPO_RECARGA.registrar(System.nanoTime() - inicio);
+        evento.tarefas = visao.size();
+        evento.commit();
+    }
+
+    // Recebido na EDT, na ordem em que as mutacoes aconteceram
+    @Override
+    public void tarefasAlteradas(List<EventoTarefa> eventos, long versaoEventos) {
+        if (versaoEventos <= versao) {
+            return;
+        }
+        if (isBuscando() || eventos.size() > LIMITE_EVENTOS) {
+            // Na busca, uma alteracao pode mudar a relevancia de varias linhas; ela e refeita
+            recarregar();
+            return;
+        }
+        if (visao instanceof OrdemTarefas && ordenacao == TarefaService.Ordenacao.CATEGORIA && temCategoriaNova(eventos)) {
+            // Os postos mudaram no servico, e com eles as chaves de todas as linhas
+            recarregar();
+            return;
+        }
+        EventosDesempenho.AtualizacaoLista atualizacao = new EventosDesempenho.AtualizacaoLista();
+        atualizacao.begin();
+        long inicio = System.nanoTime();
+        versao = versaoEventos;
+        long hoje = LocalDate.now().toEpochDay();
+        for (EventoTarefa evento : eventos) {
+            if (visao instanceof OrdemTarefas ordem) {
+                aplicarOrdenado(ordem, evento, hoje);
+            } else {
+                aplicar(evento, hoje);
+            }
+        }
+        TEMPO_EVENTOS.registrar(System.nanoTime() - inicio);
+        atualizacao.incremental = true;
+        atualizacao.eventos = eventos.size();
+        atualizacao.tarefas = visao.size();
+        atualizacao.commit();
+    }
+
+    // Mais um bloco do carregamento em segundo plano: a visao e refeita com as tarefas ja carregadas
+    @Override
+    public void tarefasCarregadas(long versaoCarga, boolean completo) {
+        if (versaoCarga > versao) {
+            recarregar();
+        }
+    }
+
+    // Notifica a JList apenas sobre as linhas afetadas pelo evento
+    private void aplicar(EventoTarefa evento, long hoje) {
+        int indiceAnterior = evento.anterior() != null && filtro.aceita(evento.anterior(), hoje)
+            ? Math.max(posicao(evento.anterior()), -1) : -1;
+        boolean visivel = evento.atual() != null && filtro.aceita(evento.atual(), hoje);
+        if (indiceAnterior >= 0 && visivel && ordem().compare(evento.anterior(), evento.atual()) == 0) {
+            visao.set(indiceAnterior, evento.atual());
+            fireContentsChanged(this, indiceAnterior, indiceAnterior);
+            return;
+        }
+        if (indiceAnterior >= 0) {
+            visao.remove(indiceAnterior);
+            fireIntervalRemoved(this, indiceAnterior, indiceAnterior);
+        }
+        if (visivel) {
+            int indiceAtual = posicao(evento.atual());
+            if (indiceAtual < 0) {
+                indiceAtual = -indiceAtual - 1;
+                visao.add(indiceAtual, evento.atual());
+                fireIntervalAdded(this, indiceAtual, indiceAtual);
+            }
+        }
+    }
+
+    // Na visao ordenada a linha e localizada pela chave, sem obter tarefas do servico
+    private void aplicarOrdenado(OrdemTarefas ordem, EventoTarefa evento, long hoje) {
+        long chaveAnterior = evento.anterior() != null && filtro.aceita(evento.anterior(), hoje)
+            ? ordenacao.chave(evento.anterior(), postos) : -1;
+        long chaveAtual = evento.atual() != null && filtro.aceita(evento.atual(), hoje)
+            ? ordenacao.chave(evento.atual(), postos) : -1;
+        if (chaveAnterior >= 0 && chaveAnterior == chaveAtual) {
+            int indice = ordem.posicaoChave(chaveAtual);
+            if (indice >= 0) {
+                fireContentsChanged(this, indice, indice);
+            }
+            return;
+        }
+        if (chaveAnterior >= 0) {
+            int indice = ordem.removerChave(chaveAnterior);
+            if (indice >= 0) {
+                fireIntervalRemoved(this, indice, indice);
+            }
+        }
+        if (chaveAtual >= 0 && ordem.posicaoChave(chaveAtual) < 0) {
+            int indice = ordem.inserirChave(chaveAtual);
+            fireIntervalAdded(this, indice, indice);
+        }
+    }
+
+    private boolean temCategoriaNova(List<EventoTarefa> eventos) {
+        for (EventoTarefa evento : eventos) {
+            String categoria = evento.atual() != null ? evento.atual().categoria() : null;
+            if (categoria != null && !postos.containsKey(categoria)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Busca binaria na visao, que segue a mesma ordem do servico para o filtro. Na visao por ids a
+    // busca nao obtem tarefas, que no servico podem ja estar a frente dos eventos aplicados.
+    private int posicao(Tarefa tarefa) {
+        if (visao instanceof VetorTarefas vetor) {
+            return vetor.posicao(tarefa.id());
+        }
+        return Collections.binarySearch(visao, tarefa, ordem());
+    }
+
+    private Comparator<Tarefa> ordem() {
+        return filtro.isPorVencimento() ? POR_VENCIMENTO : POR_ID;
+    }
+}
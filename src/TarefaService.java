@@ -1,206 +1,1642 @@
 import java.io.*;
 import java.nio.file.*;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
+/*
+ * Concorrencia: um escritor por vez (StampedLock de escrita, mantido durante um lote inteiro) e
+ * quantos leitores forem necessarios. Contagens e posicoes usam leitura otimista, sem bloquear o
+ * escritor; consultas que percorrem indices usam o lock de leitura. As visoes vivas de
+ * getTarefas()/getTarefasFiltradas() so podem ser lidas pela thread que faz as alteracoes;
+ * as demais threads usam getInstantaneo(), uma copia imutavel e consistente.
+ *
+ * Cada mutacao publica EventoTarefa aos ouvintes. Os eventos de um lote sao combinados e entregues
+ * juntos, pelo executor de cada ouvinte, na ordem em que as mutacoes aconteceram.
+ */
 public class TarefaService {
-    private static final Path PATH = Paths.get("tarefas.dat");
-    private final List<Tarefa> tarefas = new ArrayList<>();
+    private static final String CATEGORIA_PADRAO = "Geral";
+    // Janela do filtro PROXIMOS_7_DIAS, contando a partir de hoje
+    private static final int DIAS_PROXIMOS = 7;
+    // No carregamento em segundo plano, o primeiro bloco cobre a primeira tela da lista; os demais sao
+    // maiores para que o carregamento nao se perca em trocas de lock e recargas da interface
+    private static final int PRIMEIRO_BLOCO = 256;
+    private static final int TAMANHO_BLOCO = 64 * 1024;
+    // Acima disso, um lote deixa de reposicionar a ordem tarefa a tarefa e a refaz de uma vez no fim
+    private static final int LIMITE_AJUSTES_ORDEM = 1024;
+    // Consultas que percorrem ou copiam tarefas; as visoes vivas e as contagens nao sao medidas
+    private static final Metricas.Histograma TEMPO_VENCIMENTOS = Metricas.histograma("consulta.vencimentos");
+    private static final Metricas.Histograma TEMPO_INSTANTANEO = Metricas.histograma("consulta.instantaneo");
+    private static final Metricas.Histograma TEMPO_IDS = Metricas.histograma("consulta.ids");
+    private static final Metricas.Histograma TEMPO_PAGINA = Metricas.histograma("consulta.pagina");
+    private static final Metricas.Histograma TEMPO_ORDENADOS = Metricas.histograma("consulta.ordenados");
+    private static final Metricas.Histograma TEMPO_BUSCA = Metricas.histograma("consulta.busca");
+    private static final Metricas.Contador CONFLITOS = Metricas.contador("servico.conflitos");
+
+    private final Path path;
+    private final Path pathDiario;
+    // Dono das tarefas; os vetores e indices abaixo guardam ids e as obtem daqui
+    private final ArmazemTarefas armazem;
+    // Lista em ordem de insercao; como os ids sao crescentes, ela tambem fica ordenada por id
+    private final VetorTarefas tarefas = new VetorTarefas(this::obter);
+    // Particoes mantidas a cada mutacao, para que os filtros nao percorram a lista inteira
+    private final VetorTarefas pendentes = new VetorTarefas(this::obter);
+    private final VetorTarefas concluidas = new VetorTarefas(this::obter);
+    private final List<Tarefa> visaoTodas = Collections.unmodifiableList(tarefas);
+    private final List<Tarefa> visaoPendentes = Collections.unmodifiableList(pendentes);
+    private final List<Tarefa> visaoConcluidas = Collections.unmodifiableList(concluidas);
+    // Indice categoria -> tarefas; a contagem de cada categoria e o tamanho do vetor
+    private final TreeMap<String, VetorTarefas> porCategoria = new TreeMap<>();
+    // Indice epoch-day do vencimento -> tarefas, para consultas por intervalo de datas
+    private final TreeMap<Long, VetorTarefas> porVencimento = new TreeMap<>();
+    // No modo mapeado, o indice de busca (que cresce com o texto das tarefas) so e montado na primeira
+    // busca; ate la fica nulo e as mutacoes nao o mantem
+    private volatile IndiceBusca indiceBusca;
+    private final Object montagemIndice = new Object();
+    private Ordenacao ordenacao = Ordenacao.INSERCAO;
+    // Todas as tarefas na ordenacao atual, mantida a cada mutacao; nula em INSERCAO, que e a propria lista
+    private OrdemTarefas ordem;
+    // Posicao alfabetica de cada categoria do dicionario (a partir de 1; sem categoria e 0). Refeito
+    // apenas quando surge uma categoria nova; as que deixam de ser usadas so deixam lacunas.
+    private Map<String, Integer> postosCategorias = Map.of();
+    // Todas as tarefas guardadas usam a instancia de categoria do dicionario, entao comparar
+    // categorias de tarefas do servico e comparar referencias
+    private final DicionarioCategorias dicionario = new DicionarioCategorias();
+    private long proximoId = 1;
+    // Nao nulo enquanto um lote estiver em andamento
+    private EstadoLote estadoLote;
+    private final StampedLock lock = new StampedLock();
+    // Thread que detem o lock de escrita; o StampedLock nao e reentrante, entao as operacoes
+    // chamadas dentro de um lote (ou de outra mutacao) nao tentam adquiri-lo de novo
+    private Thread escritor;
+    // O StampedLock deixa novos leitores passarem a frente de um escritor na fila, e um fluxo continuo
+    // de leituras o faria esperar indefinidamente. Enquanto houver escritor aguardando, os leitores
+    // pessimistas esperam nesta porta antes de pedir o lock.
+    private final Object porta = new Object();
+    private volatile int escritoresAguardando;
+    // Incrementada ao final de cada mutacao; invalida o instantaneo em cache
+    private volatile long versao;
+    private volatile Instantaneo instantaneo = new Instantaneo(-1, List.of());
+    private final List<Inscricao> ouvintes = new CopyOnWriteArrayList<>();
+    // Eventos da mutacao em andamento, publicados quando ela termina
+    private final List<EventoTarefa> eventos = new ArrayList<>();
+    // Para saber, sem indexar cada evento, se alguma tarefa teve mais de um na mutacao: ids a partir
+    // de primeiroIdNovo nasceram nela, e os demais alterados ficam em idsAlterados
+    private final Set<Long> idsAlterados = new HashSet<>();
+    private long primeiroIdNovo;
+    private boolean eventosRepetidos;
+    private final ExecutorService entregaPadrao = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "eventos-tarefas");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Nulo no modo mapeado, em que as alteracoes vao direto para as paginas do armazem
+    private final GravadorTarefas gravador;
+    // Concluido quando as tarefas do arquivo terminam de entrar no servico. Enquanto isso, as leituras
+    // enxergam as ja carregadas e as mutacoes de outras threads aguardam.
+    private final CompletableFuture<Void> carregamento = new CompletableFuture<>();
+    private volatile Thread carregador;
+    // Durante a reproducao do diario no carregamento, as mutacoes nao voltam a ser gravadas nele
+    private boolean reproduzindoDiario;
 
     public enum FiltroTarefa {
-        TODAS, PENDENTES, CONCLUIDAS
+        TODAS, PENDENTES, CONCLUIDAS, ATRASADAS, PROXIMOS_7_DIAS;
+
+        // Filtros por vencimento dependem da data atual e sao consultados no indice a cada chamada
+        public boolean isPorVencimento() {
+            return this == ATRASADAS || this == PROXIMOS_7_DIAS;
+        }
+
+        // Se a tarefa pertence a visao do filtro, dada a data de hoje em epoch-day
+        public boolean aceita(Tarefa tarefa, long hoje) {
+            return aceita(tarefa.concluida(),
+                tarefa.dataVencimento() != null ? tarefa.dataVencimento().toEpochDay() : Long.MIN_VALUE, hoje);
+        }
+
+        // O mesmo, a partir dos campos; 'vencimento' e Long.MIN_VALUE quando nao ha data
+        public boolean aceita(boolean concluida, long vencimento, long hoje) {
+            return switch (this) {
+                case PENDENTES -> !concluida;
+                case CONCLUIDAS -> concluida;
+                case ATRASADAS -> !concluida && vencimento != Long.MIN_VALUE && vencimento < hoje;
+                case PROXIMOS_7_DIAS -> !concluida && vencimento >= hoje && vencimento <= hoje + DIAS_PROXIMOS;
+                default -> true;
+            };
+        }
     }
 
-    public TarefaService() {
-        carregar();
+    // Ordem de exibicao. Cada tarefa recebe uma chave long com os campos da ordem nos bits altos e o id
+    // nos 31 baixos (ver OrdemTarefas), de modo que o id desempata e comparar tarefas e comparar chaves.
+    public enum Ordenacao {
+        INSERCAO, PRIORIDADE, VENCIMENTO, CATEGORIA, STATUS;
+
+        // Sem vencimento vem depois de qualquer data
+        private static final long SEM_DATA = (1L << 22) - 1;
+        private static final long DESLOCAMENTO_DIA = 1L << 21;
+
+        // 'postos' da a posicao alfabetica de cada categoria (ver getOrdenados()); so e usado em CATEGORIA
+        public long chave(Tarefa t, Map<String, Integer> postos) {
+            long id = t.id();
+            return switch (this) {
+                case PRIORIDADE -> prioridade(t) << 53 | dia(t) << 31 | id;
+                case VENCIMENTO -> dia(t) << 33 | prioridade(t) << 31 | id;
+                case CATEGORIA -> (t.categoria() != null ? postos.getOrDefault(t.categoria(), 0) : 0L) << 33
+                                  | prioridade(t) << 31 | id;
+                case STATUS -> (t.concluida() ? 1L : 0L) << 55 | prioridade(t) << 53 | dia(t) << 31 | id;
+                default -> id;
+            };
+        }
+
+        // ALTA primeiro; sem prioridade por ultimo
+        private static long prioridade(Tarefa t) {
+            return t.prioridade() == null ? 3 : Tarefa.Prioridade.ALTA.ordinal() - t.prioridade().ordinal();
+        }
+
+        // Epoch-day em 22 bits; datas fora de cerca de 5700 anos em torno de 1970 ficam nos extremos
+        private static long dia(Tarefa t) {
+            if (t.dataVencimento() == null) {
+                return SEM_DATA;
+            }
+            return Math.clamp(t.dataVencimento().toEpochDay() + DESLOCAMENTO_DIA, 0, SEM_DATA - 1);
+        }
     }
 
-    public void adicionar(String desc, String observacao, Tarefa.Prioridade prioridade, String categoria, LocalDate dataVencimento) {
-        tarefas.add(new Tarefa(desc, false, observacao, prioridade, categoria, dataVencimento));
-        salvar();
+    // Recebe as alteracoes de uma mutacao (ou de um lote inteiro, ja combinadas por tarefa).
+    // 'versao' identifica o estado do servico logo apos elas; ver getInstantaneoFiltrado().
+    @FunctionalInterface
+    public interface Ouvinte {
+        void tarefasAlteradas(List<EventoTarefa> eventos, long versao);
+
+        // No carregamento em segundo plano, um bloco de tarefas do arquivo entrou no servico sem eventos
+        // por tarefa; quem mantem uma copia deve refaze-la. 'completo' indica o fim do carregamento.
+        default void tarefasCarregadas(long versao, boolean completo) {}
+
+        // Outra instancia gravou antes alteracoes em tarefas que esta tambem alterou. Valem as dela; as
+        // daqui, que nao chegaram ao disco, vem em cada conflito para quem quiser reaplica-las.
+        default void conflitosDetectados(List<Conflito> conflitos) {}
     }
 
-    public void adicionar(String desc) {
-        tarefas.add(new Tarefa(desc, false));
-        salvar();
+    // 'local' e a tarefa como ficou nesta instancia e 'externa' como ficou no disco; null e removida
+    public record Conflito(long id, Tarefa local, Tarefa externa) {}
+
+    // Onde as tarefas ficam; escolhido por -Dtarefas.armazem=memoria|colunar|mapeado
+    public enum Armazenamento {
+        // Um objeto Tarefa por tarefa, no heap
+        MEMORIA,
+        // Campos em vetores primitivos no heap (ArmazemColunar), com bem menos memoria por tarefa
+        COLUNAR,
+        // Paginas em arquivos mapeados em memoria (tarefas.pag e tarefas.dir), para listas maiores que o heap
+        MAPEADO
     }
 
-    public void remover(int index) {
-        if (index >= 0 && index < tarefas.size()) {
-            tarefas.remove(index);
-            salvar();
+    // Copia imutavel de uma visao, com a versao do servico em que foi tirada
+    public record Instantaneo(long versao, List<Tarefa> tarefas) {}
+
+    // Como Instantaneo, mas apenas com os ids, em ordem crescente
+    public record InstantaneoIds(long versao, long[] ids) {}
+
+    // Visao de um filtro na ordenacao atual, com os postos de categoria usados nas chaves; a ordem e
+    // uma copia propria de quem a recebeu, que pode mante-la com inserirChave()/removerChave()
+    public record InstantaneoOrdem(long versao, Ordenacao ordenacao, Map<String, Integer> postos, OrdemTarefas tarefas) {}
+
+    private record Inscricao(Ouvinte ouvinte, Executor entrega) {}
+
+    // Operacoes disponiveis dentro de lote(). As visoes e indices de leitura so refletem o lote
+    // quando ele termina; obter() reflete cada operacao imediatamente.
+    public interface Lote {
+        Tarefa adicionar(String desc, String observacao, Tarefa.Prioridade prioridade, String categoria, LocalDate dataVencimento);
+        Tarefa obter(long id);
+        void remover(long id);
+        void editar(long id, String novaDescricao, String novaObservacao, Tarefa.Prioridade novaPrioridade, String novaCategoria, LocalDate novaDataVencimento);
+        void editarObservacao(long id, String novaObservacao);
+        void alternarConclusao(long id);
+        void definirConclusao(long id, boolean concluida);
+        void definirCategoria(long id, String categoria);
+    }
+
+    // O que um lote deixou para ser feito de uma vez ao final
+    private static class EstadoLote {
+        final List<GravadorTarefas.Mutacao> mutacoes = new ArrayList<>();
+        final Set<Long> removidos = new HashSet<>();
+        boolean particoes;
+        boolean categorias;
+        boolean vencimentos;
+        boolean ordem;
+        // Reposicionamentos feitos na ordem durante o lote; passado o limite, ela e refeita no fim
+        int ajustesOrdem;
+    }
+
+    private final Lote operacoesLote = new Lote() {
+        public Tarefa adicionar(String desc, String observacao, Tarefa.Prioridade prioridade, String categoria, LocalDate dataVencimento) {
+            return TarefaService.this.adicionar(desc, observacao, prioridade, categoria, dataVencimento);
+        }
+        public Tarefa obter(long id) { return TarefaService.this.obter(id); }
+        public void remover(long id) { TarefaService.this.remover(id); }
+        public void editar(long id, String novaDescricao, String novaObservacao, Tarefa.Prioridade novaPrioridade, String novaCategoria, LocalDate novaDataVencimento) {
+            TarefaService.this.editar(id, novaDescricao, novaObservacao, novaPrioridade, novaCategoria, novaDataVencimento);
         }
+        public void editarObservacao(long id, String novaObservacao) { TarefaService.this.editarObservacao(id, novaObservacao); }
+        public void alternarConclusao(long id) { TarefaService.this.alternarConclusao(id); }
+        public void definirConclusao(long id, boolean concluida) { TarefaService.this.definirConclusao(id, concluida); }
+        public void definirCategoria(long id, String categoria) { TarefaService.this.definirCategoria(id, categoria); }
+    };
+
+    // Recebe, na thread de gravacao, o que outras instancias gravaram nos mesmos arquivos
+    private final GravadorTarefas.Receptor receptor = new GravadorTarefas.Receptor() {
+        public void registrosExternos(List<DiarioTarefas.Registro> registros) {
+            avisarConflitos(escrever(() -> aplicarExternos(registros)));
+        }
+        public void estadoExterno(ArrayList<Tarefa> snapshot, List<DiarioTarefas.Registro> registros) {
+            avisarConflitos(aplicarEstadoExterno(snapshot, registros));
+        }
+        public List<Tarefa> copiarTarefas() {
+            return ler(() -> {
+                gravador.marcarCopia();
+                return new ArrayList<>(tarefas);
+            });
+        }
+    };
+
+    public TarefaService() {
+        this(armazenamentoConfigurado());
     }
 
-    public void editar(int index, String novaDescricao, String novaObservacao, Tarefa.Prioridade novaPrioridade, String novaCategoria, LocalDate novaDataVencimento) {
-        if (index >= 0 && index < tarefas.size()) {
-            Tarefa tarefaAtual = tarefas.get(index);
-            Tarefa tarefaEditada = new Tarefa(
-                novaDescricao, 
-                tarefaAtual.concluida(),
-                novaObservacao,
-                novaPrioridade,
-                novaCategoria,
-                novaDataVencimento
-            );
-            tarefas.set(index, tarefaEditada);
-            salvar();
+    public TarefaService(Armazenamento armazenamento) {
+        this(armazenamento, Paths.get(""));
+    }
+
+    // Servico com os arquivos de dados em 'diretorio', em vez do diretorio atual
+    public TarefaService(Armazenamento armazenamento, Path diretorio) {
+        this(armazenamento, diretorio, false);
+    }
+
+    // Com o armazenamento configurado e as tarefas carregadas em segundo plano; ver getCarregamento()
+    public static TarefaService emSegundoPlano() {
+        return new TarefaService(armazenamentoConfigurado(), Paths.get(""), true);
+    }
+
+    // Com 'emSegundoPlano', o construtor retorna assim que os arquivos sao abertos e as tarefas entram
+    // no servico aos blocos, em uma thread propria: as primeiras logo que decodificadas e as demais em
+    // seguida. Cada bloco e anunciado aos ouvintes por tarefasCarregadas().
+    public TarefaService(Armazenamento armazenamento, Path diretorio, boolean emSegundoPlano) {
+        path = diretorio.resolve("tarefas.dat");
+        pathDiario = diretorio.resolve("tarefas.log");
+        ArmazemTarefas mapeamento = null;
+        Path paginas = diretorio.resolve("tarefas.pag");
+        if (armazenamento == Armazenamento.MAPEADO) {
+            // Sem o armazem, cair para a memoria mostraria tarefas.dat, sem as alteracoes feitas nele
+            try {
+                mapeamento = new ArmazemMapeado(paginas, diretorio.resolve("tarefas.dir"), dicionario);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Erro ao abrir o armazem mapeado: " + e.getMessage(), e);
+            }
+        } else if (ArmazemMapeado.temTarefasMigradas(paginas)) {
+            // As alteracoes feitas no modo mapeado nao voltam para tarefas.dat e tarefas.log
+            throw new IllegalStateException("As tarefas de " + diretorio.toAbsolutePath()
+                + " estao no armazem mapeado (tarefas.pag); abra-o com -Dtarefas.armazem=mapeado");
         }
+        if (mapeamento != null) {
+            armazem = mapeamento;
+            gravador = null;
+        } else {
+            armazem = armazenamento == Armazenamento.COLUNAR ? new ArmazemColunar(dicionario) : new ArmazemMemoria();
+            gravador = new GravadorTarefas(path, pathDiario, dicionario, receptor);
+            indiceBusca = new IndiceBusca();
+        }
+        porCategoria.put(CATEGORIA_PADRAO, new VetorTarefas(this::obter));
+        if (!emSegundoPlano) {
+            carregar();
+            carregamento.complete(null);
+            if (gravador != null) {
+                gravador.observar();
+            }
+            return;
+        }
+        carregador = new Thread(() -> {
+            try {
+                if (gravador != null) {
+                    carregarEmBlocos();
+                } else {
+                    // O armazem mapeado e percorrido sob o seu proprio monitor, entao entra de uma vez
+                    alterar(this::carregar);
+                    avisarCarga(true);
+                }
+            } catch (RuntimeException | Error e) {
+                e.printStackTrace();
+            } finally {
+                carregador = null;
+                carregamento.complete(null);
+            }
+        }, "carregamento-tarefas");
+        carregador.setDaemon(true);
+        carregador.start();
     }
 
-    public void editarObservacao(int index, String novaObservacao) {
-        if (index >= 0 && index < tarefas.size()) {
-            Tarefa tarefaAtual = tarefas.get(index);
-            Tarefa tarefaEditada = new Tarefa(
-                tarefaAtual.descricao(),
-                tarefaAtual.concluida(),
-                novaObservacao,
-                tarefaAtual.prioridade(),
-                tarefaAtual.categoria(),
-                tarefaAtual.dataVencimento()
-            );
-            tarefas.set(index, tarefaEditada);
-            salvar();
+    static Armazenamento armazenamentoConfigurado() {
+        String configurado = System.getProperty("tarefas.armazem", "memoria");
+        try {
+            return Armazenamento.valueOf(configurado.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Armazenamento desconhecido: " + configurado + "; usando a memoria.");
+            return Armazenamento.MEMORIA;
         }
     }
 
-    public void editar(int index, String novaDescricao) {
-        if (index >= 0 && index < tarefas.size()) {
-            Tarefa tarefaAtual = tarefas.get(index);
-            Tarefa tarefaEditada = new Tarefa(
-                novaDescricao,
-                tarefaAtual.concluida(),
-                tarefaAtual.observacao(),
-                tarefaAtual.prioridade(),
-                tarefaAtual.categoria(),
-                tarefaAtual.dataVencimento()
-            );
-            tarefas.set(index, tarefaEditada);
-            salvar();
+    public Tarefa adicionar(String desc, String observacao, Tarefa.Prioridade prioridade, String categoria, LocalDate dataVencimento) {
+        return escrever(() -> inserir(new Tarefa(proximoId++, desc, false, observacao, prioridade,
+                                                 dicionario.canonica(categoria), dataVencimento)));
+    }
+
+    public Tarefa adicionar(String desc) {
+        return escrever(() -> inserir(new Tarefa(proximoId++, desc, false, "", Tarefa.Prioridade.MEDIA,
+                                                 dicionario.canonica(CATEGORIA_PADRAO), null)));
+    }
+
+    // Acrescenta uma tarefa com os campos de 'dados', inclusive a conclusao; o id recebido e ignorado
+    public Tarefa adicionar(Tarefa dados) {
+        return escrever(() -> inserir(new Tarefa(proximoId++, dados.descricao(), dados.concluida(), dados.observacao(),
+                                                 dados.prioridade(), dicionario.canonica(dados.categoria()), dados.dataVencimento())));
+    }
+
+    // Acrescenta varias tarefas como uma unica mutacao, com uma so gravacao; os ids recebidos sao ignorados
+    public List<Tarefa> adicionarTodas(List<Tarefa> novas) {
+        List<Tarefa> adicionadas = new ArrayList<>(novas.size());
+        lote(l -> {
+            tarefas.garantirCapacidade(tarefas.size() + novas.size());
+            for (Tarefa t : novas) {
+                adicionadas.add(inserirComIdNovo(t));
+            }
+        });
+        return adicionadas;
+    }
+
+    private Tarefa inserirComIdNovo(Tarefa t) {
+        return inserir(new Tarefa(proximoId++, t.descricao(), t.concluida(), t.observacao(),
+                                  t.prioridade(), dicionario.canonica(t.categoria()), t.dataVencimento()));
+    }
+
+    // Aplica varias operacoes como uma unica mutacao: uma gravacao no disco e, nas remocoes e
+    // mudancas de particao, categoria ou vencimento, uma unica passada pelas estruturas afetadas
+    // Os leitores de outras threads nao enxergam o lote pela metade: o lock de escrita vale ate o fim.
+    public void lote(Consumer<Lote> operacoes) {
+        alterar(() -> {
+            if (estadoLote != null) {
+                operacoes.accept(operacoesLote);
+                return;
+            }
+            estadoLote = new EstadoLote();
+            if (indiceBusca != null) {
+                indiceBusca.iniciarLote();
+            }
+            try {
+                operacoes.accept(operacoesLote);
+            } finally {
+                EstadoLote concluido = estadoLote;
+                estadoLote = null;
+                if (!concluido.removidos.isEmpty()) {
+                    tarefas.removerIds(concluido.removidos::contains);
+                }
+                reconstruir(concluido.particoes, concluido.categorias, concluido.vencimentos);
+                if (concluido.ordem) {
+                    reconstruirOrdem();
+                }
+                if (indiceBusca != null) {
+                    indiceBusca.concluirLote();
+                }
+                if (gravador != null) {
+                    gravador.registrarLote(concluido.mutacoes);
+                }
+            }
+        });
+    }
+
+    // Tudo ou nada: as tarefas validas ficam codificadas enquanto o arquivo e lido, fora do lock, e so
+    // entram no servico, como um unico lote com uma so gravacao e um so evento, depois que a leitura
+    // termina. Um erro de leitura ou de sintaxe no meio do arquivo nao deixa nenhuma delas importada.
+    public ImportadorTarefas.Resultado importarDeCSV(Path origem) throws IOException {
+        ImportadorTarefas.Estagio estagio = new ImportadorTarefas.Estagio();
+        ImportadorTarefas.Resultado resultado = ImportadorTarefas.lerCSV(origem, estagio);
+        importar(estagio);
+        return resultado;
+    }
+
+    public ImportadorTarefas.Resultado importarDeJSON(Path origem) throws IOException {
+        ImportadorTarefas.Estagio estagio = new ImportadorTarefas.Estagio();
+        ImportadorTarefas.Resultado resultado = ImportadorTarefas.lerJSON(origem, estagio);
+        importar(estagio);
+        return resultado;
+    }
+
+    private void importar(ImportadorTarefas.Estagio estagio) {
+        if (estagio.quantidade() == 0) {
+            return;
         }
+        lote(l -> {
+            tarefas.garantirCapacidade(tarefas.size() + estagio.quantidade());
+            estagio.percorrer(this::inserirComIdNovo);
+        });
+    }
+
+    public Tarefa obter(long id) {
+        return armazem.obter(id);
+    }
+
+    // Retorna se a tarefa existia
+    public boolean remover(long id) {
+        return escrever(() -> {
+            Tarefa removida = armazem.obter(id);
+            if (removida == null) {
+                return false;
+            }
+            armazem.remover(id);
+            if (estadoLote != null) {
+                // A remocao fisica dos vetores fica para o fim do lote
+                estadoLote.removidos.add(id);
+                estadoLote.particoes = true;
+                estadoLote.categorias |= removida.categoria() != null;
+                estadoLote.vencimentos |= removida.dataVencimento() != null;
+                ajustarOrdem(removida, null);
+                if (indiceBusca != null) {
+                    indiceBusca.remover(removida);
+                }
+                registrar(DiarioTarefas.TipoRegistro.REMOVER, id, null, removida);
+                publicar(EventoTarefa.removida(removida));
+            } else {
+                tarefas.removerId(id);
+                particao(removida).removerId(id);
+                desindexarCategoria(removida);
+                desindexarVencimento(removida);
+                ajustarOrdem(removida, null);
+                if (indiceBusca != null) {
+                    indiceBusca.remover(removida);
+                }
+                registrar(DiarioTarefas.TipoRegistro.REMOVER, id, null, removida);
+                publicar(EventoTarefa.removida(removida));
+            }
+            return true;
+        });
     }
 
-    public void alternarConclusao(int index) {
-        if (index >= 0 && index < tarefas.size()) {
-            Tarefa tarefaAtual = tarefas.get(index);
+    public void editar(long id, String novaDescricao, String novaObservacao, Tarefa.Prioridade novaPrioridade, String novaCategoria, LocalDate novaDataVencimento) {
+        alterar(() -> {
+            Tarefa tarefaAtual = armazem.obter(id);
+            if (tarefaAtual != null) {
+                Tarefa tarefaEditada = new Tarefa(
+                    id,
+                    novaDescricao, 
+                    tarefaAtual.concluida(),
+                    novaObservacao,
+                    novaPrioridade,
+                    dicionario.canonica(novaCategoria),
+                    novaDataVencimento
+                );
+                substituir(tarefaEditada);
+            }
+        });
+    }
+
+    // Substitui todos os campos da tarefa pelos de 'dados' (exceto o id), inclusive a conclusao, em uma
+    // unica mutacao. Retorna a tarefa resultante, ou null se nao houver tarefa com o id.
+    public Tarefa atualizar(long id, Tarefa dados) {
+        return escrever(() -> {
+            Tarefa tarefaAtual = armazem.obter(id);
+            if (tarefaAtual == null) {
+                return null;
+            }
             Tarefa tarefaEditada = new Tarefa(
-                tarefaAtual.descricao(),
-                !tarefaAtual.concluida(),
-                tarefaAtual.observacao(),
-                tarefaAtual.prioridade(),
-                tarefaAtual.categoria(),
-                tarefaAtual.dataVencimento()
+                id,
+                dados.descricao(),
+                dados.concluida(),
+                dados.observacao(),
+                dados.prioridade(),
+                dicionario.canonica(dados.categoria()),
+                dados.dataVencimento()
             );
-            tarefas.set(index, tarefaEditada);
-            salvar();
-        }
+            if (tarefaEditada.equals(tarefaAtual)) {
+                return tarefaAtual;
+            }
+            substituir(tarefaEditada);
+            return tarefaEditada;
+        });
     }
 
+    public void editarObservacao(long id, String novaObservacao) {
+        alterar(() -> {
+            Tarefa tarefaAtual = armazem.obter(id);
+            if (tarefaAtual != null) {
+                Tarefa tarefaEditada = new Tarefa(
+                    id,
+                    tarefaAtual.descricao(),
+                    tarefaAtual.concluida(),
+                    novaObservacao,
+                    tarefaAtual.prioridade(),
+                    tarefaAtual.categoria(),
+                    tarefaAtual.dataVencimento()
+                );
+                substituir(tarefaEditada);
+            }
+        });
+    }
+
+    public void editar(long id, String novaDescricao) {
+        alterar(() -> {
+            Tarefa tarefaAtual = armazem.obter(id);
+            if (tarefaAtual != null) {
+                Tarefa tarefaEditada = new Tarefa(
+                    id,
+                    novaDescricao,
+                    tarefaAtual.concluida(),
+                    tarefaAtual.observacao(),
+                    tarefaAtual.prioridade(),
+                    tarefaAtual.categoria(),
+                    tarefaAtual.dataVencimento()
+                );
+                substituir(tarefaEditada);
+            }
+        });
+    }
+
+    public void alternarConclusao(long id) {
+        alterar(() -> {
+            Tarefa tarefaAtual = armazem.obter(id);
+            if (tarefaAtual != null) {
+                definirConclusao(id, !tarefaAtual.concluida());
+            }
+        });
+    }
+
+    public void definirConclusao(long id, boolean concluida) {
+        alterar(() -> {
+            Tarefa tarefaAtual = armazem.obter(id);
+            if (tarefaAtual != null && tarefaAtual.concluida() != concluida) {
+                Tarefa tarefaEditada = new Tarefa(
+                    id,
+                    tarefaAtual.descricao(),
+                    concluida,
+                    tarefaAtual.observacao(),
+                    tarefaAtual.prioridade(),
+                    tarefaAtual.categoria(),
+                    tarefaAtual.dataVencimento()
+                );
+                substituir(tarefaEditada);
+            }
+        });
+    }
+
+    public void definirCategoria(long id, String categoria) {
+        alterar(() -> {
+            Tarefa tarefaAtual = armazem.obter(id);
+            String nova = dicionario.canonica(categoria);
+            if (tarefaAtual != null && tarefaAtual.categoria() != nova) {
+                Tarefa tarefaEditada = new Tarefa(
+                    id,
+                    tarefaAtual.descricao(),
+                    tarefaAtual.concluida(),
+                    tarefaAtual.observacao(),
+                    tarefaAtual.prioridade(),
+                    nova,
+                    tarefaAtual.dataVencimento()
+                );
+                substituir(tarefaEditada);
+            }
+        });
+    }
+
+    // Visao viva, apenas para a thread que faz as alteracoes
     public List<Tarefa> getTarefas() {
-        return Collections.unmodifiableList(tarefas);
+        return visaoTodas;
     }
 
+    // Visao somente leitura, mantida incrementalmente e ordenada por id; nao ha copia a cada chamada.
+    // Os filtros por vencimento retornam uma lista nova, ordenada por data e depois por id.
+    // Como em getTarefas(), as visoes vivas so podem ser lidas pela thread que faz as alteracoes.
     public List<Tarefa> getTarefasFiltradas(FiltroTarefa filtro) {
         return switch (filtro) {
-            case PENDENTES -> tarefas.stream()
-                .filter(t -> !t.concluida())
-                .collect(Collectors.toList());
-            case CONCLUIDAS -> tarefas.stream()
-                .filter(Tarefa::concluida)
-                .collect(Collectors.toList());
-            default -> getTarefas();
+            case PENDENTES -> visaoPendentes;
+            case CONCLUIDAS -> visaoConcluidas;
+            case ATRASADAS, PROXIMOS_7_DIAS -> medir(TEMPO_VENCIMENTOS, "vencimentos", filtro,
+                () -> ler(() -> vencimentos(filtro, LocalDate.now().toEpochDay())), List::size);
+            default -> visaoTodas;
         };
     }
 
+    public int contar(FiltroTarefa filtro) {
+        if (filtro.isPorVencimento()) {
+            return getTarefasFiltradas(filtro).size();
+        }
+        VetorTarefas vetor = vetor(filtro);
+        return lerOtimista(vetor::size);
+    }
+
+    // Posicao da tarefa na visao do filtro, ou -1 se ela nao fizer parte dele
+    public int posicao(FiltroTarefa filtro, long id) {
+        if (filtro.isPorVencimento()) {
+            return armazem.aceita(id, filtro, LocalDate.now().toEpochDay())
+                ? getTarefasFiltradas(filtro).indexOf(armazem.obter(id)) : -1;
+        }
+        VetorTarefas vetor = vetor(filtro);
+        return lerOtimista(() -> Math.max(vetor.posicao(id), -1));
+    }
+
+    // Categorias em uso, ordenadas (sempre inclui "Geral"), sem percorrer as tarefas
     public Set<String> getCategorias() {
-        Set<String> categorias = new TreeSet<>();
-        categorias.add("Geral");
-        categorias.addAll(tarefas.stream()
-            .map(Tarefa::categoria)
-            .filter(c -> c != null && !c.isEmpty())
-            .collect(Collectors.toSet()));
-        return categorias;
+        return ler(() -> Collections.unmodifiableSet(new TreeSet<>(porCategoria.navigableKeySet())));
+    }
+
+    public Map<String, Integer> getContagemCategorias() {
+        return ler(() -> {
+            Map<String, Integer> contagem = new LinkedHashMap<>();
+            porCategoria.forEach((categoria, vetor) -> contagem.put(categoria, vetor.size()));
+            return contagem;
+        });
+    }
+
+    public int contarCategoria(String categoria) {
+        return ler(() -> {
+            VetorTarefas vetor = categoria != null ? porCategoria.get(categoria) : null;
+            return vetor != null ? vetor.size() : 0;
+        });
+    }
+
+    public List<Tarefa> getTarefasDaCategoria(String categoria) {
+        return ler(() -> {
+            VetorTarefas vetor = categoria != null ? porCategoria.get(categoria) : null;
+            return vetor != null ? List.copyOf(vetor) : List.of();
+        });
+    }
+
+    // Tarefas com vencimento entre as datas (inclusive), em O(log n + k)
+    public List<Tarefa> getTarefasComVencimentoEntre(LocalDate inicio, LocalDate fim) {
+        if (inicio.isAfter(fim)) {
+            return List.of();
+        }
+        return ler(() -> vencimentos(porVencimento.subMap(inicio.toEpochDay(), true, fim.toEpochDay(), true), false));
+    }
+
+    // Tarefas pendentes cujo vencimento ja passou
+    public List<Tarefa> getTarefasAtrasadas() {
+        return getTarefasFiltradas(FiltroTarefa.ATRASADAS);
+    }
+
+    public List<Tarefa> getTarefasVencendoHoje() {
+        return getTarefasVencendoNosProximosDias(0);
+    }
+
+    // Tarefas pendentes que vencem de hoje ate daqui a 'dias' dias
+    public List<Tarefa> getTarefasVencendoNosProximosDias(int dias) {
+        long hoje = LocalDate.now().toEpochDay();
+        return ler(() -> vencimentos(porVencimento.subMap(hoje, true, hoje + dias, true), true));
+    }
+
+    // Tarefas que contem todos os termos da consulta, das mais relevantes para as menos relevantes
+    public List<Tarefa> buscar(String consulta, FiltroTarefa filtro, int limite) {
+        return buscar(consulta, filtro, null, limite);
+    }
+
+    // Como buscar(consulta, filtro, limite), apenas entre as tarefas da categoria (todas, se null). A
+    // categoria entra no filtro antes do limite, entao nao encurta a lista de resultados.
+    public List<Tarefa> buscar(String consulta, FiltroTarefa filtro, String categoria, int limite) {
+        long hoje = LocalDate.now().toEpochDay();
+        LongPredicate aceitar = filtro == FiltroTarefa.TODAS ? id -> true : id -> armazem.aceita(id, filtro, hoje);
+        return medir(TEMPO_BUSCA, "busca", filtro, () -> ler(() -> {
+            List<Tarefa> encontradas = new ArrayList<>();
+            LongPredicate aceitarCategoria = aceitar;
+            if (categoria != null) {
+                VetorTarefas daCategoria = porCategoria.get(categoria);
+                if (daCategoria == null) {
+                    return encontradas;
+                }
+                aceitarCategoria = id -> daCategoria.posicao(id) >= 0 && aceitar.test(id);
+            }
+            for (IndiceBusca.Resultado resultado : indiceDeBusca().buscar(consulta, tarefas.size(), aceitarCategoria, limite)) {
+                encontradas.add(armazem.obter(resultado.id()));
+            }
+            return encontradas;
+        }), List::size);
+    }
+
+    // Chamado sob o lock de leitura (ou pelo escritor), que impede mutacoes durante a montagem. Dois
+    // leitores podem montar o indice ao mesmo tempo; ambos enxergam o mesmo estado e vale o primeiro.
+    private IndiceBusca indiceDeBusca() {
+        IndiceBusca indice = indiceBusca;
+        if (indice != null) {
+            return indice;
+        }
+        IndiceBusca novo = new IndiceBusca();
+        armazem.percorrer(novo::adicionar);
+        synchronized (montagemIndice) {
+            if (indiceBusca == null) {
+                indiceBusca = novo;
+            }
+            return indiceBusca;
+        }
+    }
+
+    // Copia imutavel das tarefas em ordem de insercao, segura para qualquer thread. A copia e
+    // refeita apenas quando houve mutacao desde a anterior; fora isso, nenhum lock e adquirido.
+    public List<Tarefa> getInstantaneo() {
+        return getInstantaneoFiltrado(FiltroTarefa.TODAS).tarefas();
+    }
+
+    // Copia imutavel da visao do filtro, com a versao em que foi tirada. Quem tambem ouve os eventos
+    // do servico deve ignorar os que tiverem versao menor ou igual: eles ja estao na copia.
+    public Instantaneo getInstantaneoFiltrado(FiltroTarefa filtro) {
+        Instantaneo atual = instantaneo;
+        if (filtro == FiltroTarefa.TODAS && atual.versao() == versao) {
+            return atual;
+        }
+        return medir(TEMPO_INSTANTANEO, "instantaneo", filtro, () -> copiarInstantaneo(filtro), i -> i.tarefas().size());
+    }
+
+    private Instantaneo copiarInstantaneo(FiltroTarefa filtro) {
+        if (escritor == Thread.currentThread()) {
+            // No meio de uma mutacao o estado ainda nao foi publicado; a copia nao vai para o cache
+            return new Instantaneo(versao, copiar(filtro));
+        }
+        long stamp = lockDeLeitura();
+        try {
+            Instantaneo atual = new Instantaneo(versao, copiar(filtro));
+            if (filtro == FiltroTarefa.TODAS) {
+                instantaneo = atual;
+            }
+            return atual;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Ids da visao do filtro, ordenados por id, com a versao em que foram copiados. Para listas grandes
+    // sai bem mais barato que getInstantaneoFiltrado(): cada tarefa so e obtida quando usada. Os filtros
+    // por vencimento, ordenados por data, nao sao aceitos.
+    public InstantaneoIds getIdsFiltrados(FiltroTarefa filtro) {
+        if (filtro.isPorVencimento()) {
+            throw new IllegalArgumentException("Filtro ordenado por vencimento: " + filtro);
+        }
+        VetorTarefas vetor = vetor(filtro);
+        return medir(TEMPO_IDS, "ids", filtro, () -> ler(() -> new InstantaneoIds(versao, vetor.copiarIds())), i -> i.ids().length);
+    }
+
+    // Tarefas de 'inicio' a 'inicio + limite' da visao do filtro, restrita a categoria (todas, se null),
+    // na ordem de getInstantaneoFiltrado() e com a versao em que foram lidas. So as tarefas da pagina
+    // sao obtidas do armazem: sem categoria o vetor do filtro e indexado direto; com ela, ou nos
+    // filtros por vencimento, os ids anteriores a pagina sao apenas conferidos, sem criar tarefas.
+    public Instantaneo getPagina(FiltroTarefa filtro, String categoria, int inicio, int limite) {
+        long hoje = LocalDate.now().toEpochDay();
+        return medir(TEMPO_PAGINA, "pagina", filtro, () -> ler(() -> {
+            List<Tarefa> pagina = new ArrayList<>();
+            VetorTarefas daCategoria = categoria != null ? porCategoria.get(categoria) : null;
+            if (categoria != null && daCategoria == null) {
+                return new Instantaneo(versao, pagina);
+            }
+            Collection<VetorTarefas> vetores;
+            LongPredicate aceitar;
+            if (filtro.isPorVencimento()) {
+                vetores = faixaDeVencimentos(filtro, hoje).values();
+                LongPredicate pendente = id -> armazem.aceita(id, FiltroTarefa.PENDENTES, 0);
+                aceitar = daCategoria == null ? pendente : pendente.and(id -> daCategoria.posicao(id) >= 0);
+            } else if (daCategoria != null) {
+                vetores = List.of(daCategoria);
+                aceitar = filtro == FiltroTarefa.TODAS ? null : id -> armazem.aceita(id, filtro, hoje);
+            } else {
+                vetores = List.of(vetor(filtro));
+                aceitar = null;
+            }
+            int pular = inicio;
+            for (VetorTarefas vetor : vetores) {
+                int i = 0;
+                if (aceitar == null) {
+                    // Todo id do vetor entra na visao: o inicio da pagina e uma posicao
+                    i = Math.min(pular, vetor.size());
+                    pular -= i;
+                }
+                for (; i < vetor.size() && pagina.size() < limite; i++) {
+                    if (aceitar != null && !aceitar.test(vetor.getId(i))) {
+                        continue;
+                    }
+                    if (pular > 0) {
+                        pular--;
+                        continue;
+                    }
+                    Tarefa t = vetor.get(i);
+                    if (t != null) {
+                        pagina.add(t);
+                    }
+                }
+                if (pagina.size() >= limite) {
+                    break;
+                }
+            }
+            return new Instantaneo(versao, pagina);
+        }), i -> i.tarefas().size());
+    }
+
+    // Todas as tarefas, em ordem de id, obtidas do armazem so quando lidas: percorre listas grandes
+    // (como na exportacao) com 8 bytes por tarefa, sem decodificar o armazem inteiro de uma vez. Uma
+    // tarefa alterada depois da chamada aparece na versao nova, e uma removida aparece como null.
+    public List<Tarefa> getTarefasSobDemanda() {
+        long[] ids = getIdsFiltrados(FiltroTarefa.TODAS).ids();
+        return new AbstractList<>() {
+            @Override
+            public Tarefa get(int indice) {
+                return armazem.obter(ids[indice]);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+
+    // Troca a ordem mantida pelo servico, montando-a de uma vez em O(n log n); dai em diante cada
+    // mutacao apenas reposiciona a tarefa. Nao aguarda o carregamento em segundo plano.
+    public void setOrdenacao(Ordenacao nova) {
+        escreverAgora(() -> {
+            if (nova != ordenacao) {
+                ordenacao = nova;
+                reconstruirOrdem();
+            }
+            return null;
+        });
+    }
+
+    public Ordenacao getOrdenacao() {
+        return ordenacao;
+    }
+
+    // Visao do filtro na ordenacao atual, como copia propria de quem chama. Vem da ordem ja mantida,
+    // sem reordenar: os filtros apenas descartam as chaves de fora deles.
+    public InstantaneoOrdem getOrdenados(FiltroTarefa filtro) {
+        long hoje = LocalDate.now().toEpochDay();
+        return medir(TEMPO_ORDENADOS, "ordenados", filtro, () -> ler(() -> {
+            // Em INSERCAO a chave e o proprio id
+            long[] chaves = ordem != null ? ordem.copiarChaves() : tarefas.copiarIds();
+            int quantidade = chaves.length;
+            if (filtro != FiltroTarefa.TODAS) {
+                quantidade = 0;
+                for (long chave : chaves) {
+                    if (armazem.aceita(chave & OrdemTarefas.MASCARA_ID, filtro, hoje)) {
+                        chaves[quantidade++] = chave;
+                    }
+                }
+            }
+            return new InstantaneoOrdem(versao, ordenacao, postosCategorias, new OrdemTarefas(this::obter, chaves, quantidade));
+        }), o -> o.tarefas().size());
+    }
+
+    // Executa a consulta registrando o tempo no histograma e, com o JFR gravando, um evento Consulta
+    private static <T> T medir(Metricas.Histograma tempo, String operacao, FiltroTarefa filtro,
+                               Supplier<T> consulta, ToIntFunction<T> tamanho) {
+        EventosDesempenho.Consulta evento = new EventosDesempenho.Consulta();
+        evento.begin();
+        long inicio = System.nanoTime();
+        T resultado = consulta.get();
+        tempo.registrar(System.nanoTime() - inicio);
+        if (evento.shouldCommit()) {
+            evento.operacao = operacao;
+            evento.filtro = filtro.name();
+            evento.tarefas = tamanho.applyAsInt(resultado);
+            evento.commit();
+        }
+        return resultado;
+    }
+
+    // Versao atual do estado; muda a cada mutacao concluida
+    public long getVersao() {
+        return versao;
+    }
+
+    // O executor de entrega deve preservar a ordem das tarefas recebidas; para atualizar componentes
+    // Swing, use SwingUtilities::invokeLater
+    public void adicionarOuvinte(Ouvinte ouvinte, Executor entrega) {
+        ouvintes.add(new Inscricao(ouvinte, entrega));
+    }
+
+    // Ouvinte notificado em segundo plano, em uma thread de eventos do proprio servico
+    public void adicionarOuvinte(Ouvinte ouvinte) {
+        adicionarOuvinte(ouvinte, entregaPadrao);
+    }
+
+    public void removerOuvinte(Ouvinte ouvinte) {
+        ouvintes.removeIf(inscricao -> inscricao.ouvinte() == ouvinte);
     }
 
     public void exportarParaCSV(Path destino) throws IOException {
-        StringBuilder csv = new StringBuilder();
-        csv.append("Descrição;Status;Observação;Prioridade;Categoria;Data Vencimento\n");
-        
-        for (Tarefa t : tarefas) {
-            csv.append(escaparCSV(t.descricao())).append(";");
-            csv.append(t.concluida() ? "Concluída" : "Pendente").append(";");
-            csv.append(escaparCSV(t.observacao())).append(";");
-            csv.append(t.prioridade()).append(";");
-            csv.append(escaparCSV(t.categoria())).append(";");
-            csv.append(t.dataVencimento() != null ? 
-                t.dataVencimento().format(DateTimeFormatter.ofPattern("dd/MM/yyyy")) : "").append("\n");
-        }
-        
-        Files.writeString(destino, csv.toString());
+        ExportadorTarefas.exportarCSV(getTarefasSobDemanda(), destino, null);
     }
 
     public void exportarParaJSON(Path destino) throws IOException {
-        StringBuilder json = new StringBuilder();
-        json.append("{\n  \"tarefas\": [\n");
-        
+        ExportadorTarefas.exportarJSON(getTarefasSobDemanda(), destino, null);
+    }
+
+    // Mesmos documentos, escritos em um fluxo qualquer (que e fechado ao final)
+    public void exportarParaCSV(OutputStream destino) throws IOException {
+        ExportadorTarefas.exportarCSV(getTarefasSobDemanda(), destino);
+    }
+
+    public void exportarParaJSON(OutputStream destino) throws IOException {
+        ExportadorTarefas.exportarJSON(getTarefasSobDemanda(), destino, false);
+    }
+
+    // Concluido quando todas as tarefas do arquivo estiverem no servico (de imediato, fora do
+    // carregamento em segundo plano)
+    public CompletableFuture<Void> getCarregamento() {
+        return carregamento.copy();
+    }
+
+    public boolean isCarregado() {
+        return carregamento.isDone();
+    }
+
+    // Descarrega as gravacoes pendentes; deve ser chamado ao encerrar a aplicacao
+    public void fechar() {
+        aguardarCarregamento();
+        if (gravador != null) {
+            gravador.fechar();
+        }
+        armazem.fechar();
+        entregaPadrao.shutdown();
+    }
+
+    // Executa uma mutacao sob o lock de escrita; chamadas aninhadas reaproveitam o lock ja adquirido
+    private <T> T escrever(Supplier<T> mutacao) {
+        if (escritor != Thread.currentThread()) {
+            aguardarCarregamento();
+        }
+        return escreverAgora(mutacao);
+    }
+
+    // Como escrever(), mas sem aguardar o carregamento em segundo plano; para alteracoes que valem
+    // igualmente para as tarefas ainda por carregar
+    private <T> T escreverAgora(Supplier<T> mutacao) {
+        if (escritor == Thread.currentThread()) {
+            return mutacao.get();
+        }
+        long stamp;
+        synchronized (porta) {
+            escritoresAguardando++;
+        }
+        try {
+            stamp = lock.writeLock();
+        } finally {
+            synchronized (porta) {
+                if (--escritoresAguardando == 0) {
+                    porta.notifyAll();
+                }
+            }
+        }
+        escritor = Thread.currentThread();
+        primeiroIdNovo = proximoId;
+        try {
+            return mutacao.get();
+        } finally {
+            versao++;
+            entregarEventos(versao);
+            escritor = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void alterar(Runnable mutacao) {
+        escrever(() -> {
+            mutacao.run();
+            return null;
+        });
+    }
+
+    // Leitura sob o lock de leitura; o escritor a executa diretamente. Nao deve ser aninhada:
+    // um segundo lock de leitura esperaria atras de um escritor na fila.
+    private <T> T ler(Supplier<T> leitura) {
+        if (escritor == Thread.currentThread()) {
+            return leitura.get();
+        }
+        long stamp = lockDeLeitura();
+        try {
+            return leitura.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long lockDeLeitura() {
+        if (escritoresAguardando > 0) {
+            boolean interrompida = false;
+            synchronized (porta) {
+                while (escritoresAguardando > 0) {
+                    try {
+                        porta.wait();
+                    } catch (InterruptedException e) {
+                        interrompida = true;
+                    }
+                }
+            }
+            if (interrompida) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return lock.readLock();
+    }
+
+    // Leitura otimista, sem bloquear o escritor. So serve para leituras curtas sobre os vetores, que
+    // toleram um estado intermediario: se uma escrita ocorreu no meio, ela e repetida sob o lock.
+    private <T> T lerOtimista(Supplier<T> leitura) {
+        if (escritor == Thread.currentThread()) {
+            return leitura.get();
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T resultado = leitura.get();
+                if (lock.validate(stamp)) {
+                    return resultado;
+                }
+            } catch (RuntimeException leituraInconsistente) {
+                // O vetor estava sendo alterado; a leitura e refeita abaixo
+            }
+        }
+        return ler(leitura);
+    }
+
+    private Tarefa inserir(Tarefa nova) {
+        armazem.gravar(nova);
+        indexar(nova);
+        registrar(DiarioTarefas.TipoRegistro.ADICIONAR, nova.id(), nova, null);
+        publicar(EventoTarefa.adicionada(nova));
+        return nova;
+    }
+
+    // Coloca a tarefa na lista, nas particoes e em todos os indices
+    private void indexar(Tarefa nova) {
+        garantirPosto(nova);
+        tarefas.inserir(nova);
+        particao(nova).inserir(nova);
+        indexarCategoria(nova);
+        indexarVencimento(nova);
+        ajustarOrdem(null, nova);
+        if (indiceBusca != null) {
+            indiceBusca.adicionar(nova);
+        }
+    }
+
+    private void substituir(Tarefa tarefaEditada) {
+        // Os vetores guardam so o id: mudam apenas quando a tarefa troca de particao, categoria ou data
+        Tarefa anterior = armazem.obter(tarefaEditada.id());
+        garantirPosto(tarefaEditada);
+        armazem.gravar(tarefaEditada);
+        if (anterior.concluida() != tarefaEditada.concluida()) {
+            if (estadoLote != null) {
+                estadoLote.particoes = true;
+            } else {
+                particao(anterior).removerId(anterior.id());
+                particao(tarefaEditada).inserir(tarefaEditada);
+            }
+        }
+        if (anterior.categoria() != tarefaEditada.categoria()) {
+            if (estadoLote != null) {
+                estadoLote.categorias = true;
+            } else {
+                desindexarCategoria(anterior);
+                indexarCategoria(tarefaEditada);
+            }
+        }
+        if (!Objects.equals(anterior.dataVencimento(), tarefaEditada.dataVencimento())) {
+            if (estadoLote != null) {
+                estadoLote.vencimentos = true;
+            } else {
+                desindexarVencimento(anterior);
+                indexarVencimento(tarefaEditada);
+            }
+        }
+        ajustarOrdem(anterior, tarefaEditada);
+        if (indiceBusca != null) {
+            indiceBusca.atualizar(anterior, tarefaEditada);
+        }
+        registrar(DiarioTarefas.TipoRegistro.SUBSTITUIR, tarefaEditada.id(), tarefaEditada, anterior);
+        publicar(EventoTarefa.atualizada(anterior, tarefaEditada));
+    }
+
+    private void indexarCategoria(Tarefa tarefa) {
+        String categoria = tarefa.categoria();
+        if (categoria != null && !categoria.isEmpty()) {
+            porCategoria.computeIfAbsent(categoria, c -> new VetorTarefas(this::obter)).inserir(tarefa);
+        }
+    }
+
+    private void desindexarCategoria(Tarefa tarefa) {
+        VetorTarefas vetor = vetorCategoria(tarefa);
+        if (vetor != null && vetor.removerId(tarefa.id()) && vetor.isEmpty()
+                && !tarefa.categoria().equals(CATEGORIA_PADRAO)) {
+            porCategoria.remove(tarefa.categoria());
+        }
+    }
+
+    private VetorTarefas vetorCategoria(Tarefa tarefa) {
+        return tarefa.categoria() != null ? porCategoria.get(tarefa.categoria()) : null;
+    }
+
+    private void indexarVencimento(Tarefa tarefa) {
+        if (tarefa.dataVencimento() != null) {
+            porVencimento.computeIfAbsent(tarefa.dataVencimento().toEpochDay(), d -> new VetorTarefas(this::obter)).inserir(tarefa);
+        }
+    }
+
+    private void desindexarVencimento(Tarefa tarefa) {
+        VetorTarefas vetor = vetorVencimento(tarefa);
+        if (vetor != null && vetor.removerId(tarefa.id()) && vetor.isEmpty()) {
+            porVencimento.remove(tarefa.dataVencimento().toEpochDay());
+        }
+    }
+
+    private VetorTarefas vetorVencimento(Tarefa tarefa) {
+        return tarefa.dataVencimento() != null ? porVencimento.get(tarefa.dataVencimento().toEpochDay()) : null;
+    }
+
+    // Reposiciona a tarefa na ordem (anterior nula: insercao; atual nula: remocao), em O(log n) mais o
+    // deslocamento dentro de um bloco. So muda algo quando a chave muda.
+    private void ajustarOrdem(Tarefa anterior, Tarefa atual) {
+        if (ordem == null || (estadoLote != null && estadoLote.ordem)) {
+            return;
+        }
+        long chaveAnterior = anterior != null ? ordenacao.chave(anterior, postosCategorias) : -1;
+        long chaveAtual = atual != null ? ordenacao.chave(atual, postosCategorias) : -1;
+        if (chaveAnterior == chaveAtual) {
+            return;
+        }
+        if (estadoLote != null && ++estadoLote.ajustesOrdem > LIMITE_AJUSTES_ORDEM) {
+            estadoLote.ordem = true;
+            return;
+        }
+        if (anterior != null) {
+            ordem.removerChave(chaveAnterior);
+        }
+        if (atual != null) {
+            ordem.inserirChave(chaveAtual);
+        }
+    }
+
+    // Uma categoria nova desloca os postos das que vem depois dela; na ordenacao por categoria a
+    // ordem e refeita (no fim, dentro de um lote). Chamado antes de a tarefa entrar nos indices.
+    private void garantirPosto(Tarefa tarefa) {
+        String categoria = tarefa.categoria();
+        if (ordenacao != Ordenacao.CATEGORIA || categoria == null || postosCategorias.containsKey(categoria)) {
+            return;
+        }
+        if (estadoLote != null) {
+            estadoLote.ordem = true;
+        } else {
+            reconstruirOrdem();
+        }
+    }
+
+    // Monta a ordem inteira a partir da lista: cada chave e calculada uma vez e o vetor e ordenado
+    private void reconstruirOrdem() {
+        if (ordenacao == Ordenacao.INSERCAO) {
+            ordem = null;
+            postosCategorias = Map.of();
+            return;
+        }
+        if (ordenacao == Ordenacao.CATEGORIA) {
+            List<String> nomes = new ArrayList<>(dicionario.nomes());
+            Collections.sort(nomes);
+            Map<String, Integer> postos = new HashMap<>();
+            for (int i = 0; i < nomes.size(); i++) {
+                postos.put(nomes.get(i), i + 1);
+            }
+            postosCategorias = Collections.unmodifiableMap(postos);
+        }
+        long[] chaves = new long[tarefas.size()];
+        int quantidade = 0;
         for (int i = 0; i < tarefas.size(); i++) {
             Tarefa t = tarefas.get(i);
-            json.append("    {\n");
-            json.append("      \"descricao\": \"").append(escaparJSON(t.descricao())).append("\",\n");
-            json.append("      \"concluida\": ").append(t.concluida()).append(",\n");
-            json.append("      \"observacao\": \"").append(escaparJSON(t.observacao())).append("\",\n");
-            json.append("      \"prioridade\": \"").append(t.prioridade()).append("\",\n");
-            json.append("      \"categoria\": \"").append(escaparJSON(t.categoria())).append("\",\n");
-            json.append("      \"dataVencimento\": ");
-            if (t.dataVencimento() != null) {
-                json.append("\"").append(t.dataVencimento()).append("\"");
-            } else {
-                json.append("null");
+            if (t != null) {
+                chaves[quantidade++] = ordenacao.chave(t, postosCategorias);
             }
-            json.append("\n    }");
-            if (i < tarefas.size() - 1) {
-                json.append(",");
+        }
+        ordem = new OrdemTarefas(this::obter, chaves, quantidade);
+    }
+
+    private List<Tarefa> copiar(FiltroTarefa filtro) {
+        if (filtro.isPorVencimento()) {
+            return vencimentos(filtro, LocalDate.now().toEpochDay());
+        }
+        if (estadoLote != null) {
+            // No meio de um lote os vetores ainda guardam os ids removidos, que o armazem nao tem mais
+            return vetor(filtro).stream().filter(Objects::nonNull).toList();
+        }
+        return List.copyOf(vetor(filtro));
+    }
+
+    private List<Tarefa> vencimentos(FiltroTarefa filtro, long hoje) {
+        return vencimentos(faixaDeVencimentos(filtro, hoje), true);
+    }
+
+    private NavigableMap<Long, VetorTarefas> faixaDeVencimentos(FiltroTarefa filtro, long hoje) {
+        return filtro == FiltroTarefa.ATRASADAS
+            ? porVencimento.headMap(hoje, false)
+            : porVencimento.subMap(hoje, true, hoje + DIAS_PROXIMOS, true);
+    }
+
+    private List<Tarefa> vencimentos(NavigableMap<Long, VetorTarefas> faixa, boolean apenasPendentes) {
+        List<Tarefa> resultado = new ArrayList<>();
+        for (VetorTarefas vetor : faixa.values()) {
+            for (int i = 0; i < vetor.size(); i++) {
+                // A conclusao e consultada no armazem antes de se obter a tarefa
+                if (apenasPendentes && !armazem.aceita(vetor.getId(i), FiltroTarefa.PENDENTES, 0)) {
+                    continue;
+                }
+                Tarefa t = vetor.get(i);
+                if (t != null) {
+                    resultado.add(t);
+                }
             }
-            json.append("\n");
         }
-        
-        json.append("  ]\n}");
-        Files.writeString(destino, json.toString());
+        return resultado;
+    }
+
+    private VetorTarefas vetor(FiltroTarefa filtro) {
+        return switch (filtro) {
+            case PENDENTES -> pendentes;
+            case CONCLUIDAS -> concluidas;
+            default -> tarefas;
+        };
+    }
+
+    private VetorTarefas particao(Tarefa tarefa) {
+        return tarefa.concluida() ? concluidas : pendentes;
+    }
+
+    private void registrar(DiarioTarefas.TipoRegistro tipo, long id, Tarefa tarefa, Tarefa anterior) {
+        if (reproduzindoDiario) {
+            return;
+        }
+        if (estadoLote != null) {
+            estadoLote.mutacoes.add(new GravadorTarefas.Mutacao(tipo, id, tarefa, anterior));
+        } else if (gravador != null) {
+            gravador.registrar(tipo, id, tarefa, anterior);
+        }
+    }
+
+    private void publicar(EventoTarefa evento) {
+        if (ouvintes.isEmpty()) {
+            return;
+        }
+        if (evento.tipo() != EventoTarefa.Tipo.ADICIONADA && !eventosRepetidos) {
+            eventosRepetidos = evento.id() >= primeiroIdNovo || !idsAlterados.add(evento.id());
+        }
+        eventos.add(evento);
     }
 
-    private String escaparCSV(String valor) {
-        if (valor == null) return "";
-        return "\"" + valor.replace("\"", "\"\"") + "\"";
+    // Entrega os eventos da mutacao que terminou. E chamado ainda sob o lock de escrita, para que
+    // mutacoes de threads diferentes cheguem aos ouvintes na ordem em que foram aplicadas.
+    private void entregarEventos(long versaoAtual) {
+        if (eventos.isEmpty()) {
+            return;
+        }
+        List<EventoTarefa> entregues = List.copyOf(eventosRepetidos ? combinar(eventos) : eventos);
+        eventos.clear();
+        idsAlterados.clear();
+        eventosRepetidos = false;
+        if (entregues.isEmpty()) {
+            return;
+        }
+        for (Inscricao inscricao : ouvintes) {
+            try {
+                inscricao.entrega().execute(() -> inscricao.ouvinte().tarefasAlteradas(entregues, versaoAtual));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
-    private String escaparJSON(String valor) {
-        if (valor == null) return "";
-        return valor.replace("\\", "\\\\")
-                   .replace("\"", "\\\"")
-                   .replace("\n", "\\n")
-                   .replace("\r", "\\r")
-                   .replace("\t", "\\t");
+    // Reduz os eventos de um lote a um por tarefa, na ordem do primeiro evento de cada uma
+    private static Collection<EventoTarefa> combinar(List<EventoTarefa> eventos) {
+        Map<Long, EventoTarefa> porTarefa = new LinkedHashMap<>();
+        for (EventoTarefa evento : eventos) {
+            EventoTarefa anterior = porTarefa.get(evento.id());
+            porTarefa.put(evento.id(), anterior != null ? anterior.seguidoDe(evento) : evento);
+        }
+        porTarefa.values().removeIf(Objects::isNull);
+        return porTarefa.values();
     }
 
-    private void salvar() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(PATH))) {
-            oos.writeObject(tarefas);
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Refaz os indices marcados em uma unica passada pela lista; usado ao final de um lote
+    private void reconstruir(boolean particoes, boolean categorias, boolean vencimentos) {
+        if (!particoes && !categorias && !vencimentos) {
+            return;
+        }
+        if (particoes) {
+            pendentes.clear();
+            concluidas.clear();
+        }
+        if (categorias) {
+            porCategoria.clear();
+            porCategoria.put(CATEGORIA_PADRAO, new VetorTarefas(this::obter));
+        }
+        if (vencimentos) {
+            porVencimento.clear();
+        }
+        for (int i = 0; i < tarefas.size(); i++) {
+            Tarefa t = tarefas.get(i);
+            if (particoes) particao(t).add(t);
+            if (categorias) indexarCategoria(t);
+            if (vencimentos) indexarVencimento(t);
         }
     }
 
-    @SuppressWarnings("unchecked")
     private void carregar() {
-        if (Files.exists(PATH)) {
-            try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(PATH))) {
-                tarefas.addAll((List<Tarefa>) ois.readObject());
-            } catch (Exception e) {
-                System.err.println("Erro ao carregar dados.");
+        if (gravador != null) {
+            ArrayList<Tarefa> carregadas = new ArrayList<>();
+            boolean migrar = gravador.carregar(carregadas, registro -> reproduzir(carregadas, registro));
+            tarefas.garantirCapacidade(carregadas.size());
+            carregadas.forEach(this::incorporar);
+            if (migrar) {
+                gravador.migrar(tarefas);
             }
+        } else if (armazem instanceof ArmazemMapeado mapeado && !mapeado.isMigrado()) {
+            // Primeira abertura do armazem mapeado: as tarefas vem de tarefas.dat e da reproducao de
+            // tarefas.log, que ficam intactos
+            mapeado.iniciarMigracao();
+            if (Files.exists(path) || Files.exists(pathDiario)) {
+                GravadorTarefas origem = new GravadorTarefas(path, pathDiario, dicionario, null);
+                ArrayList<Tarefa> carregadas = new ArrayList<>();
+                origem.carregar(carregadas, registro -> reproduzir(carregadas, registro));
+                origem.fechar();
+                tarefas.garantirCapacidade(carregadas.size());
+                carregadas.forEach(this::incorporar);
+            }
+            mapeado.concluirMigracao();
+        } else {
+            // As tarefas ja estao no armazem; cada uma e decodificada uma unica vez para os indices
+            tarefas.garantirCapacidade(armazem.tamanho());
+            armazem.percorrer(t -> {
+                indexar(t);
+                proximoId = Math.max(proximoId, t.id() + 1);
+            });
+        }
+    }
+
+    // Carregamento em segundo plano, na thread do carregador. O snapshot entra em blocos, cada um sob o
+    // lock de escrita, enquanto o restante ainda e decodificado; o diario e reproduzido no fim, sobre
+    // o servico ja carregado, como um lote que gera eventos mas nao volta para o diario.
+    private void carregarEmBlocos() {
+        ArrayList<Tarefa> carregadas = new ArrayList<>();
+        List<DiarioTarefas.Registro> registros = new ArrayList<>();
+        int[] incorporadas = {0};
+        boolean migrar = gravador.carregar(carregadas, registros::add, lidas -> {
+            if (lidas - incorporadas[0] >= (incorporadas[0] == 0 ? PRIMEIRO_BLOCO : TAMANHO_BLOCO)) {
+                incorporarBloco(carregadas, incorporadas[0], lidas);
+                incorporadas[0] = lidas;
+            }
+        });
+        incorporarBloco(carregadas, incorporadas[0], carregadas.size());
+        if (!registros.isEmpty()) {
+            lote(l -> {
+                reproduzindoDiario = true;
+                try {
+                    registros.forEach(this::reproduzir);
+                } finally {
+                    reproduzindoDiario = false;
+                }
+            });
+        }
+        if (migrar) {
+            alterar(() -> gravador.migrar(tarefas));
+        }
+        avisarCarga(true);
+        gravador.observar();
+    }
+
+    private void incorporarBloco(List<Tarefa> carregadas, int inicio, int fim) {
+        if (inicio < fim) {
+            alterar(() -> {
+                tarefas.garantirCapacidade(tarefas.size() + fim - inicio);
+                for (int i = inicio; i < fim; i++) {
+                    incorporar(carregadas.get(i));
+                    // O que ja entrou no armazem nao precisa continuar na lista
+                    carregadas.set(i, null);
+                }
+            });
+            avisarCarga(false);
+        }
+    }
+
+    // Aplica um registro do diario ao servico ja carregado, com os eventos de uma mutacao comum
+    private void reproduzir(DiarioTarefas.Registro registro) {
+        Tarefa atual = armazem.obter(registro.id());
+        switch (registro.tipo()) {
+            case ADICIONAR -> {
+                if (atual == null) {
+                    Tarefa nova = normalizar(registro.tarefa());
+                    proximoId = Math.max(proximoId, nova.id() + 1);
+                    inserir(nova);
+                }
+            }
+            case SUBSTITUIR -> {
+                if (atual != null) {
+                    Tarefa t = registro.tarefa();
+                    substituir(new Tarefa(atual.id(), t.descricao(), t.concluida(), t.observacao(),
+                                          t.prioridade(), dicionario.canonica(t.categoria()), t.dataVencimento()));
+                }
+            }
+            case REMOVER -> remover(registro.id());
+        }
+    }
+
+    // Aplica o que outras instancias gravaram, como um lote que gera eventos mas nao volta ao diario. Uma
+    // tarefa que tambem tem mutacoes desta instancia ainda por gravar e um conflito: vale a gravacao que
+    // chegou primeiro ao arquivo, a externa, e as pendentes sao descartadas. Um id criado aqui que coincidiu
+    // com o de uma tarefa criada la nao e conflito: a tarefa daqui passa para um id novo.
+    private List<Conflito> aplicarExternos(List<DiarioTarefas.Registro> registros) {
+        Map<Long, Tarefa> locais = new LinkedHashMap<>();
+        List<Conflito> conflitos = new ArrayList<>();
+        lote(l -> {
+            // Os ids novos daqui precisam ficar alem de todos os que chegaram
+            for (DiarioTarefas.Registro registro : registros) {
+                if (registro.tarefa() != null) {
+                    proximoId = Math.max(proximoId, registro.id() + 1);
+                }
+            }
+            for (DiarioTarefas.Registro registro : registros) {
+                long id = registro.id();
+                if (gravador.temPendentes(id)) {
+                    Tarefa local = armazem.obter(id);
+                    if (!gravador.descartarPendentes(id)) {
+                        locais.put(id, local);
+                    } else if (local != null) {
+                        inserir(new Tarefa(proximoId++, local.descricao(), local.concluida(), local.observacao(),
+                                           local.prioridade(), local.categoria(), local.dataVencimento()));
+                    }
+                }
+                aplicarExterno(registro);
+            }
+            locais.forEach((id, local) -> {
+                Tarefa externa = armazem.obter(id);
+                if (!Objects.equals(local, externa)) {
+                    conflitos.add(new Conflito(id, local, externa));
+                }
+            });
+        });
+        return conflitos;
+    }
+
+    // Leva a tarefa ao estado gravado por outra instancia, exista ela ou nao nesta
+    private void aplicarExterno(DiarioTarefas.Registro registro) {
+        Tarefa atual = armazem.obter(registro.id());
+        Tarefa t = registro.tarefa();
+        reproduzindoDiario = true;
+        try {
+            if (t == null) {
+                if (atual != null) {
+                    remover(registro.id());
+                }
+                return;
+            }
+            Tarefa externa = new Tarefa(registro.id(), t.descricao(), t.concluida(), t.observacao(),
+                                        t.prioridade(), dicionario.canonica(t.categoria()), t.dataVencimento());
+            if (atual == null) {
+                inserir(externa);
+            } else if (!externa.equals(atual)) {
+                substituir(externa);
+            }
+        } finally {
+            reproduzindoDiario = false;
+        }
+    }
+
+    // O diario foi compactado alem do que esta instancia havia lido, entao o estado externo completo e
+    // comparado com o da memoria e so as tarefas diferentes sao aplicadas. Uma tarefa com mutacoes
+    // pendentes e comparada com a sua base, para que apenas uma alteracao externa conte como conflito.
+    private List<Conflito> aplicarEstadoExterno(ArrayList<Tarefa> externas, List<DiarioTarefas.Registro> registros) {
+        registros.forEach(registro -> reproduzir(externas, registro));
+        return escrever(() -> {
+            List<DiarioTarefas.Registro> diferencas = new ArrayList<>();
+            long[] ids = tarefas.copiarIds();
+            int i = 0;
+            int j = 0;
+            while (i < ids.length || j < externas.size()) {
+                long idLocal = i < ids.length ? ids[i] : Long.MAX_VALUE;
+                long idExterno = j < externas.size() ? externas.get(j).id() : Long.MAX_VALUE;
+                long id = Math.min(idLocal, idExterno);
+                Tarefa externa = idExterno == id ? externas.get(j++) : null;
+                if (idLocal == id) {
+                    i++;
+                }
+                Tarefa referencia = gravador.temPendentes(id) ? gravador.getBase(id) : armazem.obter(id);
+                if (!Objects.equals(referencia, externa)) {
+                    diferencas.add(new DiarioTarefas.Registro(0, externa == null
+                        ? DiarioTarefas.TipoRegistro.REMOVER : DiarioTarefas.TipoRegistro.SUBSTITUIR, id, externa));
+                }
+            }
+            return diferencas.isEmpty() ? List.<Conflito>of() : aplicarExternos(diferencas);
+        });
+    }
+
+    // Fora do lock, depois dos eventos da mutacao que resolveu os conflitos
+    private void avisarConflitos(List<Conflito> conflitos) {
+        if (conflitos.isEmpty()) {
+            return;
+        }
+        CONFLITOS.somar(conflitos.size());
+        if (ouvintes.isEmpty()) {
+            for (Conflito conflito : conflitos) {
+                System.err.println("Conflito na tarefa " + conflito.id() + ": mantida a versao gravada por outra instancia.");
+            }
+        }
+        List<Conflito> entregues = List.copyOf(conflitos);
+        for (Inscricao inscricao : ouvintes) {
+            try {
+                inscricao.entrega().execute(() -> inscricao.ouvinte().conflitosDetectados(entregues));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Anuncia aos ouvintes o estado carregado ate aqui; so e chamado pelo carregador, fora do lock
+    private void avisarCarga(boolean completo) {
+        long versaoAtual = versao;
+        for (Inscricao inscricao : ouvintes) {
+            try {
+                inscricao.entrega().execute(() -> inscricao.ouvinte().tarefasCarregadas(versaoAtual, completo));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void aguardarCarregamento() {
+        if (carregador == Thread.currentThread()) {
+            return;
+        }
+        boolean interrompida = false;
+        while (true) {
+            try {
+                carregamento.get();
+                break;
+            } catch (InterruptedException e) {
+                interrompida = true;
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
+        if (interrompida) {
+            Thread.currentThread().interrupt();
         }
     }
-}
 
+    // Leva ao armazem e aos indices uma tarefa lida de tarefas.dat
+    private void incorporar(Tarefa t) {
+        t = normalizar(t);
+        armazem.gravar(t);
+        indexar(t);
+        proximoId = Math.max(proximoId, t.id() + 1);
+    }
+
+    // Tarefas gravadas antes da existencia de ids, ou com ids repetidos ou fora do aceito pelo
+    // armazem, recebem ids novos; a categoria passa a ser a instancia do dicionario
+    private Tarefa normalizar(Tarefa t) {
+        boolean idNovo = t.id() <= 0 || t.id() >= ArmazemTarefas.LIMITE_ID || armazem.obter(t.id()) != null;
+        String categoria = dicionario.canonica(t.categoria());
+        if (idNovo || categoria != t.categoria()) {
+            t = new Tarefa(idNovo ? proximoId : t.id(), t.descricao(), t.concluida(), t.observacao(),
+                           t.prioridade(), categoria, t.dataVencimento());
+        }
+        return t;
+    }
+
+    // Os registros do diario enderecam as tarefas pelo id; a lista carregada esta ordenada por id
+    private static void reproduzir(List<Tarefa> carregadas, DiarioTarefas.Registro registro) {
+        long id = registro.id();
+        int inicio = 0;
+        int fim = carregadas.size() - 1;
+        while (inicio <= fim) {
+            int meio = (inicio + fim) >>> 1;
+            long idMeio = carregadas.get(meio).id();
+            if (idMeio < id) {
+                inicio = meio + 1;
+            } else if (idMeio > id) {
+                fim = meio - 1;
+            } else {
+                switch (registro.tipo()) {
+                    case SUBSTITUIR -> carregadas.set(meio, registro.tarefa());
+                    case REMOVER -> carregadas.remove(meio);
+                    default -> { }
+                }
+                return;
+            }
+        }
+        if (registro.tipo() == DiarioTarefas.TipoRegistro.ADICIONAR) {
+            carregadas.add(inicio, registro.tarefa());
+        }
+    }
+}
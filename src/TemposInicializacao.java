@@ -0,0 +1,20 @@
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Tempo de cada fase da inicializacao, contado desde o inicio do processo da JVM e impresso uma unica
+// vez por fase. Serve para acompanhar o efeito do carregamento em segundo plano e do arquivo CDS.
+public final class TemposInicializacao {
+    private static final long INICIO = ProcessHandle.current().info().startInstant()
+        .map(Instant::toEpochMilli)
+        .orElseGet(System::currentTimeMillis);
+    private static final Set<String> registradas = ConcurrentHashMap.newKeySet();
+
+    private TemposInicializacao() {}
+
+    public static void marcar(String fase) {
+        if (registradas.add(fase)) {
+            System.out.printf("[inicializacao] %s: %d ms%n", fase, System.currentTimeMillis() - INICIO);
+        }
+    }
+}
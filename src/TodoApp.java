@@ -1,43 +1,82 @@
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.io.File;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 
 public class TodoApp extends JFrame {
-    private final TarefaService service = new TarefaService();
+    private static final String TITULO = "Task Manager Pro - Java 21";
+    // A janela aparece enquanto as tarefas ainda sao lidas do disco; a lista se preenche aos blocos
+    private final TarefaService service = TarefaService.emSegundoPlano();
     private final TemaManager tema = new TemaManager();
     private final ComponenteFactory factory = new ComponenteFactory(tema);
     
-    private DefaultListModel<String> listModel;
-    private JList<String> taskList;
+    private TarefaListModel listModel;
+    private JList<Tarefa> taskList;
+    private JTextField campoBusca;
     private TarefaService.FiltroTarefa filtroAtual = TarefaService.FiltroTarefa.TODAS;
+    // Botoes que alteram tarefas; ficam desabilitados ate o fim do carregamento
+    private final List<JButton> botoesDeAlteracao = new ArrayList<>();
 
     public static void main(String[] args) {
+        DetectorTravamentos.instalar(Paths.get("travamentos.log"));
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception ignored) {}
         
-        SwingUtilities.invokeLater(() -> new TodoApp().setVisible(true));
+        SwingUtilities.invokeLater(() -> {
+            TodoApp app;
+            try {
+                app = new TodoApp();
+            } catch (IllegalStateException | UncheckedIOException e) {
+                // Diretorio de dados em outro modo de armazenamento, ou armazem aberto por outra instancia
+                JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+                System.exit(1);
+                return;
+            }
+            app.setVisible(true);
+        });
     }
 
     public TodoApp() {
         configurarJanela();
         inicializarComponentes();
         configurarAtalhosTeclado();
-        atualizarLista();
+        acompanharCarregamento();
+        acompanharConflitos();
     }
 
     private void configurarJanela() {
-        setTitle("Task Manager Pro - Java 21");
+        setTitle(service.isCarregado() ? TITULO : TITULO + " (carregando...)");
         setSize(700, 850);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         setLocationRelativeTo(null);
         setResizable(true);
         setMinimumSize(new Dimension(600, 700));
         getContentPane().setBackground(tema.getBackground());
+
+        // Garante que as gravacoes pendentes cheguem ao disco antes de sair. A janela some na hora;
+        // fechar() pode esperar o carregamento e o gravador, entao roda fora da EDT
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                dispose();
+                new Thread(() -> {
+                    try {
+                        service.fechar();
+                    } finally {
+                        System.exit(0);
+                    }
+                }, "encerramento").start();
+            }
+        });
     }
 
     private void inicializarComponentes() {
@@ -48,6 +87,68 @@ public class TodoApp extends JFrame {
         add(criarPainelBotoes(), BorderLayout.SOUTH);
     }
 
+    private void acompanharCarregamento() {
+        service.getCarregamento().thenRun(() -> SwingUtilities.invokeLater(() -> {
+            TemposInicializacao.marcar("tarefas carregadas (" + service.contar(TarefaService.FiltroTarefa.TODAS) + ")");
+            setTitle(TITULO);
+            botoesDeAlteracao.forEach(botao -> botao.setEnabled(true));
+            taskList.repaint();
+        }));
+    }
+
+    // Outra instancia gravou antes alteracoes feitas aqui; a lista ja mostra a versao dela
+    private void acompanharConflitos() {
+        service.adicionarOuvinte(new TarefaService.Ouvinte() {
+            @Override
+            public void tarefasAlteradas(List<EventoTarefa> eventos, long versao) {}
+
+            @Override
+            public void conflitosDetectados(List<TarefaService.Conflito> conflitos) {
+                resolverConflitos(conflitos);
+            }
+        }, SwingUtilities::invokeLater);
+    }
+
+    private void resolverConflitos(List<TarefaService.Conflito> conflitos) {
+        StringBuilder texto = new StringBuilder("Outra instancia do aplicativo alterou as mesmas tarefas antes desta, e as alteracoes dela foram mantidas:\n\n");
+        for (TarefaService.Conflito conflito : conflitos) {
+            texto.append("- ")
+                 .append(conflito.local() != null ? conflito.local().descricao() : "(removida aqui)")
+                 .append("  ->  ")
+                 .append(conflito.externa() != null ? conflito.externa().descricao() : "(removida la)")
+                 .append('\n');
+        }
+        texto.append("\nDeseja reaplicar as alteracoes feitas aqui?");
+        int escolha = JOptionPane.showConfirmDialog(
+            this,
+            texto.toString(),
+            "Conflito de Edicao",
+            JOptionPane.YES_NO_OPTION,
+            JOptionPane.WARNING_MESSAGE
+        );
+
+        if (escolha == JOptionPane.YES_OPTION) {
+            service.lote(lote -> {
+                for (TarefaService.Conflito conflito : conflitos) {
+                    Tarefa local = conflito.local();
+                    if (local == null) {
+                        lote.remover(conflito.id());
+                        continue;
+                    }
+                    long id = conflito.id();
+                    if (conflito.externa() == null) {
+                        id = lote.adicionar(local.descricao(), local.observacao(), local.prioridade(),
+                                            local.categoria(), local.dataVencimento()).id();
+                    } else {
+                        lote.editar(id, local.descricao(), local.observacao(), local.prioridade(),
+                                    local.categoria(), local.dataVencimento());
+                    }
+                    lote.definirConclusao(id, local.concluida());
+                }
+            });
+        }
+    }
+
     private void configurarAtalhosTeclado() {
         // Ctrl+N - Nova tarefa
         KeyStroke ctrlN = KeyStroke.getKeyStroke(KeyEvent.VK_N, InputEvent.CTRL_DOWN_MASK);
@@ -61,17 +162,40 @@ public class TodoApp extends JFrame {
         KeyStroke delete = KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0);
         getRootPane().registerKeyboardAction(e -> remover(), delete, JComponent.WHEN_IN_FOCUSED_WINDOW);
         
-        // Ctrl+R - Atualizar
-        KeyStroke ctrlR = KeyStroke.getKeyStroke(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK);
-        getRootPane().registerKeyboardAction(e -> atualizarLista(), ctrlR, JComponent.WHEN_IN_FOCUSED_WINDOW);
-        
-        // Espaço - Marcar/desmarcar como concluída
+        // Espaço - Marcar/desmarcar como concluída (exceto enquanto se digita a busca)
         KeyStroke space = KeyStroke.getKeyStroke(KeyEvent.VK_SPACE, 0);
-        getRootPane().registerKeyboardAction(e -> marcarConcluida(), space, JComponent.WHEN_IN_FOCUSED_WINDOW);
+        getRootPane().registerKeyboardAction(e -> {
+            if (!campoBusca.isFocusOwner()) marcarConcluida();
+        }, space, JComponent.WHEN_IN_FOCUSED_WINDOW);
         
         // Enter - Ver detalhes
         KeyStroke enter = KeyStroke.getKeyStroke(KeyEvent.VK_ENTER, 0);
         getRootPane().registerKeyboardAction(e -> verDetalhes(), enter, JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+        // Ctrl+F - Buscar
+        KeyStroke ctrlF = KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK);
+        getRootPane().registerKeyboardAction(e -> {
+            campoBusca.requestFocusInWindow();
+            campoBusca.selectAll();
+        }, ctrlF, JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+        // Esc - Limpar a busca
+        KeyStroke esc = KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0);
+        getRootPane().registerKeyboardAction(e -> campoBusca.setText(""), esc, JComponent.WHEN_IN_FOCUSED_WINDOW);
+
+        // Ctrl+M - Metricas de desempenho
+        KeyStroke ctrlM = KeyStroke.getKeyStroke(KeyEvent.VK_M, InputEvent.CTRL_DOWN_MASK);
+        getRootPane().registerKeyboardAction(e -> mostrarMetricas(), ctrlM, JComponent.WHEN_IN_FOCUSED_WINDOW);
+    }
+
+    // Latencias e contadores acumulados desde o inicio; o mesmo texto vai para o console
+    private void mostrarMetricas() {
+        String relatorio = Metricas.relatorio();
+        System.out.print(relatorio);
+        JTextArea texto = new JTextArea(relatorio);
+        texto.setEditable(false);
+        texto.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        JOptionPane.showMessageDialog(this, new JScrollPane(texto), "Metricas de Desempenho", JOptionPane.PLAIN_MESSAGE);
     }
 
     private JPanel criarHeader() {
@@ -96,21 +220,63 @@ public class TodoApp extends JFrame {
         labelFiltro.setForeground(Color.WHITE);
         labelFiltro.setFont(new Font("Segoe UI", Font.PLAIN, 14));
         
-        JComboBox<String> comboFiltro = new JComboBox<>(new String[]{"Todas", "Pendentes", "Concluidas"});
+        JComboBox<String> comboFiltro = new JComboBox<>(new String[]{"Todas", "Pendentes", "Concluidas", "Atrasadas", "Proximos 7 dias"});
         comboFiltro.setFont(new Font("Segoe UI", Font.PLAIN, 13));
-        comboFiltro.setPreferredSize(new Dimension(150, 30));
+        comboFiltro.setPreferredSize(new Dimension(130, 30));
         comboFiltro.addActionListener(e -> {
             int index = comboFiltro.getSelectedIndex();
             filtroAtual = switch (index) {
                 case 1 -> TarefaService.FiltroTarefa.PENDENTES;
                 case 2 -> TarefaService.FiltroTarefa.CONCLUIDAS;
+                case 3 -> TarefaService.FiltroTarefa.ATRASADAS;
+                case 4 -> TarefaService.FiltroTarefa.PROXIMOS_7_DIAS;
                 default -> TarefaService.FiltroTarefa.TODAS;
             };
-            atualizarLista();
+            listModel.setFiltro(filtroAtual);
+            taskList.repaint();
+        });
+
+        JLabel labelOrdem = new JLabel("Ordenar:");
+        labelOrdem.setForeground(Color.WHITE);
+        labelOrdem.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+
+        // A ordem e mantida pelo servico; trocar aqui a monta uma vez e as edicoes so reposicionam a linha
+        JComboBox<String> comboOrdem = new JComboBox<>(new String[]{"Insercao", "Prioridade", "Vencimento", "Categoria", "Status"});
+        comboOrdem.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        comboOrdem.setPreferredSize(new Dimension(110, 30));
+        comboOrdem.addActionListener(e -> {
+            listModel.setOrdenacao(TarefaService.Ordenacao.values()[comboOrdem.getSelectedIndex()]);
+            taskList.repaint();
         });
         
+        JLabel labelBusca = new JLabel("Buscar:");
+        labelBusca.setForeground(Color.WHITE);
+        labelBusca.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+
+        // Busca enquanto se digita; o indice invertido responde em poucos milissegundos
+        campoBusca = new JTextField();
+        campoBusca.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        campoBusca.setPreferredSize(new Dimension(160, 30));
+        campoBusca.setToolTipText("Busca na descricao, observacao e categoria (Ctrl+F)");
+        campoBusca.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { buscar(); }
+            public void removeUpdate(DocumentEvent e) { buscar(); }
+            public void changedUpdate(DocumentEvent e) { buscar(); }
+        });
+        // Enter leva o foco para o primeiro resultado
+        campoBusca.addActionListener(e -> {
+            if (listModel.getSize() > 0) {
+                taskList.setSelectedIndex(0);
+                taskList.requestFocusInWindow();
+            }
+        });
+
         filtrosPanel.add(labelFiltro);
         filtrosPanel.add(comboFiltro);
+        filtrosPanel.add(labelOrdem);
+        filtrosPanel.add(comboOrdem);
+        filtrosPanel.add(labelBusca);
+        filtrosPanel.add(campoBusca);
         
         header.add(tituloPanel, BorderLayout.CENTER);
         header.add(filtrosPanel, BorderLayout.SOUTH);
@@ -119,14 +285,31 @@ public class TodoApp extends JFrame {
     }
 
     private JScrollPane criarPainelLista() {
-        listModel = new DefaultListModel<>();
-        taskList = new JList<>(listModel);
+        listModel = new TarefaListModel(service);
+        taskList = new JList<>(listModel) {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                TemposInicializacao.marcar("primeira pintura");
+                if (getModel().getSize() > 0) {
+                    TemposInicializacao.marcar("primeiras tarefas na tela");
+                } else {
+                    g.setColor(getForeground());
+                    g.setFont(getFont());
+                    g.drawString(mensagemListaVazia(), 10, 10 + g.getFontMetrics().getAscent());
+                }
+            }
+        };
         
+        taskList.setCellRenderer(new TarefaCellRenderer());
         taskList.setFont(new Font("Segoe UI", Font.PLAIN, 15));
-        taskList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Selecao multipla para concluir, remover ou recategorizar varias tarefas de uma vez
+        taskList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         taskList.setBackground(tema.getCardBackground());
         taskList.setForeground(tema.getText());
+        // Altura e largura fixas evitam que a JList renderize todas as linhas para se dimensionar
         taskList.setFixedCellHeight(45);
+        taskList.setFixedCellWidth(560);
         taskList.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         
         // Duplo clique para ver detalhes
@@ -163,21 +346,20 @@ public class TodoApp extends JFrame {
         JButton btnRemover = factory.criarBotao("Remover (Del)", tema.getDanger());
         JButton btnConcluir = factory.criarBotao("Concluir (Space)", tema.getPrimary());
         JButton btnDetalhes = factory.criarBotao("Detalhes (Enter)", tema.getSecondary());
-        JButton btnAtualizar = factory.criarBotao("Atualizar (Ctrl+R)", tema.getInfo());
 
         btnAdicionar.addActionListener(e -> adicionar());
         btnEditar.addActionListener(e -> editar());
         btnRemover.addActionListener(e -> remover());
         btnConcluir.addActionListener(e -> marcarConcluida());
         btnDetalhes.addActionListener(e -> verDetalhes());
-        btnAtualizar.addActionListener(e -> atualizarLista());
+
+        botoesDeAlteracao.addAll(List.of(btnAdicionar, btnEditar, btnRemover, btnConcluir));
 
         painelBotoes.add(btnAdicionar);
         painelBotoes.add(btnEditar);
         painelBotoes.add(btnRemover);
         painelBotoes.add(btnConcluir);
         painelBotoes.add(btnDetalhes);
-        painelBotoes.add(btnAtualizar);
         
         // Painel de exportação
         JPanel painelExportar = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 5));
@@ -186,11 +368,21 @@ public class TodoApp extends JFrame {
         JButton btnExportarCSV = factory.criarBotaoPequeno("Exportar CSV", new Color(34, 197, 94));
         JButton btnExportarJSON = factory.criarBotaoPequeno("Exportar JSON", new Color(59, 130, 246));
         
+        JButton btnImportarCSV = factory.criarBotaoPequeno("Importar CSV", new Color(34, 197, 94));
+        JButton btnImportarJSON = factory.criarBotaoPequeno("Importar JSON", new Color(59, 130, 246));
+        
         btnExportarCSV.addActionListener(e -> exportar("CSV"));
         btnExportarJSON.addActionListener(e -> exportar("JSON"));
+        btnImportarCSV.addActionListener(e -> importar("CSV"));
+        btnImportarJSON.addActionListener(e -> importar("JSON"));
         
+        botoesDeAlteracao.addAll(List.of(btnImportarCSV, btnImportarJSON));
+        botoesDeAlteracao.forEach(botao -> botao.setEnabled(service.isCarregado()));
+
         painelExportar.add(btnExportarCSV);
         painelExportar.add(btnExportarJSON);
+        painelExportar.add(btnImportarCSV);
+        painelExportar.add(btnImportarJSON);
 
         painelPrincipal.add(painelBotoes, BorderLayout.CENTER);
         painelPrincipal.add(painelExportar, BorderLayout.SOUTH);
@@ -199,28 +391,52 @@ public class TodoApp extends JFrame {
         return painelPrincipal;
     }
 
-    private void atualizarLista() {
-        listModel.clear();
-        List<Tarefa> tarefas = service.getTarefasFiltradas(filtroAtual);
-        
-        if (tarefas.isEmpty()) {
-            String mensagem = switch (filtroAtual) {
-                case PENDENTES -> "   Nenhuma tarefa pendente!";
-                case CONCLUIDAS -> "   Nenhuma tarefa concluida ainda.";
-                default -> "   Nenhuma tarefa cadastrada. Adicione uma nova!";
-            };
-            listModel.addElement(mensagem);
-        } else {
-            List<Tarefa> todasTarefas = service.getTarefas();
-            for (Tarefa t : tarefas) {
-                int indiceOriginal = todasTarefas.indexOf(t);
-                listModel.addElement("   " + (indiceOriginal + 1) + ".  " + t.toString() + "  " + t.prioridade());
-            }
+    private void buscar() {
+        listModel.setBusca(campoBusca.getText());
+        taskList.repaint();
+    }
+
+    private String mensagemListaVazia() {
+        if (!service.isCarregado()) {
+            return "   Carregando tarefas...";
+        }
+        if (listModel.isBuscando()) {
+            return "   Nenhuma tarefa encontrada para \"" + listModel.getBusca().strip() + "\".";
         }
+        return switch (filtroAtual) {
+            case PENDENTES -> "   Nenhuma tarefa pendente!";
+            case CONCLUIDAS -> "   Nenhuma tarefa concluida ainda.";
+            case ATRASADAS -> "   Nenhuma tarefa atrasada!";
+            case PROXIMOS_7_DIAS -> "   Nenhuma tarefa vencendo nos proximos 7 dias.";
+            default -> "   Nenhuma tarefa cadastrada. Adicione uma nova!";
+        };
+    }
+
+    // Id da tarefa selecionada, ou -1 se nenhuma tarefa estiver selecionada
+    private long idSelecionado() {
+        Tarefa selecionada = taskList.getSelectedValue();
+        return selecionada != null ? selecionada.id() : -1;
+    }
+
+    private List<Long> idsSelecionados() {
+        return taskList.getSelectedValuesList().stream().map(Tarefa::id).toList();
+    }
+
+    // O servico so aplica alteracoes depois do carregamento, e esperar por ele na EDT travaria a
+    // janela; os atalhos de teclado e o dialogo de detalhes passam por aqui em vez disso
+    private boolean aindaCarregando() {
+        if (service.isCarregado()) {
+            return false;
+        }
+        factory.mostrarMensagem(this, "As tarefas ainda estao sendo carregadas. Tente novamente em instantes.", "Aviso", tema.getPrimary());
+        return true;
     }
 
     private void adicionar() {
-        DialogoTarefa dialogo = new DialogoTarefa(tema, service.getCategorias(), null);
+        if (aindaCarregando()) {
+            return;
+        }
+        DialogoTarefa dialogo = new DialogoTarefa(tema, service.getContagemCategorias(), null);
         
         int result = JOptionPane.showConfirmDialog(
             this, 
@@ -237,7 +453,6 @@ public class TodoApp extends JFrame {
                     LocalDate dataVencimento = dialogo.getDataVencimento();
                     service.adicionar(desc, dialogo.getObservacao(), dialogo.getPrioridade(), 
                                     dialogo.getCategoria(), dataVencimento);
-                    atualizarLista();
                     factory.mostrarMensagem(this, "Tarefa adicionada com sucesso!", "Sucesso", tema.getSuccess());
                 } catch (Exception ex) {
                     factory.mostrarMensagem(this, "Data invalida! Use o formato dd/mm/aaaa", "Erro", tema.getDanger());
@@ -247,26 +462,32 @@ public class TodoApp extends JFrame {
     }
 
     private void editar() {
-        List<Tarefa> tarefas = service.getTarefas();
-        
-        if (tarefas.isEmpty()) {
+        if (aindaCarregando()) {
+            return;
+        }
+        if (service.contar(TarefaService.FiltroTarefa.TODAS) == 0) {
             factory.mostrarMensagem(this, "Nao ha tarefas para editar.", "Aviso", tema.getPrimary());
             return;
         }
         
-        int selectedIndex = taskList.getSelectedIndex();
+        long id = idSelecionado();
         
-        if (selectedIndex == -1) {
+        if (id == -1) {
             factory.mostrarMensagem(this, "Selecione uma tarefa na lista para editar.", "Aviso", tema.getPrimary());
             return;
         }
+
+        List<Long> ids = idsSelecionados();
+        if (ids.size() > 1) {
+            recategorizar(ids);
+            return;
+        }
         
-        // Obter o índice real da tarefa
-        String item = listModel.getElementAt(selectedIndex);
-        int indiceReal = Integer.parseInt(item.trim().split("\\.")[0].trim()) - 1;
-        
-        Tarefa tarefaAtual = tarefas.get(indiceReal);
-        DialogoTarefa dialogo = new DialogoTarefa(tema, service.getCategorias(), tarefaAtual);
+        Tarefa tarefaAtual = service.obter(id);
+        if (tarefaRemovida(tarefaAtual)) {
+            return;
+        }
+        DialogoTarefa dialogo = new DialogoTarefa(tema, service.getContagemCategorias(), tarefaAtual);
         
         int result = JOptionPane.showConfirmDialog(
             this, 
@@ -281,9 +502,12 @@ public class TodoApp extends JFrame {
             if (!novaDesc.isBlank()) {
                 try {
                     LocalDate novaDataVencimento = dialogo.getDataVencimento();
-                    service.editar(indiceReal, novaDesc, dialogo.getObservacao(), 
+                    // Pode ter sido removida enquanto o dialogo estava aberto
+                    if (tarefaRemovida(service.obter(id))) {
+                        return;
+                    }
+                    service.editar(id, novaDesc, dialogo.getObservacao(), 
                                  dialogo.getPrioridade(), dialogo.getCategoria(), novaDataVencimento);
-                    atualizarLista();
                     factory.mostrarMensagem(this, "Tarefa editada com sucesso!", "Sucesso", tema.getWarning());
                 } catch (Exception ex) {
                     factory.mostrarMensagem(this, "Data invalida! Use o formato dd/mm/aaaa", "Erro", tema.getDanger());
@@ -293,62 +517,83 @@ public class TodoApp extends JFrame {
     }
 
     private void remover() {
-        List<Tarefa> tarefas = service.getTarefas();
-        
-        if (tarefas.isEmpty()) {
+        if (aindaCarregando()) {
+            return;
+        }
+        if (service.contar(TarefaService.FiltroTarefa.TODAS) == 0) {
             factory.mostrarMensagem(this, "Nao ha tarefas para remover.", "Aviso", tema.getPrimary());
             return;
         }
         
-        int selectedIndex = taskList.getSelectedIndex();
+        long id = idSelecionado();
         
-        if (selectedIndex == -1) {
+        if (id == -1) {
             factory.mostrarMensagem(this, "Selecione uma tarefa na lista para remover.", "Aviso", tema.getPrimary());
             return;
         }
         
-        // Obter o índice real da tarefa
-        String item = listModel.getElementAt(selectedIndex);
-        int indiceReal = Integer.parseInt(item.trim().split("\\.")[0].trim()) - 1;
-        
+        List<Long> ids = idsSelecionados();
+        Tarefa tarefa = service.obter(id);
+        if (ids.size() <= 1 && tarefaRemovida(tarefa)) {
+            return;
+        }
+        String pergunta = ids.size() > 1
+            ? "Tem certeza que deseja remover as " + ids.size() + " tarefas selecionadas?"
+            : "Tem certeza que deseja remover esta tarefa?\n\n" + tarefa;
         int confirm = JOptionPane.showConfirmDialog(
             this,
-            "Tem certeza que deseja remover esta tarefa?\n\n" + tarefas.get(indiceReal).toString(),
+            pergunta,
             "Confirmar Remocao",
             JOptionPane.YES_NO_OPTION,
             JOptionPane.QUESTION_MESSAGE
         );
         
         if (confirm == JOptionPane.YES_OPTION) {
-            service.remover(indiceReal);
-            atualizarLista();
+            if (ids.size() > 1) {
+                service.lote(lote -> ids.forEach(lote::remover));
+                factory.mostrarMensagem(this, ids.size() + " tarefas removidas com sucesso!", "Sucesso", tema.getDanger());
+                return;
+            }
+            if (!service.remover(id)) {
+                tarefaRemovida(null);
+                return;
+            }
             factory.mostrarMensagem(this, "Tarefa removida com sucesso!", "Sucesso", tema.getDanger());
         }
     }
 
     private void marcarConcluida() {
-        List<Tarefa> tarefas = service.getTarefas();
-        
-        if (tarefas.isEmpty()) {
+        if (aindaCarregando()) {
+            return;
+        }
+        if (service.contar(TarefaService.FiltroTarefa.TODAS) == 0) {
             factory.mostrarMensagem(this, "Nao ha tarefas para marcar.", "Aviso", tema.getPrimary());
             return;
         }
         
-        int selectedIndex = taskList.getSelectedIndex();
+        long id = idSelecionado();
         
-        if (selectedIndex == -1) {
+        if (id == -1) {
             factory.mostrarMensagem(this, "Selecione uma tarefa na lista.", "Aviso", tema.getPrimary());
             return;
         }
         
-        // Obter o índice real da tarefa
-        String item = listModel.getElementAt(selectedIndex);
-        int indiceReal = Integer.parseInt(item.trim().split("\\.")[0].trim()) - 1;
-        
-        service.alternarConclusao(indiceReal);
-        atualizarLista();
+        List<Long> ids = idsSelecionados();
+        if (ids.size() > 1) {
+            // Se todas ja estao concluidas, voltam a ficar pendentes; senao, todas sao concluidas
+            boolean concluir = ids.stream().map(service::obter).anyMatch(t -> t != null && !t.concluida());
+            service.lote(lote -> ids.forEach(i -> lote.definirConclusao(i, concluir)));
+            factory.mostrarMensagem(this, ids.size() + (concluir ? " tarefas marcadas como concluidas!" : " tarefas marcadas como pendentes!"),
+                           "Sucesso", concluir ? tema.getSuccess() : tema.getPrimary());
+            return;
+        }
+
+        service.alternarConclusao(id);
         
-        Tarefa tarefa = service.getTarefas().get(indiceReal);
+        Tarefa tarefa = service.obter(id);
+        if (tarefaRemovida(tarefa)) {
+            return;
+        }
         if (tarefa.concluida()) {
             factory.mostrarMensagem(this, "Tarefa marcada como concluida!", "Sucesso", tema.getSuccess());
         } else {
@@ -357,25 +602,22 @@ public class TodoApp extends JFrame {
     }
 
     private void verDetalhes() {
-        List<Tarefa> tarefas = service.getTarefas();
-        
-        if (tarefas.isEmpty()) {
+        if (service.contar(TarefaService.FiltroTarefa.TODAS) == 0) {
             factory.mostrarMensagem(this, "Nao ha tarefas para visualizar.", "Aviso", tema.getPrimary());
             return;
         }
         
-        int selectedIndex = taskList.getSelectedIndex();
+        long id = idSelecionado();
         
-        if (selectedIndex == -1) {
+        if (id == -1) {
             factory.mostrarMensagem(this, "Selecione uma tarefa na lista para ver detalhes.", "Aviso", tema.getPrimary());
             return;
         }
         
-        // Obter o índice real da tarefa
-        String item = listModel.getElementAt(selectedIndex);
-        int indiceReal = Integer.parseInt(item.trim().split("\\.")[0].trim()) - 1;
-        
-        Tarefa tarefa = tarefas.get(indiceReal);
+        Tarefa tarefa = service.obter(id);
+        if (tarefaRemovida(tarefa)) {
+            return;
+        }
         
         // Criar painel de detalhes
         JPanel panel = new JPanel(new BorderLayout());
@@ -404,11 +646,35 @@ public class TodoApp extends JFrame {
         );
         
         if (result == 0) {
-            editarObservacao(indiceReal, tarefa);
+            editarObservacao(id, tarefa);
         }
     }
 
-    private void editarObservacao(int indiceReal, Tarefa tarefa) {
+    private void recategorizar(List<Long> ids) {
+        JComboBox<String> comboCategoria = new JComboBox<>(service.getCategorias().toArray(new String[0]));
+        comboCategoria.setEditable(true);
+
+        int result = JOptionPane.showConfirmDialog(
+            this,
+            new Object[]{"Nova categoria para as " + ids.size() + " tarefas selecionadas:", comboCategoria},
+            "Alterar Categoria",
+            JOptionPane.OK_CANCEL_OPTION,
+            JOptionPane.PLAIN_MESSAGE
+        );
+
+        Object selecionada = comboCategoria.getSelectedItem();
+        if (result == JOptionPane.OK_OPTION && selecionada != null && !selecionada.toString().isBlank()) {
+            String categoria = selecionada.toString().trim();
+            service.lote(lote -> ids.forEach(i -> lote.definirCategoria(i, categoria)));
+            factory.mostrarMensagem(this, "Categoria de " + ids.size() + " tarefas alterada para " + categoria + ".",
+                           "Sucesso", tema.getWarning());
+        }
+    }
+
+    private void editarObservacao(long id, Tarefa tarefa) {
+        if (aindaCarregando()) {
+            return;
+        }
         JPanel panel = new JPanel(new BorderLayout(10, 10));
         panel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
         panel.setBackground(tema.getCardBackground());
@@ -431,16 +697,25 @@ public class TodoApp extends JFrame {
         
         if (result == JOptionPane.OK_OPTION) {
             String novaObs = textArea.getText().trim();
-            service.editarObservacao(indiceReal, novaObs);
-            atualizarLista();
+            if (tarefaRemovida(service.obter(id))) {
+                return;
+            }
+            service.editarObservacao(id, novaObs);
             factory.mostrarMensagem(this, "Observacao editada com sucesso!", "Sucesso", tema.getPrimary());
         }
     }
 
+    // A tarefa pode sumir entre a selecao e a acao (outra instancia ou o servidor)
+    private boolean tarefaRemovida(Tarefa tarefa) {
+        if (tarefa != null) {
+            return false;
+        }
+        factory.mostrarMensagem(this, "Esta tarefa foi removida (por outra instancia ou pelo servidor).", "Aviso", tema.getPrimary());
+        return true;
+    }
+
     private void exportar(String formato) {
-        List<Tarefa> tarefas = service.getTarefas();
-        
-        if (tarefas.isEmpty()) {
+        if (service.contar(TarefaService.FiltroTarefa.TODAS) == 0) {
             factory.mostrarMensagem(this, "Nao ha tarefas para exportar.", "Aviso", tema.getPrimary());
             return;
         }
@@ -455,18 +730,96 @@ public class TodoApp extends JFrame {
         
         if (result == JFileChooser.APPROVE_OPTION) {
             File arquivo = fileChooser.getSelectedFile();
-            try {
-                if (formato.equals("CSV")) {
-                    service.exportarParaCSV(arquivo.toPath());
-                } else {
-                    service.exportarParaJSON(arquivo.toPath());
+            int total = service.contar(TarefaService.FiltroTarefa.TODAS);
+            ProgressMonitor monitor = new ProgressMonitor(this, "Exportando " + total + " tarefas...", null, 0, 100);
+
+            // Nada e copiado na EDT: em segundo plano, copiam-se apenas os ids, e cada tarefa e lida
+            // do armazem quando chega a vez dela de ser escrita
+            SwingWorker<Void, Void> exportacao = new SwingWorker<>() {
+                @Override
+                protected Void doInBackground() throws Exception {
+                    List<Tarefa> tarefas = service.getTarefasSobDemanda();
+                    if (formato.equals("CSV")) {
+                        ExportadorTarefas.exportarCSV(tarefas, arquivo.toPath(), this::setProgress);
+                    } else {
+                        ExportadorTarefas.exportarJSON(tarefas, arquivo.toPath(), this::setProgress);
+                    }
+                    return null;
                 }
-                factory.mostrarMensagem(this, "Tarefas exportadas com sucesso para:\n" + arquivo.getAbsolutePath(), 
-                               "Sucesso", tema.getSuccess());
-            } catch (Exception ex) {
-                factory.mostrarMensagem(this, "Erro ao exportar: " + ex.getMessage(), "Erro", tema.getDanger());
-            }
+
+                @Override
+                protected void done() {
+                    monitor.close();
+                    if (isCancelled()) {
+                        factory.mostrarMensagem(TodoApp.this, "Exportacao cancelada.", "Aviso", tema.getPrimary());
+                        return;
+                    }
+                    try {
+                        get();
+                        factory.mostrarMensagem(TodoApp.this, "Tarefas exportadas com sucesso para:\n" + arquivo.getAbsolutePath(),
+                                       "Sucesso", tema.getSuccess());
+                    } catch (Exception ex) {
+                        Throwable causa = ex.getCause() != null ? ex.getCause() : ex;
+                        factory.mostrarMensagem(TodoApp.this, "Erro ao exportar: " + causa.getMessage(), "Erro", tema.getDanger());
+                    }
+                }
+            };
+            exportacao.addPropertyChangeListener(evt -> {
+                if ("progress".equals(evt.getPropertyName())) {
+                    monitor.setProgress((Integer) evt.getNewValue());
+                    if (monitor.isCanceled()) {
+                        exportacao.cancel(true);
+                    }
+                }
+            });
+            exportacao.execute();
         }
     }
 
+    private void importar(String formato) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Importar arquivo " + formato);
+
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        File arquivo = fileChooser.getSelectedFile();
+
+        // Leitura e insercao rodam em segundo plano; as tarefas validas entram todas juntas depois que o
+        // arquivo e lido, e a lista e atualizada pelo unico evento que o servico publica
+        SwingWorker<ImportadorTarefas.Resultado, Void> importacao = new SwingWorker<>() {
+            @Override
+            protected ImportadorTarefas.Resultado doInBackground() throws Exception {
+                return formato.equals("CSV")
+                    ? service.importarDeCSV(arquivo.toPath())
+                    : service.importarDeJSON(arquivo.toPath());
+            }
+
+            @Override
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                ImportadorTarefas.Resultado resultado;
+                try {
+                    resultado = get();
+                } catch (Exception ex) {
+                    Throwable causa = ex.getCause() != null ? ex.getCause() : ex;
+                    factory.mostrarMensagem(TodoApp.this, "Erro ao importar: " + causa.getMessage() + "<br>Nenhuma tarefa foi importada.",
+                                   "Erro", tema.getDanger());
+                    return;
+                }
+
+                StringBuilder mensagem = new StringBuilder();
+                mensagem.append(resultado.importadas()).append(" tarefas importadas.");
+                if (resultado.rejeitadas() > 0) {
+                    mensagem.append("<br>").append(resultado.rejeitadas()).append(" linhas ignoradas:");
+                    resultado.erros().stream().limit(5).forEach(erro -> mensagem.append("<br>- ").append(erro));
+                }
+                factory.mostrarMensagem(TodoApp.this, mensagem.toString(), "Importacao",
+                               resultado.rejeitadas() > 0 ? tema.getWarning() : tema.getSuccess());
+            }
+        };
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        importacao.execute();
+    }
+
 }
@@ -0,0 +1,71 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Exclusao entre processos sobre os arquivos de dados, por um lock do sistema (FileChannel.lock) em um
+ * arquivo proprio, que nunca e substituido: tarefas.dat e tarefas.log sao trocados por ATOMIC_MOVE, e um
+ * lock sobre eles ficaria no arquivo antigo. O lock do sistema pertence ao processo inteiro e a JVM recusa
+ * pedidos sobrepostos feitos por canais diferentes, entao as instancias de uma mesma JVM se revezam antes
+ * por um ReentrantLock compartilhado por caminho.
+ */
+public class TravaArquivo {
+    private static final ConcurrentHashMap<Path, ReentrantLock> LOCAIS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final ReentrantLock local;
+    // Acessados apenas por quem detem 'local'
+    private FileChannel canal;
+    private FileLock lock;
+
+    public TravaArquivo(Path path) {
+        this.path = path;
+        this.local = LOCAIS.computeIfAbsent(path.toAbsolutePath().normalize(), p -> new ReentrantLock());
+    }
+
+    // Bloqueia ate obter a trava; chamadas aninhadas na mesma thread apenas a reaproveitam
+    public void travar() throws IOException {
+        local.lock();
+        if (local.getHoldCount() > 1) {
+            return;
+        }
+        try {
+            if (canal == null) {
+                canal = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+            lock = canal.lock();
+        } catch (IOException | RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+    }
+
+    public void liberar() {
+        if (local.getHoldCount() == 1 && lock != null) {
+            try {
+                lock.release();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            lock = null;
+        }
+        local.unlock();
+    }
+
+    public void fechar() {
+        local.lock();
+        try {
+            if (canal != null) {
+                canal.close();
+                canal = null;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            local.unlock();
+        }
+    }
+}
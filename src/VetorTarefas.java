@@ -0,0 +1,159 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+
+// Vetor de tarefas mantido em ordem crescente de id, com busca binaria por id. Guarda apenas os
+// ids: cada acesso obtem a tarefa do armazem, entao substituir uma tarefa nao mexe nos vetores.
+public class VetorTarefas extends AbstractList<Tarefa> implements RandomAccess {
+    private final LongFunction<Tarefa> armazem;
+    private long[] ids;
+    private int tamanho;
+
+    public VetorTarefas(LongFunction<Tarefa> armazem) {
+        this.armazem = armazem;
+        this.ids = new long[16];
+    }
+
+    // Vetor com os ids informados, que devem estar em ordem crescente
+    public VetorTarefas(LongFunction<Tarefa> armazem, long[] ids) {
+        this.armazem = armazem;
+        this.ids = ids;
+        this.tamanho = ids.length;
+    }
+
+    @Override
+    public Tarefa get(int index) {
+        return armazem.apply(getId(index));
+    }
+
+    public long getId(int index) {
+        if (index < 0 || index >= tamanho) {
+            throw new IndexOutOfBoundsException("Indice " + index + ", tamanho " + tamanho);
+        }
+        return ids[index];
+    }
+
+    @Override
+    public int size() {
+        return tamanho;
+    }
+
+    @Override
+    public Tarefa set(int index, Tarefa tarefa) {
+        Tarefa anterior = get(index);
+        ids[index] = tarefa.id();
+        return anterior;
+    }
+
+    @Override
+    public void add(int index, Tarefa tarefa) {
+        adicionarId(index, tarefa.id());
+    }
+
+    @Override
+    public Tarefa remove(int index) {
+        Tarefa removida = get(index);
+        removerIndice(index);
+        return removida;
+    }
+
+    @Override
+    public void clear() {
+        tamanho = 0;
+        modCount++;
+    }
+
+    @Override
+    public Object[] toArray() {
+        Object[] tarefas = new Object[tamanho];
+        for (int i = 0; i < tamanho; i++) {
+            tarefas[i] = armazem.apply(ids[i]);
+        }
+        return tarefas;
+    }
+
+    public long[] copiarIds() {
+        return Arrays.copyOf(ids, tamanho);
+    }
+
+    // Remove todos os ids aceitos pelo filtro em uma unica passada, sem deslocar o vetor a cada remocao
+    public boolean removerIds(LongPredicate filtro) {
+        int destino = 0;
+        for (int i = 0; i < tamanho; i++) {
+            if (!filtro.test(ids[i])) {
+                ids[destino++] = ids[i];
+            }
+        }
+        if (destino == tamanho) {
+            return false;
+        }
+        tamanho = destino;
+        modCount++;
+        return true;
+    }
+
+    public void garantirCapacidade(int capacidade) {
+        if (capacidade > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacidade, ids.length + (ids.length >> 1)));
+        }
+    }
+
+    // Insere mantendo a ordem por id; ids novos sao sempre os maiores, entao o caso comum e um append
+    public void inserir(Tarefa tarefa) {
+        long id = tarefa.id();
+        if (tamanho == 0 || ids[tamanho - 1] < id) {
+            adicionarId(tamanho, id);
+        } else {
+            int posicao = posicao(id);
+            if (posicao < 0) {
+                adicionarId(-posicao - 1, id);
+            }
+        }
+    }
+
+    public boolean removerId(long id) {
+        int posicao = posicao(id);
+        if (posicao < 0) {
+            return false;
+        }
+        removerIndice(posicao);
+        return true;
+    }
+
+    // Posicao da tarefa com o id informado, ou (-(ponto de insercao) - 1) se ela nao existir
+    public int posicao(long id) {
+        int inicio = 0;
+        int fim = tamanho - 1;
+        while (inicio <= fim) {
+            int meio = (inicio + fim) >>> 1;
+            long idMeio = ids[meio];
+            if (idMeio < id) {
+                inicio = meio + 1;
+            } else if (idMeio > id) {
+                fim = meio - 1;
+            } else {
+                return meio;
+            }
+        }
+        return -(inicio + 1);
+    }
+
+    private void adicionarId(int index, long id) {
+        if (index < 0 || index > tamanho) {
+            throw new IndexOutOfBoundsException("Indice " + index + ", tamanho " + tamanho);
+        }
+        garantirCapacidade(tamanho + 1);
+        System.arraycopy(ids, index, ids, index + 1, tamanho - index);
+        ids[index] = id;
+        tamanho++;
+        modCount++;
+    }
+
+    private void removerIndice(int index) {
+        System.arraycopy(ids, index + 1, ids, index, tamanho - index - 1);
+        tamanho--;
+        modCount++;
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Set;
+
+/*
+ * Avisa quando arquivos de um diretorio sao criados, substituidos ou alterados, por este processo ou por
+ * outro. Usa o WatchService do sistema em uma thread propria; os eventos que chegam juntos viram um so
+ * aviso, e quem o recebe decide o que mudou (o aviso pode chegar tambem sem mudanca alguma).
+ */
+public class VigiaDiretorio {
+    private final WatchService servico;
+    private final Thread thread;
+
+    // 'nomes' sao os arquivos de interesse dentro do diretorio; 'aviso' e chamado na thread do vigia
+    public VigiaDiretorio(Path diretorio, Set<String> nomes, Runnable aviso) throws IOException {
+        servico = diretorio.getFileSystem().newWatchService();
+        diretorio.register(servico, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(() -> vigiar(nomes, aviso), "vigia-" + diretorio.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void vigiar(Set<String> nomes, Runnable aviso) {
+        try {
+            while (true) {
+                WatchKey chave = servico.take();
+                boolean relevante = false;
+                for (WatchEvent<?> evento : chave.pollEvents()) {
+                    // No transbordamento a fila perdeu eventos, e qualquer arquivo pode ter mudado
+                    relevante |= evento.kind() == StandardWatchEventKinds.OVERFLOW
+                        || nomes.contains(String.valueOf(evento.context()));
+                }
+                if (!chave.reset()) {
+                    System.err.println("O diretorio das tarefas deixou de ser acompanhado.");
+                    return;
+                }
+                if (relevante) {
+                    try {
+                        aviso.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException fim) {
+            // Vigia encerrado
+        }
+    }
+
+    public void fechar() {
+        try {
+            servico.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        thread.interrupt();
+    }
+}